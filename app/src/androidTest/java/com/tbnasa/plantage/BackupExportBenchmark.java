@@ -0,0 +1,172 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Export wall time on a synthetic 1,000-photo library: every entry deflated
+ * at BEST_COMPRESSION on the calling thread (the old createCompressedZip
+ * policy) against {@link BackupCompressor} (media stored, the rest at the
+ * default level, prepared in parallel). Both write the same PLNTGv2
+ * container with a fixed key, so only the compression path differs.
+ *
+ * Run with
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.tbnasa.plantage.BackupExportBenchmark};
+ * timings go to logcat (tag BackupExportBenchmark) and the instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class BackupExportBenchmark {
+
+    private static final String TAG = "BackupExportBenchmark";
+    private static final int PHOTOS = 1000;
+    private static final int RUNS = 3;
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+    private File library;
+    private File output;
+    private final List<File> files = new ArrayList<>();
+
+    @Before
+    public void createLibrary() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        library = new File(context.getCacheDir(), "benchmark-library");
+        output = new File(context.getCacheDir(), "benchmark.plntg");
+        library.mkdirs();
+
+        // Random bytes behind a JPEG signature: as incompressible as real photos
+        Random random = new Random(7);
+        for (int i = 0; i < PHOTOS; i++) {
+            files.add(write("leaf_" + i + ".jpg", jpeg(random, 200 * 1024 + random.nextInt(200 * 1024))));
+            files.add(write("leaf_" + i + "_thumb.jpg", jpeg(random, 20 * 1024 + random.nextInt(10 * 1024))));
+        }
+        StringBuilder db = new StringBuilder("SQLite format 3\u0000");
+        for (int i = 0; i < 20000; i++) {
+            db.append("leaf ").append(i).append(" 2026-03-").append(i % 28 + 1)
+                    .append(" bugün bahçede yürüdüm, hava güzeldi ").append(random.nextInt(100000)).append('\n');
+        }
+        files.add(0, write("Plantage.db", db.toString().getBytes("UTF-8")));
+    }
+
+    @After
+    public void deleteLibrary() {
+        for (File f : files) {
+            f.delete();
+        }
+        library.delete();
+        output.delete();
+    }
+
+    @Test
+    public void exportWallTime() throws Exception {
+        long[] sequential = new long[RUNS];
+        long[] parallel = new long[RUNS];
+        long sequentialSize = 0;
+        long parallelSize = 0;
+        // Alternate so that page cache and thermal state hit both paths alike
+        for (int run = 0; run < RUNS; run++) {
+            sequential[run] = time(false);
+            sequentialSize = output.length();
+            assertEquals(files.size(), entryCount());
+            parallel[run] = time(true);
+            parallelSize = output.length();
+            assertEquals(files.size(), entryCount());
+        }
+
+        String result = String.format("best-compression, one thread: %s ms, %d bytes%n"
+                        + "media stored, parallel: %s ms, %d bytes",
+                Arrays.toString(sequential), sequentialSize, Arrays.toString(parallel), parallelSize);
+        Log.i(TAG, result);
+        Bundle status = new Bundle();
+        status.putString("stream", result + "\n");
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+    }
+
+    private long time(boolean parallel) throws Exception {
+        long start = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(output), 256 * 1024)) {
+            BackupArchive.Writer archive = new BackupArchive.Writer(out, key, new byte[16], 1,
+                    BackupArchive.DEFAULT_CHUNK_SIZE);
+            if (parallel) {
+                try (BackupCompressor compressor = new BackupCompressor(archive,
+                        BackupManager.DEFAULT_COMPRESSION_LEVEL, size -> { })) {
+                    for (File f : files) {
+                        compressor.add(f.getName(), f, null);
+                    }
+                    compressor.drain();
+                }
+            } else {
+                for (File f : files) {
+                    try (InputStream in = new FileInputStream(f);
+                         OutputStream entry = archive.openEntry(f.getName(), BackupArchive.METHOD_DEFLATED,
+                                 Deflater.BEST_COMPRESSION)) {
+                        copy(in, entry);
+                    }
+                }
+            }
+            archive.finish();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private int entryCount() throws IOException {
+        try (BackupArchive.Reader reader = BackupArchive.Reader.open(new RandomAccessFile(output, "r").getChannel())) {
+            reader.unlock(key);
+            return reader.getEntries().size();
+        }
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File f = new File(library, name);
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write(data);
+        }
+        return f;
+    }
+
+    private static byte[] jpeg(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        data[0] = (byte) 0xff;
+        data[1] = (byte) 0xd8;
+        data[2] = (byte) 0xff;
+        return data;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+}
@@ -0,0 +1,975 @@
+package com.tbnasa.plantage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * BackupArchive — The PLNTGv2 backup container.
+ *
+ * <pre>
+ * header   "PLNTGv2" | salt (16) | nonce prefix (8) | chunk size (4) | KDF iterations (4)
+ * data     entry bytes (stored or zlib), back to back, cut into chunks
+ * index    the entry table, cut into chunks after the data
+ * segments (only in resumed archives) n × (first chunk (8) | nonce prefix (8)) | n (4)
+ * trailer  data length (8) | index length (8) | "PLNTGEND"
+ * </pre>
+ *
+ * Every chunk is sealed with AES-GCM on its own, with nonce = prefix | chunk
+ * number. Its associated data binds the header, the chunk number, the section
+ * (data or index) and whether it is the section's last chunk, so chunks cannot
+ * be reordered, moved between sections, cut off the end or taken from another
+ * archive. A reader verifies each chunk before using its bytes, needs one
+ * chunk of memory, and reads any entry by decrypting only the chunks it spans.
+ *
+ * A writer resumed from a {@link Checkpoint} rewrites chunks that an earlier
+ * attempt may already have sealed, possibly over different bytes, so it never
+ * reuses their nonces: from the checkpoint on it seals with a fresh random
+ * prefix. Each such segment is listed before the trailer, and the index
+ * chunks' associated data also covers that list.
+ */
+final class BackupArchive {
+
+    static final String MAGIC = "PLNTGv2";
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final byte[] TRAILER_MAGIC = "PLNTGEND".getBytes(StandardCharsets.US_ASCII);
+    private static final int SALT_SIZE = 16;
+    private static final int PREFIX_SIZE = 8;
+    private static final int HEADER_SIZE = 7 + SALT_SIZE + PREFIX_SIZE + 4 + 4;
+    private static final int TRAILER_SIZE = 8 + 8 + 8;
+    private static final int SEGMENT_SIZE = 8 + PREFIX_SIZE;
+    private static final int TAG_SIZE = 16;
+    private static final int MIN_CHUNK_SIZE = 4 * 1024;
+    private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_INDEX_SIZE = 16 * 1024 * 1024;
+    private static final int INDEX_FORMAT = 1;
+
+    private static final byte SECTION_DATA = 0;
+    private static final byte SECTION_INDEX = 1;
+
+    /**
+     * One file in the archive. {@code offset} and {@code storedSize} locate its
+     * stored bytes in the data section; {@code size} and {@code sha256} describe
+     * the original file.
+     */
+    static final class Entry {
+        final String name;
+        final int method;
+        final long offset;
+        final long storedSize;
+        final long size;
+        final String sha256;
+
+        Entry(String name, int method, long offset, long storedSize, long size, String sha256) {
+            this.name = name;
+            this.method = method;
+            this.offset = offset;
+            this.storedSize = storedSize;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+    /**
+     * The archive was tampered with, truncated or opened with the wrong key.
+     */
+    static final class IntegrityException extends IOException {
+        IntegrityException(String message) {
+            super(message);
+        }
+
+        IntegrityException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // Chunks from {@code start} on are sealed with {@code prefix}, until the next segment
+    private static final class Segment {
+        final long start;
+        final byte[] prefix;
+
+        Segment(long start, byte[] prefix) {
+            this.start = start;
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * An entry's stored bytes, made ahead of time (possibly on another thread)
+     * and appended later with {@link Writer#addEntry}. Deflating is skipped
+     * when it would not make the entry smaller.
+     */
+    static final class PreparedEntry {
+        final int method;
+        final long size;
+        final String sha256;
+        private final byte[] stored;
+        private final int storedLength;
+
+        private PreparedEntry(int method, long size, String sha256, byte[] stored, int storedLength) {
+            this.method = method;
+            this.size = size;
+            this.sha256 = sha256;
+            this.stored = stored;
+            this.storedLength = storedLength;
+        }
+
+        static PreparedEntry prepare(byte[] data, int length, int method, int level) throws IOException {
+            MessageDigest md = sha256();
+            md.update(data, 0, length);
+            String hash = toHex(md.digest());
+            if (method == METHOD_DEFLATED) {
+                Deflater deflater = new Deflater(level);
+                try {
+                    deflater.setInput(data, 0, length);
+                    deflater.finish();
+                    byte[] out = new byte[length];
+                    int n = 0;
+                    while (!deflater.finished() && n < out.length) {
+                        n += deflater.deflate(out, n, out.length - n);
+                    }
+                    if (deflater.finished() && n < length) {
+                        return new PreparedEntry(METHOD_DEFLATED, length, hash, out, n);
+                    }
+                } finally {
+                    deflater.end();
+                }
+            } else if (method != METHOD_STORED) {
+                throw new IllegalArgumentException("Unknown method " + method);
+            }
+            return new PreparedEntry(METHOD_STORED, length, hash, data, length);
+        }
+    }
+
+    private BackupArchive() {
+    }
+
+    // ═══════ WRITING ═══════
+
+    /**
+     * Writes an archive front to back into a plain stream; nothing is seeked
+     * or buffered beyond one chunk. Entries are written one at a time through
+     * {@link #openEntry} or {@link #addEntry}, then {@link #finish()} appends
+     * the index and trailer. Not thread-safe.
+     */
+    static final class Writer {
+
+        private final OutputStream out;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] header;
+        private final byte[] prefix; // of the chunks sealed by this writer
+        private final int chunkSize;
+        private final byte[] buffer;
+        private final byte[] sealed;
+        private final List<Entry> entries = new ArrayList<>();
+        private final List<Segment> segments = new ArrayList<>();
+
+        private int buffered;
+        private long chunk; // sealed chunks written so far
+        private byte section = SECTION_DATA;
+        private long written; // plaintext bytes in the current section
+        private boolean entryOpen;
+
+        private final OutputStream sectionStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                append(b, off, len);
+            }
+        };
+
+        Writer(OutputStream out, SecretKey key, byte[] salt, int iterations, int chunkSize)
+                throws IOException, GeneralSecurityException {
+            if (salt.length != SALT_SIZE || chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException();
+            }
+            this.out = out;
+            this.key = key;
+            this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            this.chunkSize = chunkSize;
+            this.buffer = new byte[chunkSize];
+            this.sealed = new byte[chunkSize + TAG_SIZE];
+
+            prefix = new byte[PREFIX_SIZE];
+            new SecureRandom().nextBytes(prefix);
+            ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE);
+            h.put(MAGIC.getBytes(StandardCharsets.US_ASCII)).put(salt).put(prefix).putInt(chunkSize).putInt(iterations);
+            header = h.array();
+            out.write(header);
+        }
+
+        private Writer(OutputStream out, SecretKey key, Checkpoint checkpoint) throws GeneralSecurityException {
+            this.out = out;
+            this.key = key;
+            this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            this.header = checkpoint.header;
+            this.chunkSize = checkpoint.chunkSize();
+            this.buffer = new byte[chunkSize];
+            this.sealed = new byte[chunkSize + TAG_SIZE];
+            this.chunk = checkpoint.chunk;
+            this.written = checkpoint.written;
+            this.buffered = checkpoint.pending.length;
+            System.arraycopy(checkpoint.pending, 0, buffer, 0, buffered);
+            this.entries.addAll(checkpoint.entries);
+
+            // An earlier attempt may have sealed chunks from here on before it stopped
+            prefix = new byte[PREFIX_SIZE];
+            new SecureRandom().nextBytes(prefix);
+            for (Segment segment : checkpoint.segments) {
+                if (segment.start < chunk) segments.add(segment);
+            }
+            segments.add(new Segment(chunk, prefix));
+        }
+
+        /**
+         * Continues an archive from {@code checkpoint}. {@code out} must be
+         * positioned at {@link Checkpoint#getOutputLength()} of the same
+         * destination, with everything after it discarded. Inputs may differ
+         * from the earlier attempt's; rewritten chunks get new nonces.
+         */
+        static Writer resume(OutputStream out, SecretKey key, Checkpoint checkpoint)
+                throws GeneralSecurityException {
+            return new Writer(out, key, checkpoint);
+        }
+
+        /**
+         * Flushes the sealed chunks to the underlying stream and returns what
+         * is needed to continue from here. The caller makes the flushed bytes
+         * durable (e.g. fsync) before saving the checkpoint. The unsealed tail
+         * of the last chunk is part of the checkpoint in plain form, so it must
+         * be stored encrypted.
+         */
+        Checkpoint checkpoint() throws IOException {
+            if (entryOpen || section != SECTION_DATA) {
+                throw new IllegalStateException("Entry open or archive finished");
+            }
+            out.flush();
+            return new Checkpoint(header, chunk, written, Arrays.copyOf(buffer, buffered), new ArrayList<>(entries),
+                    new ArrayList<>(segments));
+        }
+
+        boolean contains(String name) {
+            for (Entry entry : entries) {
+                if (entry.name.equals(name)) return true;
+            }
+            return false;
+        }
+
+        List<Entry> getEntries() {
+            return Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Starts the next entry. Its original bytes are written to the returned
+         * stream; closing the stream records the entry. {@code level} is the
+         * deflate level for {@link #METHOD_DEFLATED}.
+         */
+        OutputStream openEntry(String name, int method, int level) throws IOException {
+            if (entryOpen || section != SECTION_DATA) {
+                throw new IllegalStateException("Entry already open or archive finished");
+            }
+            entryOpen = true;
+            return new EntryOutputStream(name, method, level);
+        }
+
+        /**
+         * Appends an entry prepared with {@link PreparedEntry#prepare}.
+         */
+        void addEntry(String name, PreparedEntry prepared) throws IOException {
+            if (entryOpen || section != SECTION_DATA) {
+                throw new IllegalStateException("Entry already open or archive finished");
+            }
+            long offset = written;
+            append(prepared.stored, 0, prepared.storedLength);
+            entries.add(new Entry(name, prepared.method, offset, prepared.storedLength, prepared.size,
+                    prepared.sha256));
+        }
+
+        String getId() {
+            return toHex(Arrays.copyOfRange(header, MAGIC.length(), MAGIC.length() + SALT_SIZE + PREFIX_SIZE));
+        }
+
+        /**
+         * Root hash of the entries written so far; final after {@link #finish()}.
+         */
+        String getRootHash() {
+            return rootHash(entries);
+        }
+
+        /**
+         * Seals the last data chunk, the index and the trailer, then flushes.
+         * The underlying stream is left open.
+         */
+        void finish() throws IOException {
+            if (entryOpen || section != SECTION_DATA) {
+                throw new IllegalStateException("Entry still open or archive finished");
+            }
+            long dataLength = written;
+            if (buffered > 0) {
+                seal(true);
+            }
+
+            byte[] index = encodeIndex(dataLength, entries);
+            section = SECTION_INDEX;
+            written = 0;
+            append(index, 0, index.length);
+            seal(true);
+
+            out.write(encodeSegments(segments));
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            trailer.putLong(dataLength).putLong(index.length).put(TRAILER_MAGIC);
+            out.write(trailer.array());
+            out.flush();
+        }
+
+        // A full chunk is only sealed once more bytes arrive, so the last one is always known
+        private void append(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (buffered == chunkSize) {
+                    seal(false);
+                }
+                int n = Math.min(len, chunkSize - buffered);
+                System.arraycopy(b, off, buffer, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+                written += n;
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            int length;
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(prefix, chunk)));
+                cipher.updateAAD(aad(header, chunk, section, last));
+                if (section == SECTION_INDEX) {
+                    cipher.updateAAD(encodeSegments(segments));
+                }
+                length = cipher.doFinal(buffer, 0, buffered, sealed, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            out.write(sealed, 0, length);
+            chunk++;
+            buffered = 0;
+        }
+
+        private final class EntryOutputStream extends OutputStream {
+
+            private final String name;
+            private final int method;
+            private final long offset;
+            private final MessageDigest md;
+            private final Deflater deflater;
+            private final OutputStream sink;
+            private long size;
+            private boolean closed;
+
+            EntryOutputStream(String name, int method, int level) throws IOException {
+                this.name = name;
+                this.method = method;
+                this.offset = written;
+                this.md = sha256();
+                if (method == METHOD_DEFLATED) {
+                    deflater = new Deflater(level);
+                    sink = new DeflaterOutputStream(sectionStream, deflater, 8192);
+                } else if (method == METHOD_STORED) {
+                    deflater = null;
+                    sink = sectionStream;
+                } else {
+                    throw new IllegalArgumentException("Unknown method " + method);
+                }
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                md.update(b, off, len);
+                size += len;
+                sink.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                if (deflater != null) {
+                    ((DeflaterOutputStream) sink).finish();
+                    deflater.end();
+                }
+                entries.add(new Entry(name, method, offset, written - offset, size, toHex(md.digest())));
+                entryOpen = false;
+            }
+        }
+    }
+
+    /**
+     * A writer's state between two entries; see {@link Writer#checkpoint()}.
+     */
+    static final class Checkpoint {
+        private static final int FORMAT = 2;
+
+        private final byte[] header;
+        private final long chunk;
+        private final long written;
+        private final byte[] pending;
+        private final List<Entry> entries;
+        private final List<Segment> segments;
+
+        private Checkpoint(byte[] header, long chunk, long written, byte[] pending, List<Entry> entries,
+                List<Segment> segments) {
+            this.header = header;
+            this.chunk = chunk;
+            this.written = written;
+            this.pending = pending;
+            this.entries = entries;
+            this.segments = segments;
+        }
+
+        byte[] getSalt() {
+            return Arrays.copyOfRange(header, MAGIC.length(), MAGIC.length() + SALT_SIZE);
+        }
+
+        int getIterations() {
+            return ByteBuffer.wrap(header, HEADER_SIZE - 4, 4).getInt();
+        }
+
+        /**
+         * Bytes of the destination that belong to the archive at this point.
+         */
+        long getOutputLength() {
+            return HEADER_SIZE + chunk * (chunkSize() + TAG_SIZE);
+        }
+
+        private int chunkSize() {
+            return ByteBuffer.wrap(header, HEADER_SIZE - 8, 4).getInt();
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FORMAT);
+            out.write(header);
+            out.writeLong(chunk);
+            out.writeInt(pending.length);
+            out.write(pending);
+            out.writeInt(segments.size());
+            for (Segment segment : segments) {
+                out.writeLong(segment.start);
+                out.write(segment.prefix);
+            }
+            out.write(encodeIndex(written, entries));
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static Checkpoint decode(byte[] bytes) throws IOException {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                if (in.readInt() != FORMAT) {
+                    throw new IOException("Unsupported checkpoint format");
+                }
+                byte[] header = new byte[HEADER_SIZE];
+                in.readFully(header);
+                long chunk = in.readLong();
+                byte[] pending = new byte[in.readInt()];
+                in.readFully(pending);
+                int count = in.readInt();
+                if (count < 0 || count > in.available() / SEGMENT_SIZE) {
+                    throw new IOException("Bad checkpoint");
+                }
+                List<Segment> segments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    long start = in.readLong();
+                    byte[] prefix = new byte[PREFIX_SIZE];
+                    in.readFully(prefix);
+                    segments.add(new Segment(start, prefix));
+                }
+                byte[] index = new byte[in.available()];
+                in.readFully(index);
+
+                Checkpoint checkpoint = new Checkpoint(header, chunk, 0, pending, null, segments);
+                int chunkSize = checkpoint.chunkSize();
+                boolean valid = new String(header, 0, MAGIC.length(), StandardCharsets.US_ASCII).equals(MAGIC)
+                        && chunkSize >= MIN_CHUNK_SIZE && chunkSize <= MAX_CHUNK_SIZE
+                        && chunk >= 0 && pending.length <= chunkSize && validSegments(segments, chunk);
+                if (!valid) {
+                    throw new IOException("Bad checkpoint");
+                }
+                long written = chunk * chunkSize + pending.length;
+                return new Checkpoint(header, chunk, written, pending, new ArrayList<>(decodeIndex(index, written)),
+                        segments);
+            } catch (EOFException | NegativeArraySizeException e) {
+                throw new IOException("Checkpoint truncated", e);
+            }
+        }
+    }
+
+    // ═══════ READING ═══════
+
+    /**
+     * Random-access view of an archive. {@link #open} checks the layout;
+     * {@link #unlock} authenticates and reads the index; entries are then read
+     * independently, each verified chunk by chunk and against its hash.
+     */
+    static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final byte[] header;
+        private final byte[] salt;
+        private final byte[] prefix;
+        private final int chunkSize;
+        private final int iterations;
+        private final long dataLength;
+        private final long dataChunks;
+        private final long indexLength;
+        private final long indexStart;
+        private final List<Segment> segments;
+        private final byte[] encodedSegments;
+
+        private SecretKey key;
+        private Cipher cipher;
+        private List<Entry> entries;
+        private final Map<String, Entry> byName = new HashMap<>();
+
+        private Reader(FileChannel channel, byte[] header, long dataLength, long indexLength,
+                List<Segment> segments) {
+            this.channel = channel;
+            this.header = header;
+            ByteBuffer h = ByteBuffer.wrap(header, MAGIC.length(), HEADER_SIZE - MAGIC.length());
+            salt = new byte[SALT_SIZE];
+            h.get(salt);
+            prefix = new byte[PREFIX_SIZE];
+            h.get(prefix);
+            chunkSize = h.getInt();
+            iterations = h.getInt();
+            this.dataLength = dataLength;
+            this.dataChunks = chunkCount(dataLength, chunkSize);
+            this.indexLength = indexLength;
+            this.indexStart = HEADER_SIZE + dataLength + dataChunks * TAG_SIZE;
+            this.segments = segments;
+            this.encodedSegments = encodeSegments(segments);
+        }
+
+        /**
+         * Reads the header and trailer of {@code channel} (which must be
+         * seekable) and checks that the file size matches them.
+         */
+        static Reader open(FileChannel channel) throws IOException {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE + TAG_SIZE + TRAILER_SIZE) {
+                throw new IntegrityException("Archive too short");
+            }
+            byte[] header = new byte[HEADER_SIZE];
+            readFully(channel, header, 0, HEADER_SIZE, 0);
+            if (!MAGIC.equals(new String(header, 0, MAGIC.length(), StandardCharsets.US_ASCII))) {
+                throw new IOException("Not a " + MAGIC + " archive");
+            }
+            int chunkSize = ByteBuffer.wrap(header, HEADER_SIZE - 8, 4).getInt();
+            if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IntegrityException("Bad chunk size");
+            }
+
+            byte[] trailer = new byte[TRAILER_SIZE];
+            readFully(channel, trailer, 0, TRAILER_SIZE, fileSize - TRAILER_SIZE);
+            ByteBuffer t = ByteBuffer.wrap(trailer);
+            long dataLength = t.getLong();
+            long indexLength = t.getLong();
+            byte[] magic = new byte[TRAILER_MAGIC.length];
+            t.get(magic);
+            if (!MessageDigest.isEqual(magic, TRAILER_MAGIC) || dataLength < 0
+                    || indexLength <= 0 || indexLength > MAX_INDEX_SIZE) {
+                throw new IntegrityException("Bad trailer");
+            }
+            long chunks = chunkCount(dataLength, chunkSize) + chunkCount(indexLength, chunkSize);
+            long expected = HEADER_SIZE + dataLength + indexLength + chunks * TAG_SIZE + TRAILER_SIZE;
+            List<Segment> segments = new ArrayList<>();
+            if (expected < fileSize && fileSize - expected >= 4) {
+                // Resumed archive: the segment list sits between the index and the trailer
+                byte[] count = new byte[4];
+                readFully(channel, count, 0, 4, fileSize - TRAILER_SIZE - 4);
+                int n = ByteBuffer.wrap(count).getInt();
+                if (n > 0 && n <= (fileSize - expected - 4) / SEGMENT_SIZE) {
+                    ByteBuffer list = ByteBuffer.allocate(n * SEGMENT_SIZE);
+                    readFully(channel, list.array(), 0, list.capacity(), fileSize - TRAILER_SIZE - 4 - list.capacity());
+                    for (int i = 0; i < n; i++) {
+                        long start = list.getLong();
+                        byte[] prefix = new byte[PREFIX_SIZE];
+                        list.get(prefix);
+                        segments.add(new Segment(start, prefix));
+                    }
+                    expected += n * SEGMENT_SIZE + 4;
+                }
+            }
+            if (expected != fileSize || !validSegments(segments, chunks)) {
+                throw new IntegrityException("Archive truncated or padded");
+            }
+            return new Reader(channel, header, dataLength, indexLength, segments);
+        }
+
+        byte[] getSalt() {
+            return salt.clone();
+        }
+
+        int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * Identifies this archive (not its contents): two files share an id
+         * only if one is a copy of the other.
+         */
+        String getId() {
+            return toHex(salt) + toHex(prefix);
+        }
+
+        /**
+         * Decrypts and checks the index. A wrong key fails here, before any
+         * entry is touched.
+         */
+        void unlock(SecretKey key) throws IOException {
+            try {
+                this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            this.key = key;
+
+            byte[] index = new byte[(int) indexLength];
+            SectionInputStream in = new SectionInputStream(SECTION_INDEX, 0, indexLength);
+            int read = 0;
+            while (read < index.length) {
+                int n = in.read(index, read, index.length - read);
+                if (n < 0) throw new IntegrityException("Index truncated");
+                read += n;
+            }
+            entries = decodeIndex(index, dataLength);
+            for (Entry entry : entries) {
+                byName.put(entry.name, entry);
+            }
+        }
+
+        List<Entry> getEntries() {
+            return entries;
+        }
+
+        String getRootHash() {
+            return rootHash(entries);
+        }
+
+        Entry find(String name) {
+            return byName.get(name);
+        }
+
+        /**
+         * Streams the original bytes of {@code entry}. Reading to the end
+         * throws {@link IntegrityException} if the size or hash is wrong.
+         */
+        InputStream open(Entry entry) throws IOException {
+            if (entries == null) {
+                throw new IllegalStateException("Archive is locked");
+            }
+            return new EntryInputStream(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        // Decrypts chunk n of a section into out; returns its plaintext length
+        private int readChunk(byte section, long n, byte[] sealed, byte[] out) throws IOException {
+            long sectionLength = section == SECTION_DATA ? dataLength : indexLength;
+            long chunks = chunkCount(sectionLength, chunkSize);
+            int length = (int) Math.min(chunkSize, sectionLength - n * chunkSize);
+            long position = (section == SECTION_DATA ? HEADER_SIZE : indexStart) + n * (chunkSize + TAG_SIZE);
+            long counter = (section == SECTION_DATA ? 0 : dataChunks) + n;
+
+            readFully(channel, sealed, 0, length + TAG_SIZE, position);
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8,
+                        nonce(prefixOf(counter), counter)));
+                cipher.updateAAD(aad(header, counter, section, n == chunks - 1));
+                if (section == SECTION_INDEX) {
+                    cipher.updateAAD(encodedSegments);
+                }
+                return cipher.doFinal(sealed, 0, length + TAG_SIZE, out, 0);
+            } catch (AEADBadTagException e) {
+                throw new IntegrityException("Chunk " + counter + " failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private byte[] prefixOf(long chunk) {
+            byte[] result = prefix;
+            for (Segment segment : segments) {
+                if (segment.start > chunk) break;
+                result = segment.prefix;
+            }
+            return result;
+        }
+
+        /**
+         * Plaintext of a byte range of one section, one verified chunk at a time.
+         */
+        private final class SectionInputStream extends InputStream {
+
+            private final byte section;
+            private final byte[] sealed = new byte[chunkSize + TAG_SIZE];
+            private final byte[] plain = new byte[chunkSize];
+            private long position;
+            private final long end;
+            private long loadedChunk = -1;
+
+            SectionInputStream(byte section, long start, long length) {
+                this.section = section;
+                this.position = start;
+                this.end = start + length;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) return -1;
+                long n = position / chunkSize;
+                if (n != loadedChunk) {
+                    readChunk(section, n, sealed, plain);
+                    loadedChunk = n;
+                }
+                int inChunk = (int) (position - n * chunkSize);
+                int count = (int) Math.min(Math.min(len, chunkSize - inChunk), end - position);
+                System.arraycopy(plain, inChunk, b, off, count);
+                position += count;
+                return count;
+            }
+        }
+
+        private final class EntryInputStream extends InputStream {
+
+            private final Entry entry;
+            private final Inflater inflater;
+            private final InputStream in;
+            private final MessageDigest md;
+            private long remaining;
+
+            EntryInputStream(Entry entry) throws IOException {
+                this.entry = entry;
+                this.md = sha256();
+                this.remaining = entry.size;
+                InputStream raw = new SectionInputStream(SECTION_DATA, entry.offset, entry.storedSize);
+                if (entry.method == METHOD_DEFLATED) {
+                    inflater = new Inflater();
+                    in = new InflaterInputStream(raw, inflater, 8192);
+                } else {
+                    inflater = null;
+                    in = raw;
+                }
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) return -1;
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n < 0) {
+                    throw new IntegrityException(entry.name + " is shorter than recorded");
+                }
+                md.update(b, off, n);
+                remaining -= n;
+                if (remaining == 0 && !toHex(md.digest()).equals(entry.sha256)) {
+                    throw new IntegrityException(entry.name + " hash mismatch");
+                }
+                return n;
+            }
+
+            @Override
+            public void close() {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    // ═══════ INDEX ═══════
+
+    /**
+     * Root hash over the entries, the same "name:sha256" chain the v1
+     * manifest used.
+     */
+    static String rootHash(List<Entry> entries) {
+        MessageDigest md = sha256();
+        for (Entry entry : entries) {
+            md.update((entry.name + ":" + entry.sha256).getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(md.digest());
+    }
+
+    private static byte[] encodeIndex(long dataLength, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_FORMAT);
+        out.writeLong(dataLength);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeUTF(entry.name);
+            out.writeByte(entry.method);
+            out.writeLong(entry.offset);
+            out.writeLong(entry.storedSize);
+            out.writeLong(entry.size);
+            out.writeUTF(entry.sha256);
+        }
+        out.writeUTF(rootHash(entries));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static List<Entry> decodeIndex(byte[] index, long dataLength) throws IOException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            if (in.readInt() != INDEX_FORMAT) {
+                throw new IOException("Unsupported index format");
+            }
+            if (in.readLong() != dataLength) {
+                throw new IntegrityException("Index does not match the data section");
+            }
+            int count = in.readInt();
+            if (count < 0) throw new IntegrityException("Bad entry count");
+            List<Entry> entries = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readByte(), in.readLong(), in.readLong(),
+                        in.readLong(), in.readUTF());
+                boolean inRange = entry.offset >= 0 && entry.storedSize >= 0 && entry.size >= 0
+                        && entry.offset <= dataLength - entry.storedSize;
+                boolean validMethod = entry.method == METHOD_DEFLATED
+                        || (entry.method == METHOD_STORED && entry.storedSize == entry.size);
+                if (!inRange || !validMethod) {
+                    throw new IntegrityException("Bad entry " + entry.name);
+                }
+                entries.add(entry);
+            }
+            if (!in.readUTF().equals(rootHash(entries)) || in.available() != 0) {
+                throw new IntegrityException("Root hash mismatch");
+            }
+            return Collections.unmodifiableList(entries);
+        } catch (EOFException e) {
+            throw new IntegrityException("Index truncated", e);
+        }
+    }
+
+    // ═══════ HELPERS ═══════
+
+    private static long chunkCount(long length, int chunkSize) {
+        return (length + chunkSize - 1) / chunkSize;
+    }
+
+    private static byte[] nonce(byte[] prefix, long chunk) {
+        if (chunk > 0xffffffffL) {
+            throw new IllegalStateException("Too many chunks");
+        }
+        return ByteBuffer.allocate(PREFIX_SIZE + 4).put(prefix).putInt((int) chunk).array();
+    }
+
+    // Empty when the archive was written in one go, so such archives keep the original layout
+    private static byte[] encodeSegments(List<Segment> segments) {
+        if (segments.isEmpty()) return new byte[0];
+        ByteBuffer b = ByteBuffer.allocate(segments.size() * SEGMENT_SIZE + 4);
+        for (Segment segment : segments) {
+            b.putLong(segment.start).put(segment.prefix);
+        }
+        return b.putInt(segments.size()).array();
+    }
+
+    // Segments start in increasing order, within the chunks written so far
+    private static boolean validSegments(List<Segment> segments, long chunks) {
+        long previous = -1;
+        for (Segment segment : segments) {
+            if (segment.start <= previous || segment.start > chunks) return false;
+            previous = segment.start;
+        }
+        return true;
+    }
+
+    private static byte[] aad(byte[] header, long chunk, byte section, boolean last) {
+        return ByteBuffer.allocate(header.length + 8 + 2)
+                .put(header).putLong(chunk).put(section).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private static void readFully(FileChannel channel, byte[] b, int off, int len, long position)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - off) < 0) {
+                throw new IntegrityException("Archive truncated");
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,258 @@
+package com.tbnasa.plantage;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BackupChain — Incremental backups as a chain of PLNTGv2 archives.
+ *
+ * Photos are stored by content, as "blobs/&lt;sha256&gt;" entries. Every archive
+ * carries the database and a manifest.mf that lists each photo file with its
+ * hash and names its parent archive (id and root hash). An archive only holds
+ * the blobs that no earlier archive in its chain has, so a restore needs the
+ * newest archive together with all of its ancestors.
+ */
+final class BackupChain {
+
+    static final String MANIFEST_ENTRY = "manifest.mf";
+    static final String BLOB_PREFIX = "blobs/";
+
+    // Restores need every link; after this many the next backup starts a new chain
+    static final int MAX_LENGTH = 7;
+
+    private static final String MANIFEST_HEADER = "PLANTAGE-CHAIN 1";
+    private static final String PARENT_PREFIX = "PARENT:";
+    private static final String NO_PARENT = "-";
+
+    /**
+     * Some archive of the chain was not given, or an archive belongs to another chain.
+     */
+    static final class IncompleteChainException extends IOException {
+        IncompleteChainException(String message) {
+            super(message);
+        }
+    }
+
+    private BackupChain() {
+    }
+
+    // ═══════ MANIFEST ═══════
+
+    /**
+     * The manifest of one archive: its parent (null for a full backup) and
+     * every photo file, "images/&lt;name&gt;" → sha256, in order.
+     */
+    static final class Manifest {
+        final String parentId;
+        final String parentRoot;
+        final Map<String, String> files;
+
+        Manifest(String parentId, String parentRoot, Map<String, String> files) {
+            this.parentId = parentId;
+            this.parentRoot = parentRoot;
+            this.files = files;
+        }
+
+        byte[] encode() {
+            StringBuilder sb = new StringBuilder(MANIFEST_HEADER).append('\n');
+            sb.append(PARENT_PREFIX);
+            if (parentId == null) {
+                sb.append(NO_PARENT);
+            } else {
+                sb.append(parentId).append(':').append(parentRoot);
+            }
+            sb.append('\n');
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                sb.append(file.getKey()).append(':').append(file.getValue()).append('\n');
+            }
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        static Manifest decode(byte[] bytes) throws IOException {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+            String parent = reader.readLine();
+            if (!MANIFEST_HEADER.equals(parent) || (parent = reader.readLine()) == null
+                    || !parent.startsWith(PARENT_PREFIX)) {
+                throw new IOException("Bad chain manifest");
+            }
+            String parentId = null;
+            String parentRoot = null;
+            parent = parent.substring(PARENT_PREFIX.length());
+            if (!NO_PARENT.equals(parent)) {
+                int colon = parent.indexOf(':');
+                if (colon <= 0) throw new IOException("Bad parent line");
+                parentId = parent.substring(0, colon);
+                parentRoot = parent.substring(colon + 1);
+            }
+
+            Map<String, String> files = new LinkedHashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int colon = line.lastIndexOf(':');
+                if (colon <= 0 || files.put(line.substring(0, colon), line.substring(colon + 1)) != null) {
+                    throw new IOException("Bad manifest line: " + line);
+                }
+            }
+            return new Manifest(parentId, parentRoot, files);
+        }
+    }
+
+    /**
+     * Orders the given archives newest → oldest. Exactly one archive may be
+     * nobody's parent, every parent must be present with the recorded root
+     * hash, and the oldest must be a full backup.
+     */
+    static List<BackupArchive.Reader> order(List<BackupArchive.Reader> archives,
+            Map<BackupArchive.Reader, Manifest> manifests) throws IOException {
+        Map<String, BackupArchive.Reader> byId = new HashMap<>();
+        Set<String> parents = new HashSet<>();
+        for (BackupArchive.Reader archive : archives) {
+            if (byId.put(archive.getId(), archive) != null) {
+                throw new IOException("Same archive given twice");
+            }
+            if (manifests.get(archive).parentId != null) {
+                parents.add(manifests.get(archive).parentId);
+            }
+        }
+
+        BackupArchive.Reader newest = null;
+        for (BackupArchive.Reader archive : archives) {
+            if (!parents.contains(archive.getId())) {
+                if (newest != null) throw new IncompleteChainException("Archives from more than one chain");
+                newest = archive;
+            }
+        }
+        if (newest == null) throw new IncompleteChainException("Chain has a cycle");
+
+        List<BackupArchive.Reader> ordered = new ArrayList<>();
+        BackupArchive.Reader current = newest;
+        while (current != null) {
+            if (ordered.size() == archives.size()) throw new IncompleteChainException("Chain has a cycle");
+            ordered.add(current);
+            Manifest manifest = manifests.get(current);
+            if (manifest.parentId == null) break;
+            current = byId.get(manifest.parentId);
+            if (current == null) {
+                throw new IncompleteChainException("Missing parent " + manifest.parentId);
+            }
+            if (!current.getRootHash().equals(manifest.parentRoot)) {
+                throw new BackupArchive.IntegrityException("Parent " + manifest.parentId + " does not match");
+            }
+        }
+        if (ordered.size() != archives.size()) {
+            throw new IncompleteChainException("Archives that are not part of the chain");
+        }
+        return ordered;
+    }
+
+    // ═══════ LOCAL STATE ═══════
+
+    /**
+     * What this device's last backup was, where each link of its chain was
+     * written (oldest first) and which blobs the chain holds. Saved only after an export has been fully
+     * written. {@code keyCheck} tells whether a new backup uses the chain's
+     * password; a chain whose links need different passwords could not be
+     * restored in one go.
+     */
+    static final class State {
+        private static final String DESTINATION_PREFIX = "DESTINATION:";
+
+        final String archiveId;
+        final String rootHash;
+        final int length;
+        final String keyCheck;
+        final List<String> destinations; // empty in states saved before they were recorded
+        final Set<String> blobs;
+
+        State(String archiveId, String rootHash, int length, String keyCheck, List<String> destinations,
+                Set<String> blobs) {
+            this.archiveId = archiveId;
+            this.rootHash = rootHash;
+            this.length = length;
+            this.keyCheck = keyCheck;
+            this.destinations = Collections.unmodifiableList(destinations);
+            this.blobs = Collections.unmodifiableSet(blobs);
+        }
+
+        /**
+         * Whether a backup written to {@code destination} can build on this
+         * chain. Writing it over any link's file would destroy an ancestor it
+         * needs, so that (or unknown locations) takes a full backup.
+         */
+        boolean canExtend(String destination) {
+            return length < MAX_LENGTH && !destinations.isEmpty() && !destinations.contains(destination);
+        }
+
+        /**
+         * The destinations of a backup written to {@code destination} on top
+         * of {@code parent} (null for a full backup).
+         */
+        static List<String> destinationsAfter(State parent, String destination) {
+            List<String> destinations = parent != null ? new ArrayList<>(parent.destinations) : new ArrayList<String>();
+            destinations.add(destination);
+            return destinations;
+        }
+
+        static State load(File file) {
+            if (!file.isFile()) return null;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String id = reader.readLine();
+                String root = reader.readLine();
+                String length = reader.readLine();
+                String keyCheck = reader.readLine();
+                if (id == null || root == null || length == null || keyCheck == null) return null;
+                List<String> destinations = new ArrayList<>();
+                Set<String> blobs = new HashSet<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith(DESTINATION_PREFIX)) {
+                        destinations.add(line.substring(DESTINATION_PREFIX.length()));
+                    } else {
+                        blobs.add(line);
+                    }
+                }
+                return new State(id, root, Integer.parseInt(length), keyCheck, destinations, blobs);
+            } catch (IOException | NumberFormatException e) {
+                // A bad state only costs a full backup
+                return null;
+            }
+        }
+
+        void save(File file) throws IOException {
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(archiveId).append('\n').append(rootHash).append('\n').append(length).append('\n')
+                        .append(keyCheck).append('\n');
+                for (String destination : destinations) {
+                    sb.append(DESTINATION_PREFIX).append(destination).append('\n');
+                }
+                for (String blob : blobs) {
+                    sb.append(blob).append('\n');
+                }
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not save backup state");
+            }
+        }
+    }
+}
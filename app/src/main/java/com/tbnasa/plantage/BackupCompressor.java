@@ -0,0 +1,171 @@
+package com.tbnasa.plantage;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BackupCompressor — Prepares backup entries in parallel, writes them in order.
+ *
+ * Files are read, hashed and (unless they are already-compressed media, told
+ * apart by their magic bytes) deflated on a small pool. The archive itself is
+ * only touched by the calling thread: prepared entries are appended in the
+ * order they were added, and the oldest one is written whenever the bytes in
+ * flight would exceed the memory budget. A file larger than the budget is
+ * still accepted, once nothing else is in flight.
+ */
+final class BackupCompressor implements Closeable {
+
+    // Photos and thumbnails are held in memory between reading and writing
+    private static final long MEMORY_BUDGET = 16L * 1024 * 1024;
+    private static final int MAX_THREADS = 4;
+
+    private final BackupArchive.Writer archive;
+    private final int level;
+    private final Callback callback;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long inFlight;
+
+    private static final class Pending {
+        final String name;
+        final String expectedHash;
+        final long cost;
+        final Future<BackupArchive.PreparedEntry> result;
+
+        Pending(String name, String expectedHash, long cost, Future<BackupArchive.PreparedEntry> result) {
+            this.name = name;
+            this.expectedHash = expectedHash;
+            this.cost = cost;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Told about each entry right after it was appended, on the calling thread;
+     * a safe point to report progress, checkpoint the archive or stop.
+     */
+    interface Callback {
+        void entryWritten(long size) throws IOException;
+    }
+
+    /**
+     * {@code level} is the deflate level for entries that are not media.
+     */
+    BackupCompressor(BackupArchive.Writer archive, int level, Callback callback) {
+        this.archive = archive;
+        this.level = level;
+        this.callback = callback;
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "plantage-backup-compress");
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /**
+     * Queues {@code file} as entry {@code name}. {@code expectedHash}, if not
+     * null, is checked against the bytes actually read, so a file that changes
+     * between hashing and writing fails the backup.
+     */
+    void add(String name, File file, String expectedHash) throws IOException {
+        long cost = file.length();
+        while (!pending.isEmpty() && (inFlight + cost > MEMORY_BUDGET || pending.size() >= maxPending)) {
+            writeOldest();
+        }
+        inFlight += cost;
+        pending.add(new Pending(name, expectedHash, cost, executor.submit(() -> prepare(file))));
+    }
+
+    /**
+     * Writes everything still queued. The archive can then take other entries.
+     */
+    void drain() throws IOException {
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Pending p : pending) {
+            p.result.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    private void writeOldest() throws IOException {
+        Pending p = pending.remove();
+        BackupArchive.PreparedEntry prepared;
+        try {
+            prepared = p.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+        if (p.expectedHash != null && !p.expectedHash.equals(prepared.sha256)) {
+            throw new IOException("File changed during backup: " + p.name);
+        }
+        archive.addEntry(p.name, prepared);
+        inFlight -= p.cost;
+        callback.entryWritten(prepared.size);
+    }
+
+    private BackupArchive.PreparedEntry prepare(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("File too large: " + file.getName());
+        }
+        byte[] data = new byte[(int) length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+            if (in.read() != -1) {
+                throw new IOException("File changed during backup: " + file.getName());
+            }
+        }
+        int method = isCompressedMedia(data) ? BackupArchive.METHOD_STORED : BackupArchive.METHOD_DEFLATED;
+        return BackupArchive.PreparedEntry.prepare(data, data.length, method, level);
+    }
+
+    /**
+     * Whether {@code data} starts like a format that is already compressed
+     * (JPEG, PNG, GIF, WebP, HEIF/AVIF/MP4, zip, gzip); deflating those costs
+     * CPU and saves next to nothing.
+     */
+    static boolean isCompressedMedia(byte[] data) {
+        if (data.length < 12) return false;
+        int b0 = data[0] & 0xff, b1 = data[1] & 0xff, b2 = data[2] & 0xff, b3 = data[3] & 0xff;
+        return (b0 == 0xff && b1 == 0xd8 && b2 == 0xff)                          // JPEG
+                || (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G')           // PNG
+                || (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8')            // GIF
+                || (ascii(data, 0, "RIFF") && ascii(data, 8, "WEBP"))            // WebP
+                || ascii(data, 4, "ftyp")                                        // HEIC, AVIF, MP4
+                || (b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4)                // zip
+                || (b0 == 0x1f && b1 == 0x8b);                                   // gzip
+    }
+
+    private static boolean ascii(byte[] data, int offset, String s) {
+        byte[] expected = s.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < expected.length; i++) {
+            if (data[offset + i] != expected[i]) return false;
+        }
+        return true;
+    }
+}
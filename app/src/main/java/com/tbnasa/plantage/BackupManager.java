@@ -1,34 +1,60 @@
 package com.tbnasa.plantage;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
-import android.os.Build;
-import android.util.Base64;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.Observer;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+
+import com.tbnasa.plantage.model.LeafImage;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
@@ -39,146 +65,626 @@ import javax.crypto.spec.SecretKeySpec;
  * Plantage Yedekleme Yöneticisi.
  * .plntg uzantılı, şifreli ve yüksek sıkıştırmalı dosya sistemi.
  * Merkle-root benzeri bütünlük kontrolü sağlar.
+ *
+ * Yeni yedekler PLNTGv2 ({@link BackupArchive}) biçimindedir: ayrı ayrı
+ * doğrulanan parçalar ve şifreli bir dizin. PLNTGv1 (tek GCM akışında zip)
+ * dosyaları hâlâ geri yüklenebilir.
+ *
+ * Yedekler artımlıdır ({@link BackupChain}): fotoğraflar içerik özetiyle
+ * saklanır ve her yedek yalnızca zincirde henüz olmayanları yazar.
+ *
+ * Yedekleme ve geri yükleme {@link BackupWorker} ile ön planda çalışan bir
+ * WorkManager işidir: bayt bazında ilerleme bildirir, bildirimden iptal
+ * edilebilir ve süreç ölürse dışa aktarma son kontrol noktasından sürer.
  */
 public class BackupManager {
 
-    private static final String MAGIC_HEADER = "PLNTGv1";
+    private static final String MAGIC_V1 = "PLNTGv1";
     private static final int SALT_SIZE = 16;
     private static final int IV_SIZE = 12; // GCM standard
     private static final int KEY_SIZE = 256;
     private static final int ITERATIONS = 10000;
     private static final int TAG_BIT_LENGTH = 128;
+    // SQLite dosyasında 9, 6'dan belirgin biçimde küçük çıkmıyor ama çok daha yavaş
+    static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final String DB_ENTRY = "Plantage.db";
+    private static final String IMAGE_PREFIX = "images/";
+    private static final String MANIFEST_ENTRY = "manifest.mf";
+
+    private static final String STAGING_DIR = "restore_staging";
+    private static final String PROGRESS_FILE = "progress";
+    private static final String SPOOL_PREFIX = "import_source_";
+    private static final String CHAIN_STATE_FILE = "backup_chain";
+    private static final String DB_SNAPSHOT_FILE = "backup_database.db";
+    private static final String PREFS_NAME = "PlantagePrefs";
+    private static final String KEY_REPORTED_JOB = "backup_reported_job";
+
+    /** Geri yüklemede zincirin bir halkası eksik; {@link RestoreListener#onError} ile bildirilir. */
+    public static final String ERROR_INCOMPLETE_CHAIN = "incomplete_chain";
+    /** İş kullanıcı tarafından iptal edildi; {@code onError} ile bildirilir. */
+    public static final String ERROR_CANCELLED = "cancelled";
+    // Süreç ölürse dışa aktarma en fazla bu kadar baştan yazılır
+    private static final long CHECKPOINT_INTERVAL = 16L * 1024 * 1024;
+    private static final long FREE_SPACE_RESERVE = 32L * 1024 * 1024;
+    private static final int MAX_MANIFEST_BYTES = 4 * 1024 * 1024;
 
     private final Context context;
+    private volatile int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
 
     public BackupManager(Context context) {
         this.context = context;
     }
 
+    /**
+     * Veritabanı ve metin girdileri için deflate seviyesi (0-9). Fotoğraflar
+     * zaten sıkıştırılmış olduğundan seviyeden bağımsız olarak olduğu gibi saklanır.
+     * Seviye {@link #exportData} ile kuyruğa alınan işin girdisine yazılır.
+     */
+    public void setCompressionLevel(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level " + level);
+        }
+        compressionLevel = level;
+    }
+
     public interface BackupListener {
         void onProgress(String message);
-        void onSuccess(File file);
+        /** İşlenen bayt / toplam bayt. */
+        default void onProgress(long bytesDone, long bytesTotal) {
+        }
+        void onSuccess(Uri destination);
         void onError(String error);
     }
 
     public interface RestoreListener {
         void onProgress(String message);
+        /** İşlenen bayt / toplam bayt. */
+        default void onProgress(long bytesDone, long bytesTotal) {
+        }
         void onSuccess();
         void onError(String error);
     }
 
+    // Dışa aktarma kontrol noktalarının (şifreli) saklandığı yer; BackupWorker sağlar
+    interface CheckpointStore {
+        byte[] load();
+        void save(byte[] checkpoint) throws IOException;
+        void clear();
+    }
+
+    /**
+     * Yedekleme/geri yükleme işlerinin durumu, {@link #observeJobs} ile ana iş
+     * parçacığında bildirilir. Biten bir iş yalnızca bir kez bildirilir; ekran
+     * yeniden oluşturulunca süren işe yeniden bağlanılır.
+     */
+    public interface JobListener {
+        void onProgress(boolean export, String message);
+
+        /** İşlenen bayt / toplam bayt. */
+        void onProgress(boolean export, long bytesDone, long bytesTotal);
+
+        /** {@code error} başarıda null, iptalde {@link #ERROR_CANCELLED}. */
+        void onFinished(boolean export, String error);
+    }
+
+    /**
+     * Tüm verileri (DB + Fotoğraflar) seçilen konuma .plntg olarak yedekler.
+     * İş arka planda sürer; durumu {@link #observeJobs} ile izlenir.
+     * Dönen kimlik {@link #cancel} ile kullanılır.
+     */
+    public UUID exportData(Uri destination, String password) {
+        return BackupWorker.enqueueExport(context, destination, password, compressionLevel);
+    }
+
+    /**
+     * .plntg dosyalarından verileri geri yükler. Artımlı bir yedek, zincirdeki
+     * eski yedeklerin hepsiyle birlikte verilmelidir (sıra önemli değil).
+     * İş arka planda sürer; durumu {@link #observeJobs} ile izlenir.
+     */
+    public UUID importData(List<Uri> fileUris, String password) {
+        return BackupWorker.enqueueImport(context, fileUris, password);
+    }
+
+    /**
+     * Süren bir yedekleme/geri yükleme işini iptal eder. Yarım dışa aktarma
+     * silinir; geri yüklemede canlı veriye dokunulmamış olur.
+     */
+    public void cancel(UUID jobId) {
+        WorkManager.getInstance(context).cancelWorkById(jobId);
+    }
+
+    /**
+     * Yedekleme işlerini {@code owner} yaşadığı sürece izler (ör. bir
+     * fragment'ın görünüm yaşam döngüsü). İşi başlatan ekran kapanmış olsa da
+     * süren iş yeni ekrana bağlanır.
+     */
+    public void observeJobs(LifecycleOwner owner, JobListener listener) {
+        WorkManager.getInstance(context).getWorkInfosForUniqueWorkLiveData(BackupWorker.UNIQUE_WORK)
+                .observe(owner, new JobObserver(listener));
+    }
+
+    // İşin durumunu dinleyiciye aktarır; sonucu, süreç ölse de bir kez bildirmek için kaydeder
+    private final class JobObserver implements Observer<List<WorkInfo>> {
+        private final JobListener listener;
+        private String lastMessage;
+
+        JobObserver(JobListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChanged(List<WorkInfo> infos) {
+            if (infos == null || infos.isEmpty()) return;
+            // REPLACE yüzünden bu adda yalnızca son başlatılan iş kalır
+            WorkInfo info = infos.get(infos.size() - 1);
+            boolean export = BackupWorker.isExport(info);
+            if (!info.getState().isFinished()) {
+                Data data = info.getProgress();
+                String message = data.getString(BackupWorker.KEY_MESSAGE);
+                if (message != null && !message.equals(lastMessage)) {
+                    lastMessage = message;
+                    listener.onProgress(export, message);
+                }
+                long total = data.getLong(BackupWorker.KEY_TOTAL, -1);
+                if (total >= 0) {
+                    listener.onProgress(export, data.getLong(BackupWorker.KEY_DONE, 0), total);
+                }
+                return;
+            }
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String id = info.getId().toString();
+            if (id.equals(prefs.getString(KEY_REPORTED_JOB, null))) return;
+            prefs.edit().putString(KEY_REPORTED_JOB, id).commit();
+            if (info.getState() == WorkInfo.State.SUCCEEDED) {
+                listener.onFinished(export, null);
+            } else if (info.getState() == WorkInfo.State.CANCELLED) {
+                listener.onFinished(export, ERROR_CANCELLED);
+            } else {
+                String error = info.getOutputData().getString(BackupWorker.KEY_ERROR);
+                listener.onFinished(export, error != null ? error : "");
+            }
+        }
+    }
+
     /**
-     * Tüm verileri (DB + Fotoğraflar) .plntg dosyasına yedekler.
+     * Dışa aktarmayı bu iş parçacığında yapar ({@link BackupWorker} çağırır).
+     * {@code checkpoints} içinde aynı hedefe ait bir kontrol noktası varsa
+     * yazma oradan sürer. İptalde {@link OperationCanceledException} fırlatılır;
+     * hedef dosya ve kontrol noktası, işin yeniden başlayabilmesi için kalır.
      */
-    public void exportData(String password, BackupListener listener) {
-        new Thread(() -> {
+    void runExport(Uri destination, String password, BackupListener listener, CancellationSignal signal,
+            CheckpointStore checkpoints) {
+        try {
+            listener.onProgress("Hazırlanıyor...");
+            deleteLegacyExportFiles();
+
+            File stateFile = new File(context.getFilesDir(), CHAIN_STATE_FILE);
+            BackupChain.State parent = BackupChain.State.load(stateFile);
+            if (parent != null && (!parent.canExtend(destination.toString())
+                    || !matchesKeyCheck(password, parent.keyCheck))) {
+                // Zincir çok uzun, şifre değişti ya da hedef zincirdeki bir yedeğin kendisi: yeni tam yedek
+                parent = null;
+            }
+            String parentId = parent != null ? parent.archiveId : "-";
+            BackupArchive.Checkpoint resume = loadCheckpoint(checkpoints, destination, parentId);
+
+            // Kontrol noktası için konumlanabilen ve fsync edilebilen bir tanımlayıcı gerekir
+            ParcelFileDescriptor pfd = null;
             try {
-                listener.onProgress("Hazırlanıyor...");
-                
-                File exportDir = new File(context.getCacheDir(), "exports");
-                if (!exportDir.exists()) exportDir.mkdirs();
-                
-                File outputFile = new File(exportDir, "Plantage_Backup_" + System.currentTimeMillis() + ".plntg");
-                
-                // 1. Geçici zip oluştur (Yüksek sıkıştırma)
-                File tempZip = new File(context.getCacheDir(), "temp_backup.zip");
-                createCompressedZip(tempZip, listener);
-
-                // 2. Şifrele ve .plntg formatına dönüştür
-                encryptFile(tempZip, outputFile, password);
-                
-                tempZip.delete();
-                listener.onSuccess(outputFile);
-                
-            } catch (Exception e) {
-                e.printStackTrace();
-                listener.onError(e.getMessage());
-            }
-        }).start();
+                pfd = context.getContentResolver().openFileDescriptor(destination, resume != null ? "rw" : "rwt");
+            } catch (FileNotFoundException | UnsupportedOperationException | IllegalArgumentException e) {
+                resume = null;
+            }
+            OutputStream out;
+            FileChannel channel = null;
+            if (pfd != null) {
+                FileOutputStream fileOut = new ParcelFileDescriptor.AutoCloseOutputStream(pfd);
+                channel = fileOut.getChannel();
+                if (resume != null && channel.size() < resume.getOutputLength()) {
+                    resume = null;
+                }
+                long start = resume != null ? resume.getOutputLength() : 0;
+                channel.truncate(start);
+                channel.position(start);
+                out = fileOut;
+            } else {
+                out = context.getContentResolver().openOutputStream(destination);
+                if (out == null) {
+                    throw new IOException("Hedef dosya açılamadı.");
+                }
+            }
+            if (resume != null) {
+                listener.onProgress("Kaldığı yerden sürdürülüyor...");
+            }
+
+            ExportJob job = new ExportJob(listener, signal, channel != null ? checkpoints : null, channel,
+                    destination, parentId);
+            BackupChain.State state;
+            try {
+                state = writeEncryptedBackup(out, password, parent, resume, job);
+            } finally {
+                out.close();
+            }
+            state.save(stateFile);
+            checkpoints.clear();
+            listener.onSuccess(destination);
+
+        } catch (Exception e) {
+            if (e instanceof OperationCanceledException) {
+                throw (OperationCanceledException) e;
+            }
+            e.printStackTrace();
+            checkpoints.clear();
+            discardExport(destination);
+            listener.onError(e.getMessage());
+        }
+    }
+
+    /**
+     * Geri yüklemeyi bu iş parçacığında yapar ({@link BackupWorker} çağırır).
+     * Şifre çözme ve açma tek geçişte hazırlık klasörüne yapılır; her şey
+     * doğrulandıktan sonra veritabanı ve fotoğraflar yeniden adlandırmayla
+     * değiştirilir. Canlı veritabanının üzerine hiçbir zaman yazılmaz.
+     * İptalde {@link OperationCanceledException} fırlatılır.
+     */
+    void runImport(List<Uri> fileUris, String password, RestoreListener listener, CancellationSignal signal) {
+        File staging = new File(context.getFilesDir(), STAGING_DIR);
+        List<FileChannel> channels = new ArrayList<>();
+        boolean resumable = false;
+        try {
+            deleteLegacyImportFiles();
+
+            listener.onProgress("Şifre çözülüyor...");
+            try {
+                for (int i = 0; i < fileUris.size(); i++) {
+                    channels.add(openChannel(fileUris.get(i), spoolFile(i)));
+                }
+                if (channels.size() == 1 && !BackupArchive.MAGIC.equals(readMagic(channels.get(0)))) {
+                    deleteRecursive(staging);
+                    if (!staging.mkdirs()) {
+                        throw new IOException("Hazırlık klasörü oluşturulamadı.");
+                    }
+                    FileChannel source = channels.get(0);
+                    Progress progress = new Progress(listener::onProgress, signal, source.size());
+                    extractVerified(progress.wrap(Channels.newInputStream(source.position(0))), password, staging);
+                } else {
+                    List<BackupArchive.Reader> archives = new ArrayList<>();
+                    for (FileChannel channel : channels) {
+                        BackupArchive.Reader archive = BackupArchive.Reader.open(channel);
+                        archive.unlock(deriveKey(password, archive.getSalt(), archive.getIterations()));
+                        archives.add(archive);
+                    }
+                    List<RestoreItem> items = planRestore(archives);
+                    resumable = true;
+                    restoreV2(items, staging, listener, signal);
+                }
+            } finally {
+                for (int i = 0; i < fileUris.size(); i++) {
+                    if (i < channels.size()) {
+                        closeQuietly(channels.get(i));
+                    }
+                    spoolFile(i).delete();
+                }
+            }
+
+            // Bundan sonrası kısa ve yarıda kesilmemeli
+            signal.throwIfCanceled();
+            listener.onProgress("Veriler geri yükleniyor...");
+            resumable = false;
+            swapIn(staging);
+            deleteRecursive(staging);
+
+            listener.onSuccess();
+        } catch (Exception e) {
+            e.printStackTrace();
+            // Doğrulanmış v2 girdileri kalır; aynı yedek yeniden seçilince kaldığı yerden sürer.
+            // Dinleyici yeni bir geri yükleme başlatmadan önce temizlenir.
+            if (!resumable || e instanceof BackupArchive.IntegrityException) {
+                deleteRecursive(staging);
+            }
+            if (e instanceof OperationCanceledException) {
+                throw (OperationCanceledException) e;
+            }
+            listener.onError(e instanceof BackupChain.IncompleteChainException
+                    ? ERROR_INCOMPLETE_CHAIN : "Geçersiz şifre veya bozuk dosya.");
+        }
+    }
+
+    /**
+     * v2 yedeğinden tek bir girdiyi (veritabanı veya "images/..." fotoğrafı)
+     * {@code destination} dosyasına çıkarır. Yalnızca girdinin kapsadığı
+     * parçaların şifresi çözülür. Artımlı bir yedekte fotoğraf, bloğu daha
+     * eski bir halkadaysa bulunamaz. Ana iş parçacığında çağrılmamalıdır.
+     */
+    public void extractEntry(Uri fileUri, String password, String entryName, File destination) throws Exception {
+        File spool = spoolFile(0);
+        try (FileChannel channel = openChannel(fileUri, spool)) {
+            BackupArchive.Reader archive = BackupArchive.Reader.open(channel);
+            archive.unlock(deriveKey(password, archive.getSalt(), archive.getIterations()));
+            BackupArchive.Entry entry = archive.find(entryName);
+            BackupArchive.Entry manifestEntry = archive.find(BackupChain.MANIFEST_ENTRY);
+            if (entry == null && manifestEntry != null) {
+                String hash = readChainManifest(archive, manifestEntry).files.get(entryName);
+                entry = hash == null ? null : archive.find(BackupChain.BLOB_PREFIX + hash);
+            }
+            if (entry == null) {
+                throw new FileNotFoundException(entryName);
+            }
+            File temp = new File(destination.getPath() + ".tmp");
+            try (InputStream in = archive.open(entry)) {
+                copyToFile(in, temp, null, entry.size);
+            }
+            if (!temp.renameTo(destination)) {
+                temp.delete();
+                throw new IOException("Dosya yazılamadı: " + destination);
+            }
+        } finally {
+            spool.delete();
+        }
     }
 
     /**
-     * .plntg dosyasından verileri geri yükler.
+     * Yedeği PLNTGv2 olarak yazar: girdiler sıkıştırılıp sabit boyutlu, ayrı
+     * ayrı doğrulanan parçalar halinde şifrelenir; sonda şifreli dizin gelir.
+     * Fotoğraflar "blobs/<özet>" olarak yalnızca {@code parent} zincirinde
+     * yoksa yazılır. Yedek tamamlanınca kaydedilecek zincir durumunu döner.
      */
-    public void importData(Uri fileUri, String password, RestoreListener listener) {
-        new Thread(() -> {
+    private BackupChain.State writeEncryptedBackup(OutputStream out, String password, BackupChain.State parent,
+            BackupArchive.Checkpoint resume, ExportJob job) throws Exception {
+        OutputStream buffered = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+        BackupArchive.Writer archive;
+        if (resume != null) {
+            archive = BackupArchive.Writer.resume(buffered,
+                    deriveKey(password, resume.getSalt(), resume.getIterations()), resume);
+        } else {
+            byte[] salt = new byte[SALT_SIZE];
+            new SecureRandom().nextBytes(salt);
+            archive = new BackupArchive.Writer(buffered, deriveKey(password, salt, ITERATIONS), salt, ITERATIONS,
+                    BackupArchive.DEFAULT_CHUNK_SIZE);
+        }
+        job.archive = archive;
+
+        int level = compressionLevel;
+
+        // Yazılacak fotoğraflar: zincirde ve (sürdürülüyorsa) bu yedekte henüz olmayan içerikler
+        Set<String> blobs = parent != null ? new HashSet<>(parent.blobs) : new HashSet<String>();
+        Map<String, String> files = new LinkedHashMap<>();
+        Map<String, File> pending = new LinkedHashMap<>();
+        Map<String, LeafImage> images = new HashMap<>();
+        DatabaseHelper db = DatabaseHelper.getInstance(context);
+        db.beginAccess();
+        try {
+            for (LeafImage image : db.getAllLeafImages()) {
+                images.put(image.path, image);
+            }
+        } finally {
+            db.endAccess();
+        }
+        File[] photos = new File(context.getFilesDir(), ImageIngestor.IMAGE_DIR).listFiles();
+        if (photos != null) {
+            Arrays.sort(photos);
+            for (File f : photos) {
+                if (!f.isFile()) continue;
+                String hash = contentHash(f, images.get(f.getAbsolutePath()));
+                files.put(IMAGE_PREFIX + f.getName(), hash);
+                String name = BackupChain.BLOB_PREFIX + hash;
+                if (blobs.add(hash) && !archive.contains(name)) {
+                    pending.put(name, f);
+                }
+            }
+        }
+        long done = 0;
+        for (BackupArchive.Entry entry : archive.getEntries()) {
+            done += entry.size;
+        }
+        long total = done;
+        for (File f : pending.values()) {
+            total += f.length();
+        }
+        boolean writeDatabase = !archive.contains(DB_ENTRY);
+        if (writeDatabase) {
+            total += context.getDatabasePath(DB_ENTRY).length();
+        }
+        job.start(done, total);
+
+        // 1. Veritabanını ekle: kilit altında yalnızca yerel bir kopya alınır,
+        // sıkıştırma, şifreleme ve hedefe yazma uygulamanın yazmalarını bekletmez
+        if (writeDatabase) {
+            File snapshot = new File(context.getCacheDir(), DB_SNAPSHOT_FILE);
             try {
-                listener.onProgress("Dosya okunuyor...");
-                
-                InputStream is = context.getContentResolver().openInputStream(fileUri);
-                File encryptedFile = new File(context.getCacheDir(), "import_temp.plntg");
-                copyInputStreamToFile(is, encryptedFile);
-                
-                File decryptedZip = new File(context.getCacheDir(), "decrypted.zip");
-                
-                listener.onProgress("Şifre çözülüyor...");
-                decryptFile(encryptedFile, decryptedZip, password);
-                
-                listener.onProgress("Veriler geri yükleniyor...");
-                extractAndRestore(decryptedZip);
-                
-                encryptedFile.delete();
-                decryptedZip.delete();
-                
-                listener.onSuccess();
-            } catch (Exception e) {
-                e.printStackTrace();
-                listener.onError("Geçersiz şifre veya bozuk dosya.");
-            }
-        }).start();
-    }
-
-    private void createCompressedZip(File zipFile, BackupListener listener) throws Exception {
-        FileOutputStream fos = new FileOutputStream(zipFile);
-        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
-        zos.setLevel(Deflater.BEST_COMPRESSION); // Maksimum sıkıştırma
-
-        List<String> fileHashes = new ArrayList<>();
-
-        // 1. Veritabanını ekle
-        File dbFile = context.getDatabasePath("Plantage.db");
-        if (dbFile.exists()) {
-            addFileToZip(zos, dbFile, "Plantage.db", fileHashes);
-        }
-
-        // 2. Fotoğrafları ekle
-        File photoDir = new File(context.getFilesDir(), "leaf_images");
-        if (photoDir.exists() && photoDir.isDirectory()) {
-            File[] files = photoDir.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    addFileToZip(zos, f, "images/" + f.getName(), fileHashes);
+                DatabaseHelper.getInstance(context).copyDatabaseTo(snapshot);
+                try (InputStream in = new FileInputStream(snapshot);
+                     OutputStream entry = archive.openEntry(DB_ENTRY, BackupArchive.METHOD_DEFLATED, level)) {
+                    byte[] buf = new byte[STREAM_BUFFER_SIZE];
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        entry.write(buf, 0, len);
+                    }
                 }
+            } finally {
+                snapshot.delete();
             }
+            List<BackupArchive.Entry> written = archive.getEntries();
+            job.entryWritten(written.get(written.size() - 1).size);
         }
 
-        // 3. Merkle Manifest (Bütünlük Kontrolü)
-        String manifest = createManifest(fileHashes);
-        ZipEntry manifestEntry = new ZipEntry("manifest.mf");
-        zos.putNextEntry(manifestEntry);
-        zos.write(manifest.getBytes(StandardCharsets.UTF_8));
-        zos.closeEntry();
+        // 2. Fotoğrafları ekle: paralel hazırlanıp sırayla yazılır
+        try (BackupCompressor compressor = new BackupCompressor(archive, level, job)) {
+            for (Map.Entry<String, File> blob : pending.entrySet()) {
+                String name = blob.getKey();
+                compressor.add(name, blob.getValue(), name.substring(BackupChain.BLOB_PREFIX.length()));
+            }
+            compressor.drain();
+        }
+
+        // 3. Zincir manifesti (dosya → özet, üst yedek)
+        BackupChain.Manifest manifest = new BackupChain.Manifest(parent != null ? parent.archiveId : null,
+                parent != null ? parent.rootHash : null, files);
+        try (OutputStream entry = archive.openEntry(BackupChain.MANIFEST_ENTRY, BackupArchive.METHOD_DEFLATED, level)) {
+            entry.write(manifest.encode());
+        }
 
-        zos.close();
+        // 4. Dizin (Merkle kök özeti dahil) ve kapanış
+        archive.finish();
+        return new BackupChain.State(archive.getId(), archive.getRootHash(), parent != null ? parent.length + 1 : 1,
+                parent != null ? parent.keyCheck : keyCheck(password),
+                BackupChain.State.destinationsAfter(parent, job.destination.toString()), blobs);
     }
 
-    private void addFileToZip(ZipOutputStream zos, File file, String entryName, List<String> hashes) throws IOException, NoSuchAlgorithmException {
-        ZipEntry entry = new ZipEntry(entryName);
-        zos.putNextEntry(entry);
-        
-        FileInputStream fis = new FileInputStream(file);
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] buffer = new byte[8192];
-        int len;
-        while ((len = fis.read(buffer)) > 0) {
-            zos.write(buffer, 0, len);
-            md.update(buffer, 0, len);
+    // Dışa aktarmanın ilerlemesi, iptali ve kontrol noktaları; girdiler arasında çağrılır
+    private static final class ExportJob implements BackupCompressor.Callback {
+        private final BackupListener listener;
+        private final CancellationSignal signal;
+        private final CheckpointStore checkpoints; // Hedef konumlanamıyorsa null
+        private final FileChannel channel;
+        private final Uri destination;
+        private final String parentId;
+        BackupArchive.Writer archive;
+        private long done;
+        private long total;
+        private long sinceCheckpoint;
+
+        ExportJob(BackupListener listener, CancellationSignal signal, CheckpointStore checkpoints,
+                FileChannel channel, Uri destination, String parentId) {
+            this.listener = listener;
+            this.signal = signal;
+            this.checkpoints = checkpoints;
+            this.channel = channel;
+            this.destination = destination;
+            this.parentId = parentId;
+        }
+
+        void start(long done, long total) {
+            this.done = done;
+            this.total = total;
+            listener.onProgress(done, total);
+            signal.throwIfCanceled();
+        }
+
+        @Override
+        public void entryWritten(long size) throws IOException {
+            done += size;
+            listener.onProgress(Math.min(done, total), total);
+            sinceCheckpoint += size;
+            if (checkpoints != null && sinceCheckpoint >= CHECKPOINT_INTERVAL) {
+                BackupArchive.Checkpoint checkpoint = archive.checkpoint();
+                channel.force(false);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream record = new DataOutputStream(bytes);
+                record.writeUTF(destination.toString());
+                record.writeUTF(parentId);
+                record.write(checkpoint.encode());
+                record.flush();
+                checkpoints.save(bytes.toByteArray());
+                sinceCheckpoint = 0;
+            }
+            signal.throwIfCanceled();
+        }
+    }
+
+    // Aynı hedef ve aynı üst yedek için kaydedilmiş kontrol noktası; yoksa null
+    private static BackupArchive.Checkpoint loadCheckpoint(CheckpointStore checkpoints, Uri destination,
+            String parentId) {
+        byte[] bytes = checkpoints.load();
+        if (bytes == null) return null;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (!in.readUTF().equals(destination.toString()) || !in.readUTF().equals(parentId)) {
+                return null;
+            }
+            byte[] rest = new byte[in.available()];
+            in.readFully(rest);
+            return BackupArchive.Checkpoint.decode(rest);
+        } catch (IOException e) {
+            // Bozuk kontrol noktası yalnızca baştan yazmaya mal olur
+            return null;
+        }
+    }
+
+    // Okunan baytları bildirir; iptal edilmişse bir sonraki okumada durur
+    private interface ByteListener {
+        void onProgress(long done, long total);
+    }
+
+    private static final class Progress {
+        private final ByteListener listener;
+        private final CancellationSignal signal;
+        private final long total;
+        private long done;
+
+        Progress(ByteListener listener, CancellationSignal signal, long total) {
+            this.listener = listener;
+            this.signal = signal;
+            this.total = total;
+            listener.onProgress(0, total);
+        }
+
+        void add(long n) {
+            done += n;
+            listener.onProgress(Math.min(done, total), total);
+            signal.throwIfCanceled();
+        }
+
+        InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) add(1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) add(n);
+                    return n;
+                }
+            };
+        }
+    }
+
+    // Kayıtlı özet, dosya boyutu tutuyorsa yeniden kullanılır; yoksa hesaplanıp kaydedilir
+    private String contentHash(File file, LeafImage image) throws IOException {
+        if (image != null && image.contentHash != null && image.byteSize == file.length()) {
+            return image.contentHash;
+        }
+        String hash = ImageIngestor.sha256(file);
+        if (image != null) {
+            DatabaseHelper db = DatabaseHelper.getInstance(context);
+            db.beginAccess();
+            try {
+                db.setImageContentHash(image.id, hash);
+            } finally {
+                db.endAccess();
+            }
+        }
+        return hash;
+    }
+
+    // Şifrenin kendisi değil, ondan türetilen anahtarın özeti saklanır: "salt:özet"
+    private String keyCheck(String password) throws Exception {
+        byte[] salt = new byte[SALT_SIZE];
+        new SecureRandom().nextBytes(salt);
+        return keyCheck(password, salt);
+    }
+
+    private String keyCheck(String password, byte[] salt) throws Exception {
+        byte[] check = MessageDigest.getInstance("SHA-256").digest(deriveKey(password, salt, ITERATIONS).getEncoded());
+        return BackupArchive.toHex(salt) + ":" + BackupArchive.toHex(check);
+    }
+
+    private boolean matchesKeyCheck(String password, String keyCheck) throws Exception {
+        int colon = keyCheck.indexOf(':');
+        if (colon != SALT_SIZE * 2) return false;
+        byte[] salt = new byte[SALT_SIZE];
+        for (int i = 0; i < SALT_SIZE; i++) {
+            salt[i] = (byte) Integer.parseInt(keyCheck.substring(i * 2, i * 2 + 2), 16);
         }
-        zos.closeEntry();
-        fis.close();
-        
-        String hash = bytesToHex(md.digest());
-        hashes.add(entryName + ":" + hash);
+        return MessageDigest.isEqual(keyCheck(password, salt).getBytes(StandardCharsets.US_ASCII),
+                keyCheck.getBytes(StandardCharsets.US_ASCII));
     }
 
     private String createManifest(List<String> hashes) throws NoSuchAlgorithmException {
@@ -193,112 +699,456 @@ public class BackupManager {
         return sb.toString();
     }
 
-    private void encryptFile(File input, File output, String password) throws Exception {
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[SALT_SIZE];
-        random.nextBytes(salt);
-        
-        byte[] iv = new byte[IV_SIZE];
-        random.nextBytes(iv);
+    private InputStream openDecryptedStream(InputStream in, String password) throws Exception {
+        DataInputStream header = new DataInputStream(in);
 
-        SecretKey key = deriveKey(password, salt);
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec spec = new GCMParameterSpec(TAG_BIT_LENGTH, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, key, spec);
-
-        FileOutputStream fos = new FileOutputStream(output);
-        // Header
-        fos.write(MAGIC_HEADER.getBytes(StandardCharsets.UTF_8));
-        // Salt
-        fos.write(salt);
-        // IV
-        fos.write(iv);
-
-        CipherOutputStream cos = new CipherOutputStream(fos, cipher);
-        FileInputStream fis = new FileInputStream(input);
-        byte[] buffer = new byte[8192];
-        int len;
-        while ((len = fis.read(buffer)) > 0) {
-            cos.write(buffer, 0, len);
-        }
-        cos.close();
-        fis.close();
-    }
-
-    private void decryptFile(File input, File output, String password) throws Exception {
-        FileInputStream fis = new FileInputStream(input);
-        
         // Check Header
-        byte[] header = new byte[MAGIC_HEADER.length()];
-        fis.read(header);
-        if (!new String(header, StandardCharsets.UTF_8).equals(MAGIC_HEADER)) {
+        byte[] magic = new byte[MAGIC_V1.length()];
+        header.readFully(magic);
+        if (!new String(magic, StandardCharsets.UTF_8).equals(MAGIC_V1)) {
             throw new Exception("Geçersiz dosya formatı.");
         }
 
         // Read Salt
         byte[] salt = new byte[SALT_SIZE];
-        fis.read(salt);
+        header.readFully(salt);
 
         // Read IV
         byte[] iv = new byte[IV_SIZE];
-        fis.read(iv);
+        header.readFully(iv);
 
-        SecretKey key = deriveKey(password, salt);
+        SecretKey key = deriveKey(password, salt, ITERATIONS);
         Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
         GCMParameterSpec spec = new GCMParameterSpec(TAG_BIT_LENGTH, iv);
         cipher.init(Cipher.DECRYPT_MODE, key, spec);
 
-        CipherInputStream cis = new CipherInputStream(fis, cipher);
-        FileOutputStream fos = new FileOutputStream(output);
-        byte[] buffer = new byte[8192];
-        int len;
-        while ((len = cis.read(buffer)) > 0) {
-            fos.write(buffer, 0, len);
-        }
-        fos.close();
-        cis.close();
+        return new CipherInputStream(in, cipher);
     }
 
-    private void extractAndRestore(File zipFile) throws Exception {
-        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipFile)));
+    /**
+     * Şifreyi çözüp zip'i tek geçişte hazırlık klasörüne açar. Her girdinin
+     * özeti yazılırken hesaplanır; akış bitince GCM etiketi, manifest ve kök
+     * özet doğrulanır.
+     */
+    private void extractVerified(InputStream in, String password, File staging) throws Exception {
+        InputStream plain = openDecryptedStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE), password);
+        ZipInputStream zis = new ZipInputStream(plain);
+
+        Map<String, String> hashes = new HashMap<>();
+        String manifest = null;
+        // Sıkıştırma bombası diski doldurmasın
+        long budget = staging.getUsableSpace() - FREE_SPACE_RESERVE;
+
         ZipEntry entry;
-        
-        // Note: In a real app, we should verify the manifest hashes here
-        // For brevity, we proceed with extraction
-        
         while ((entry = zis.getNextEntry()) != null) {
-            if (entry.getName().equals("Plantage.db")) {
-                File dbFile = context.getDatabasePath("Plantage.db");
-                // DB dosyasını değiştirmeden önce veritabanını kapatmak gerekebilir, 
-                // ama burada sadece üzerine yazıyoruz.
-                copyInputStreamToFile(zis, dbFile);
-            } else if (entry.getName().startsWith("images/")) {
-                String fileName = entry.getName().substring(7);
-                File photoDir = new File(context.getFilesDir(), "leaf_images");
-                if (!photoDir.exists()) photoDir.mkdirs();
-                File photoFile = new File(photoDir, fileName);
-                copyInputStreamToFile(zis, photoFile);
+            String name = entry.getName();
+            if (MANIFEST_ENTRY.equals(name)) {
+                if (manifest != null) {
+                    throw new IOException("Manifest birden fazla.");
+                }
+                manifest = readManifest(zis);
+            } else {
+                File target = stagedFile(staging, name);
+                if (target == null || hashes.containsKey(name)) {
+                    throw new IOException("Beklenmeyen girdi: " + name);
+                }
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                budget -= copyToFile(zis, target, md, budget);
+                hashes.put(name, bytesToHex(md.digest()));
             }
             zis.closeEntry();
         }
+
+        // ZipInputStream merkezi dizinde durur; GCM etiketi ancak akışın sonunda doğrulanır
+        byte[] rest = new byte[8192];
+        while (plain.read(rest) != -1) {
+            // merkezi dizin
+        }
         zis.close();
+
+        verifyManifest(manifest, hashes);
+    }
+
+    /**
+     * Yalnızca bilinen girdilere hazırlık klasöründe bir dosya verir. Klasör
+     * dışına çıkan ("../") veya alt klasör içeren adlar için null döner.
+     */
+    private File stagedFile(File staging, String name) throws IOException {
+        if (DB_ENTRY.equals(name)) {
+            return new File(staging, DB_ENTRY);
+        }
+        if (!name.startsWith(IMAGE_PREFIX)) {
+            return null;
+        }
+        String fileName = name.substring(IMAGE_PREFIX.length());
+        if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")
+                || fileName.indexOf('/') >= 0 || fileName.indexOf('\\') >= 0) {
+            return null;
+        }
+        File dir = new File(staging, ImageIngestor.IMAGE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Hazırlık klasörü oluşturulamadı.");
+        }
+        File file = new File(dir, fileName);
+        if (!dir.getCanonicalFile().equals(file.getCanonicalFile().getParentFile())) {
+            return null;
+        }
+        return file;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(in).readFully(bytes);
+        return bytes;
+    }
+
+    private String readManifest(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            if (out.size() + len > MAX_MANIFEST_BYTES) {
+                throw new IOException("Manifest çok büyük.");
+            }
+            out.write(buf, 0, len);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Manifest, girdilerinden yeniden üretildiğinde birebir aynı olmalı (kök özet
+     * dahil) ve açılan dosyaları tam olarak listelemelidir.
+     */
+    private void verifyManifest(String manifest, Map<String, String> hashes) throws Exception {
+        if (manifest == null) {
+            throw new IOException("Manifest eksik.");
+        }
+        List<String> lines = new ArrayList<>(Arrays.asList(manifest.split("\n")));
+        lines.remove(lines.size() - 1); // ROOT_HASH
+        if (!createManifest(lines).equals(manifest)) {
+            throw new IOException("Kök özet eşleşmiyor.");
+        }
+
+        Map<String, String> expected = new HashMap<>();
+        for (String line : lines) {
+            int colon = line.lastIndexOf(':');
+            if (colon <= 0 || expected.put(line.substring(0, colon), line.substring(colon + 1)) != null) {
+                throw new IOException("Geçersiz manifest satırı: " + line);
+            }
+        }
+        if (!expected.equals(hashes)) {
+            throw new IOException("Dosya özetleri manifest ile eşleşmiyor.");
+        }
+        if (!hashes.containsKey(DB_ENTRY)) {
+            throw new IOException("Yedekte veritabanı yok.");
+        }
+    }
+
+    // Hazırlık klasöründeki bir dosya ve onu taşıyan yedek girdisi
+    private static final class RestoreItem {
+        final String name;
+        final BackupArchive.Reader archive;
+        final BackupArchive.Entry entry;
+
+        RestoreItem(String name, BackupArchive.Reader archive, BackupArchive.Entry entry) {
+            this.name = name;
+            this.archive = archive;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Her dosyanın hangi yedeğin hangi girdisinden geleceğini belirler. Zincirde
+     * veritabanı en yeni yedekten, fotoğraflar manifestteki özetle herhangi bir
+     * halkadaki bloktan gelir. Zincirsiz v2 yedeğinde girdiler doğrudan dosyalardır.
+     * İlk öğe her zaman en yeni yedektendir.
+     */
+    private List<RestoreItem> planRestore(List<BackupArchive.Reader> archives) throws Exception {
+        Map<BackupArchive.Reader, BackupChain.Manifest> manifests = new HashMap<>();
+        for (BackupArchive.Reader archive : archives) {
+            BackupArchive.Entry manifest = archive.find(BackupChain.MANIFEST_ENTRY);
+            if (manifest != null) {
+                manifests.put(archive, readChainManifest(archive, manifest));
+            }
+        }
+
+        List<RestoreItem> items = new ArrayList<>();
+        if (manifests.isEmpty() && archives.size() == 1) {
+            BackupArchive.Reader archive = archives.get(0);
+            for (BackupArchive.Entry entry : archive.getEntries()) {
+                items.add(new RestoreItem(entry.name, archive, entry));
+            }
+            return items;
+        }
+        if (manifests.size() != archives.size()) {
+            throw new BackupChain.IncompleteChainException("Zincire ait olmayan yedek");
+        }
+
+        List<BackupArchive.Reader> chain = BackupChain.order(archives, manifests);
+        BackupArchive.Reader newest = chain.get(0);
+        BackupArchive.Entry db = newest.find(DB_ENTRY);
+        if (db == null) {
+            throw new BackupArchive.IntegrityException("Yedekte veritabanı yok.");
+        }
+        items.add(new RestoreItem(DB_ENTRY, newest, db));
+
+        for (Map.Entry<String, String> file : manifests.get(newest).files.entrySet()) {
+            RestoreItem item = null;
+            for (BackupArchive.Reader archive : chain) {
+                BackupArchive.Entry blob = archive.find(BackupChain.BLOB_PREFIX + file.getValue());
+                if (blob != null) {
+                    if (!blob.sha256.equals(file.getValue())) {
+                        throw new BackupArchive.IntegrityException("Blok özeti eşleşmiyor: " + blob.name);
+                    }
+                    item = new RestoreItem(file.getKey(), archive, blob);
+                    break;
+                }
+            }
+            if (item == null) {
+                throw new BackupChain.IncompleteChainException("Eksik blok: " + file.getValue());
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private BackupChain.Manifest readChainManifest(BackupArchive.Reader archive, BackupArchive.Entry entry)
+            throws IOException {
+        if (entry.size > MAX_MANIFEST_BYTES) {
+            throw new BackupArchive.IntegrityException("Manifest çok büyük.");
+        }
+        try (InputStream in = archive.open(entry)) {
+            return BackupChain.Manifest.decode(readFully(in, (int) entry.size));
+        }
+    }
+
+    /**
+     * Planlanan dosyaları hazırlık klasörüne açar; her parça ve her dosya özeti
+     * okunurken doğrulanır. Tamamlanan dosyalar ilerleme dosyasına yazılır ve
+     * aynı yedek(ler)le yeniden denenince atlanır.
+     */
+    private void restoreV2(List<RestoreItem> items, File staging, RestoreListener listener, CancellationSignal signal)
+            throws Exception {
+        File progressFile = new File(staging, PROGRESS_FILE);
+        String restoreId = items.get(0).archive.getId();
+        Set<String> done = readProgress(progressFile, restoreId);
+        if (done == null) {
+            // Hiç başlamamış ya da başka bir yedeğin yarım kalmışı
+            deleteRecursive(staging);
+            if (!staging.mkdirs()) {
+                throw new IOException("Hazırlık klasörü oluşturulamadı.");
+            }
+            done = new HashSet<>();
+            appendProgress(progressFile, restoreId);
+        } else if (!done.isEmpty()) {
+            listener.onProgress("Kaldığı yerden sürdürülüyor...");
+        }
+
+        Set<String> names = new HashSet<>();
+        long needed = 0;
+        for (RestoreItem item : items) {
+            if (stagedFile(staging, item.name) == null || !names.add(item.name)) {
+                throw new BackupArchive.IntegrityException("Beklenmeyen girdi: " + item.name);
+            }
+            needed += item.entry.size;
+        }
+        if (!names.contains(DB_ENTRY)) {
+            throw new BackupArchive.IntegrityException("Yedekte veritabanı yok.");
+        }
+        if (needed > staging.getUsableSpace() - FREE_SPACE_RESERVE) {
+            throw new IOException("Yetersiz depolama alanı.");
+        }
+
+        long remaining = 0;
+        for (RestoreItem item : items) {
+            if (!isStaged(item, staging, done)) {
+                remaining += item.entry.size;
+            }
+        }
+        Progress progress = new Progress(listener::onProgress, signal, remaining);
+        for (RestoreItem item : items) {
+            if (isStaged(item, staging, done)) continue;
+            try (InputStream in = progress.wrap(item.archive.open(item.entry))) {
+                copyToFile(in, stagedFile(staging, item.name), null, item.entry.size);
+            }
+            appendProgress(progressFile, item.name + ":" + item.entry.sha256);
+        }
+    }
+
+    private boolean isStaged(RestoreItem item, File staging, Set<String> done) throws IOException {
+        return done.contains(item.name + ":" + item.entry.sha256)
+                && stagedFile(staging, item.name).length() == item.entry.size;
+    }
+
+    // İlk satır yedeğin kimliği, sonrakiler tamamlanan "ad:özet" girdileri. Başka yedeğinse null.
+    private Set<String> readProgress(File file, String archiveId) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!archiveId.equals(reader.readLine())) {
+                return null;
+            }
+            Set<String> done = new HashSet<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                done.add(line);
+            }
+            return done;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Satır, girdinin dosyası diske yazıldıktan sonra eklenir
+    private void appendProgress(File file, String line) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Kaynağı rastgele erişimli bir kanal olarak açar. Yalnızca akış (pipe)
+     * veren sağlayıcılarda şifreli dosya önce {@code spool} dosyasına kopyalanır.
+     */
+    private FileChannel openChannel(Uri fileUri, File spool) throws IOException {
+        ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(fileUri, "r");
+        if (pfd == null) {
+            throw new IOException("Dosya açılamadı.");
+        }
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        try {
+            return in.getChannel().position(0);
+        } catch (IOException notSeekable) {
+            try (InputStream pipe = in) {
+                copyToFile(pipe, spool, null, spool.getParentFile().getUsableSpace() - FREE_SPACE_RESERVE);
+            }
+            return new FileInputStream(spool).getChannel();
+        }
+    }
+
+    private File spoolFile(int index) {
+        return new File(context.getCacheDir(), SPOOL_PREFIX + index + ".plntg");
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String readMagic(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(BackupArchive.MAGIC.length());
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) >= 0) {
+            // kısa dosyalar aşağıda reddedilir
+        }
+        return new String(magic.array(), 0, magic.position(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Doğrulanmış dosyaları canlı verinin yerine koyar: önce fotoğraf klasörü,
+     * sonra veritabanı; ikisi de aynı dosya sisteminde yeniden adlandırmayla.
+     * Veritabanı değiştirilemezse eski fotoğraflar geri alınır.
+     */
+    private void swapIn(File staging) throws IOException {
+        File photoDir = new File(context.getFilesDir(), ImageIngestor.IMAGE_DIR);
+        File oldPhotoDir = new File(context.getFilesDir(), ImageIngestor.IMAGE_DIR + ".old");
+        File stagedPhotos = new File(staging, ImageIngestor.IMAGE_DIR);
+        if (!stagedPhotos.isDirectory() && !stagedPhotos.mkdirs()) {
+            throw new IOException("Hazırlık klasörü oluşturulamadı.");
+        }
+
+        deleteRecursive(oldPhotoDir);
+        if (photoDir.exists() && !photoDir.renameTo(oldPhotoDir)) {
+            throw new IOException("Fotoğraflar taşınamadı.");
+        }
+        if (!stagedPhotos.renameTo(photoDir)) {
+            oldPhotoDir.renameTo(photoDir);
+            throw new IOException("Fotoğraflar taşınamadı.");
+        }
+
+        try {
+            DatabaseHelper.getInstance(context).replaceDatabase(new File(staging, DB_ENTRY));
+        } catch (IOException e) {
+            deleteRecursive(photoDir);
+            oldPhotoDir.renameTo(photoDir);
+            throw e;
+        }
+        deleteRecursive(oldPhotoDir);
+        // Sonraki yedek geri yüklenen verinin üzerine yeni bir zincir başlatsın
+        new File(context.getFilesDir(), CHAIN_STATE_FILE).delete();
+
+        ImageLoader.getInstance(context).clearMemory();
+        PlantageWidgetProvider.refreshAllWidgets(context);
     }
 
-    private SecretKey deriveKey(String password, byte[] salt) throws Exception {
+    // Eski sürümlerin önbellekte bıraktığı düz zip ve şifreli kopyalar
+    private void deleteLegacyExportFiles() {
+        new File(context.getCacheDir(), "temp_backup.zip").delete();
+        File exportDir = new File(context.getCacheDir(), "exports");
+        File[] files = exportDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        exportDir.delete();
+    }
+
+    // Eski sürümlerin geri yüklemede bıraktığı şifreli ve düz kopyalar
+    private void deleteLegacyImportFiles() {
+        new File(context.getCacheDir(), "import_temp.plntg").delete();
+        new File(context.getCacheDir(), "decrypted.zip").delete();
+    }
+
+    private static void deleteRecursive(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Yarım kalan veya vazgeçilen yedek dosyasını siler; geçerli bir yedek gibi görünmesin.
+     */
+    public void discardExport(Uri destination) {
+        try {
+            DocumentsContract.deleteDocument(context.getContentResolver(), destination);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private SecretKey deriveKey(String password, byte[] salt, int iterations) throws Exception {
         SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, KEY_SIZE);
+        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_SIZE);
         SecretKey tmp = factory.generateSecret(spec);
         return new SecretKeySpec(tmp.getEncoded(), "AES");
     }
 
-    private void copyInputStreamToFile(InputStream in, File file) throws IOException {
-        try (OutputStream out = new FileOutputStream(file)) {
+    private long copyToFile(InputStream in, File file, MessageDigest md, long limit) throws IOException {
+        long total = 0;
+        try (FileOutputStream out = new FileOutputStream(file)) {
             byte[] buf = new byte[8192];
             int len;
             while ((len = in.read(buf)) > 0) {
+                total += len;
+                if (total > limit) {
+                    throw new IOException("Yetersiz depolama alanı.");
+                }
                 out.write(buf, 0, len);
+                if (md != null) {
+                    md.update(buf, 0, len);
+                }
             }
+            // Yeniden adlandırma ve ilerleme kaydı, içerik diske ulaştıktan sonra
+            out.getFD().sync();
         }
+        return total;
     }
 
     private String bytesToHex(byte[] bytes) {
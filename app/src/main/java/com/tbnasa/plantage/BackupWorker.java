@@ -0,0 +1,416 @@
+package com.tbnasa.plantage;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.security.crypto.EncryptedFile;
+import androidx.security.crypto.EncryptedSharedPreferences;
+import androidx.security.crypto.MasterKey;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BackupWorker - Runs a backup export or restore as a foreground job.
+ *
+ * Jobs run one at a time: a new job replaces one that is still queued or
+ * running. Progress (phase message, bytes done / total) is
+ * published as work progress and shown in an ongoing notification with a
+ * cancel action. The password never goes into the job's input data; it is
+ * kept in encrypted preferences until the job ends, so an export that is
+ * interrupted by the system or a killed process resumes from its last
+ * checkpoint when WorkManager runs it again.
+ */
+public class BackupWorker extends Worker {
+
+    static final String KEY_MESSAGE = "message";
+    static final String KEY_DONE = "done";
+    static final String KEY_TOTAL = "total";
+    static final String KEY_ERROR = "error";
+
+    private static final String KEY_MODE = "mode";
+    private static final String KEY_URIS = "uris";
+    private static final String KEY_LEVEL = "level";
+    private static final String MODE_EXPORT = "export";
+    private static final String MODE_IMPORT = "import";
+
+    static final String UNIQUE_WORK = "plantage_backup";
+    private static final String TAG_EXPORT = "plantage_backup_export";
+    private static final String TAG_IMPORT = "plantage_backup_import";
+    private static final String CHANNEL_ID = "plantage_backup";
+    private static final int NOTIFICATION_ID = 2;
+    private static final String SECRETS_NAME = "plantage_backup_jobs";
+    private static final String CHECKPOINT_PREFIX = "backup_checkpoint_";
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    // Fallback when encrypted storage is unavailable; such a job cannot outlive the process
+    private static final Map<String, String> memoryPasswords = new ConcurrentHashMap<>();
+
+    private final CancellationSignal cancellation = new CancellationSignal();
+    private String title;
+    private String cancelLabel;
+    private String message;
+    private long done;
+    private long total = -1;
+    private long lastPublished;
+
+    public BackupWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    static UUID enqueueExport(Context context, Uri destination, String password, int compressionLevel) {
+        try {
+            // A document created through the picker can be kept writable across restarts
+            context.getContentResolver().takePersistableUriPermission(destination,
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+        } catch (SecurityException e) {
+            // Not persistable; the job still runs but cannot resume after a restart
+        }
+        Data input = new Data.Builder()
+                .putString(KEY_MODE, MODE_EXPORT)
+                .putStringArray(KEY_URIS, new String[] { destination.toString() })
+                .putInt(KEY_LEVEL, compressionLevel)
+                .build();
+        return enqueue(context, input, password, TAG_EXPORT);
+    }
+
+    static UUID enqueueImport(Context context, List<Uri> sources, String password) {
+        String[] uris = new String[sources.size()];
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = sources.get(i).toString();
+        }
+        Data input = new Data.Builder()
+                .putString(KEY_MODE, MODE_IMPORT)
+                .putStringArray(KEY_URIS, uris)
+                .build();
+        return enqueue(context, input, password, TAG_IMPORT);
+    }
+
+    private static UUID enqueue(Context context, Data input, String password, String tag) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(BackupWorker.class)
+                .setInputData(input)
+                .addTag(UNIQUE_WORK)
+                .addTag(tag)
+                .build();
+        // A replaced job that never started does not reach finish(); nothing else can still need these
+        forgetAllJobs(context);
+        savePassword(context, request.getId().toString(), password);
+        WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK, ExistingWorkPolicy.REPLACE, request);
+        return request.getId();
+    }
+
+    static boolean isExport(WorkInfo info) {
+        return info.getTags().contains(TAG_EXPORT);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String jobId = getId().toString();
+        boolean export = MODE_EXPORT.equals(getInputData().getString(KEY_MODE));
+        String[] uris = getInputData().getStringArray(KEY_URIS);
+        String password = loadPassword(context, jobId);
+        if (password == null || uris == null || uris.length == 0) {
+            // Restarted without encrypted storage: the password is gone
+            return finish(context, jobId, export, uris, "");
+        }
+
+        LanguageManager lang = new LanguageManager(context);
+        Context localized = lang.applyLocale(context);
+        title = localized.getString(export ? R.string.backup_notification_export : R.string.backup_notification_import);
+        cancelLabel = lang.getCancel();
+        try {
+            setForegroundAsync(createForegroundInfo()).get();
+        } catch (Exception e) {
+            // Not allowed to start a foreground service right now; run as plain background work
+        }
+
+        BackupManager manager = new BackupManager(context);
+        manager.setCompressionLevel(getInputData().getInt(KEY_LEVEL, BackupManager.DEFAULT_COMPRESSION_LEVEL));
+        String[] error = new String[1];
+        try {
+            if (export) {
+                manager.runExport(Uri.parse(uris[0]), password, new BackupManager.BackupListener() {
+                    @Override
+                    public void onProgress(String text) {
+                        publishMessage(text);
+                    }
+
+                    @Override
+                    public void onProgress(long bytesDone, long bytesTotal) {
+                        publishBytes(bytesDone, bytesTotal);
+                    }
+
+                    @Override
+                    public void onSuccess(Uri destination) {
+                    }
+
+                    @Override
+                    public void onError(String e) {
+                        error[0] = e != null ? e : "";
+                    }
+                }, cancellation, new EncryptedCheckpoints(context, jobId));
+            } else {
+                List<Uri> sources = new ArrayList<>();
+                for (String uri : uris) {
+                    sources.add(Uri.parse(uri));
+                }
+                manager.runImport(sources, password, new BackupManager.RestoreListener() {
+                    @Override
+                    public void onProgress(String text) {
+                        publishMessage(text);
+                    }
+
+                    @Override
+                    public void onProgress(long bytesDone, long bytesTotal) {
+                        publishBytes(bytesDone, bytesTotal);
+                    }
+
+                    @Override
+                    public void onSuccess() {
+                    }
+
+                    @Override
+                    public void onError(String e) {
+                        error[0] = e;
+                    }
+                }, cancellation);
+            }
+        } catch (OperationCanceledException e) {
+            if (getStopReason() != WorkInfo.STOP_REASON_CANCELLED_BY_APP) {
+                // Stopped by the system; WorkManager runs the job again and it resumes
+                return Result.retry();
+            }
+            if (export) {
+                manager.discardExport(Uri.parse(uris[0]));
+            }
+            error[0] = BackupManager.ERROR_CANCELLED;
+        }
+        return finish(context, jobId, export, uris, error[0]);
+    }
+
+    @Override
+    public void onStopped() {
+        cancellation.cancel();
+    }
+
+    // The job is over for good: forget the password and checkpoint, release the destination
+    private Result finish(Context context, String jobId, boolean export, String[] uris, String error) {
+        forgetPassword(context, jobId);
+        new EncryptedCheckpoints(context, jobId).clear();
+        if (export && uris != null && uris.length > 0) {
+            try {
+                context.getContentResolver().releasePersistableUriPermission(Uri.parse(uris[0]),
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // Was never persisted
+            }
+        }
+        return error == null ? Result.success() : Result.failure(new Data.Builder().putString(KEY_ERROR, error).build());
+    }
+
+    private void publishMessage(String text) {
+        message = text;
+        publish(true);
+    }
+
+    private void publishBytes(long bytesDone, long bytesTotal) {
+        done = bytesDone;
+        total = bytesTotal;
+        publish(bytesDone >= bytesTotal);
+    }
+
+    // Progress and the notification are throttled; every byte count is not worth a database write
+    private void publish(boolean force) {
+        long now = SystemClock.uptimeMillis();
+        if (!force && now - lastPublished < PROGRESS_INTERVAL_MS) return;
+        lastPublished = now;
+
+        Data.Builder data = new Data.Builder().putLong(KEY_DONE, done).putLong(KEY_TOTAL, total);
+        if (message != null) {
+            data.putString(KEY_MESSAGE, message);
+        }
+        setProgressAsync(data.build());
+        setForegroundAsync(createForegroundInfo());
+    }
+
+    private ForegroundInfo createForegroundInfo() {
+        Context context = getApplicationContext();
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                CHANNEL_ID,
+                "Backups",
+                NotificationManager.IMPORTANCE_LOW
+            );
+            notificationManager.createNotificationChannel(channel);
+        }
+
+        Intent intent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent cancelIntent = WorkManager.getInstance(context).createCancelPendingIntent(getId());
+
+        int percent = total > 0 ? (int) (done * 100 / total) : 0;
+        Notification notification = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(R.mipmap.ic_launcher)
+            .setContentTitle(title)
+            .setContentText(message)
+            .setProgress(100, percent, total <= 0)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setContentIntent(pendingIntent)
+            .addAction(0, cancelLabel, cancelIntent)
+            .build();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(NOTIFICATION_ID, notification);
+    }
+
+    // ─── Encrypted storage ───
+
+    private static MasterKey masterKey(Context context) throws GeneralSecurityException, IOException {
+        return new MasterKey.Builder(context)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .build();
+    }
+
+    private static SharedPreferences secrets(Context context) throws GeneralSecurityException, IOException {
+        return EncryptedSharedPreferences.create(
+                context,
+                SECRETS_NAME,
+                masterKey(context),
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+        );
+    }
+
+    private static void savePassword(Context context, String jobId, String password) {
+        try {
+            secrets(context).edit().putString(jobId, password).commit();
+        } catch (GeneralSecurityException | IOException e) {
+            memoryPasswords.put(jobId, password);
+        }
+    }
+
+    private static String loadPassword(Context context, String jobId) {
+        String password = memoryPasswords.get(jobId);
+        if (password != null) return password;
+        try {
+            return secrets(context).getString(jobId, null);
+        } catch (GeneralSecurityException | IOException e) {
+            return null;
+        }
+    }
+
+    private static void forgetPassword(Context context, String jobId) {
+        memoryPasswords.remove(jobId);
+        try {
+            secrets(context).edit().remove(jobId).commit();
+        } catch (GeneralSecurityException | IOException e) {
+            // Nothing was stored there
+        }
+    }
+
+    private static void forgetAllJobs(Context context) {
+        memoryPasswords.clear();
+        try {
+            secrets(context).edit().clear().commit();
+        } catch (GeneralSecurityException | IOException e) {
+            // Nothing was stored there
+        }
+        File[] files = context.getFilesDir().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().startsWith(CHECKPOINT_PREFIX)) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Export checkpoints of one job, in an {@link EncryptedFile}: they hold
+     * the plain tail of the archive's last chunk.
+     */
+    private static final class EncryptedCheckpoints implements BackupManager.CheckpointStore {
+        private final Context context;
+        private final File file;
+
+        EncryptedCheckpoints(Context context, String jobId) {
+            this.context = context;
+            this.file = new File(context.getFilesDir(), CHECKPOINT_PREFIX + jobId);
+        }
+
+        @Override
+        public byte[] load() {
+            if (!file.isFile()) return null;
+            try (InputStream in = open().openFileInput()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = in.read(buf)) > 0) {
+                    bytes.write(buf, 0, len);
+                }
+                return bytes.toByteArray();
+            } catch (GeneralSecurityException | IOException e) {
+                // A torn or unreadable checkpoint only costs starting over
+                return null;
+            }
+        }
+
+        @Override
+        public void save(byte[] checkpoint) throws IOException {
+            // The file name is bound into the encryption, so it is rewritten in place
+            file.delete();
+            try (FileOutputStream out = open().openFileOutput()) {
+                out.write(checkpoint);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void clear() {
+            file.delete();
+        }
+
+        private EncryptedFile open() throws GeneralSecurityException, IOException {
+            return new EncryptedFile.Builder(context, file, masterKey(context),
+                    EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB).build();
+        }
+    }
+}
@@ -5,46 +5,250 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.tbnasa.plantage.model.EpochDay;
 import com.tbnasa.plantage.model.Garden;
 import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+import com.tbnasa.plantage.model.LeafImage;
 import com.tbnasa.plantage.model.LeafStatus;
+import com.tbnasa.plantage.model.Streak;
 
 /**
  * Plantage veritabanı yöneticisi.
  * Yaprak (Leaf) ve Bahçe (Garden) verilerini SQLite'da saklar.
+ *
+ * Süreç genelinde tek bir örnek vardır ({@link #getInstance(Context)}); bağlantı
+ * WAL modunda açık tutulur ve Activity, widget ve Worker tarafından paylaşılır.
+ * Yaşam döngüsü {@link PlantageApp} tarafından yönetilir.
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
+    /**
+     * Yapraklar tablosu değiştiğinde, yazan iş parçacığında çağrılır.
+     */
+    public interface OnLeavesChangedListener {
+        void onLeavesChanged();
+    }
+
+    private static final String TAG = "DatabaseHelper";
     private static final String DATABASE_NAME = "Plantage.db";
-    private static final int DATABASE_VERSION = 6;
+    private static final int DATABASE_VERSION = 11;
 
     // ─── Leaves table ───
-    private static final String TABLE_LEAVES = "leaves";
+    static final String TABLE_LEAVES = "leaves";
     private static final String COLUMN_ID = "id";
-    private static final String COLUMN_DATE = "date";
+    static final String COLUMN_DATE = "date";
+    static final String COLUMN_DAY = "day"; // epoch day (1970-01-01'den beri gün sayısı)
     private static final String COLUMN_CONTENT = "content";
-    private static final String COLUMN_IMAGES = "image_paths";
+    private static final String COLUMN_IMAGE_COUNT = "image_count"; // leaf_images satır sayısı
     private static final String COLUMN_STATUS = "status";
     private static final String COLUMN_CREATED_AT = "created_at";
 
+    // v10 öncesi virgülle ayrılmış fotoğraf sütunları; yalnızca göç sırasında okunur
+    private static final String LEGACY_COLUMN_IMAGES = "image_paths";
+    private static final String LEGACY_COLUMN_THUMBS = "thumb_paths";
+
     private static final String CREATE_LEAVES = "CREATE TABLE " + TABLE_LEAVES + "("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
             + COLUMN_DATE + " TEXT UNIQUE,"
             + COLUMN_CONTENT + " TEXT,"
-            + COLUMN_IMAGES + " TEXT,"
             + COLUMN_STATUS + " TEXT DEFAULT 'ACTIVE',"
-            + COLUMN_CREATED_AT + " INTEGER" // Category removed
+            + COLUMN_CREATED_AT + " INTEGER," // Category removed
+            + COLUMN_DAY + " INTEGER,"
+            + COLUMN_IMAGE_COUNT + " INTEGER NOT NULL DEFAULT 0"
+            + ")";
+
+    // ─── Leaf images table ───
+    static final String TABLE_IMAGES = "leaf_images";
+    private static final String IMAGE_ID = "id";
+    private static final String IMAGE_LEAF_ID = "leaf_id";
+    private static final String IMAGE_ORDINAL = "ordinal";
+    private static final String IMAGE_PATH = "path";
+    private static final String IMAGE_WIDTH = "width";
+    private static final String IMAGE_HEIGHT = "height";
+    private static final String IMAGE_BYTE_SIZE = "byte_size";
+    private static final String IMAGE_THUMB = "thumb_path";
+    private static final String IMAGE_HASH = "content_hash";
+
+    // UNIQUE(leaf_id, ordinal) aynı zamanda "ilk fotoğraf" aramasının indeksidir
+    private static final String CREATE_IMAGES = "CREATE TABLE " + TABLE_IMAGES + "("
+            + IMAGE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + IMAGE_LEAF_ID + " INTEGER NOT NULL REFERENCES " + TABLE_LEAVES + "(" + COLUMN_ID + ") ON DELETE CASCADE,"
+            + IMAGE_ORDINAL + " INTEGER NOT NULL,"
+            + IMAGE_PATH + " TEXT NOT NULL,"
+            + IMAGE_WIDTH + " INTEGER NOT NULL DEFAULT 0,"
+            + IMAGE_HEIGHT + " INTEGER NOT NULL DEFAULT 0,"
+            + IMAGE_BYTE_SIZE + " INTEGER NOT NULL DEFAULT 0,"
+            + IMAGE_THUMB + " TEXT,"
+            + IMAGE_HASH + " TEXT,"
+            + "UNIQUE(" + IMAGE_LEAF_ID + ", " + IMAGE_ORDINAL + ")"
+            + ")";
+
+    // ─── Meta table (key → integer) ───
+    private static final String TABLE_META = "meta";
+    private static final String META_KEY = "key";
+    private static final String META_VALUE = "value";
+    // Yaprak verisindeki her yazmada bir artar (aynı işlem içinde)
+    private static final String META_DATA_VERSION = "data_version";
+    // Veritabanı oluşturulurken rastgele seçilir; geri yüklenen başka bir veritabanının
+    // sürüm numaraları bu veritabanınınkilerle karışmasın diye
+    private static final String META_GENERATION = "generation";
+
+    private static final String CREATE_META = "CREATE TABLE " + TABLE_META + "("
+            + META_KEY + " TEXT PRIMARY KEY,"
+            + META_VALUE + " INTEGER NOT NULL"
             + ")";
 
-    public DatabaseHelper(Context context) {
+    // Yaprak satırı + ilk fotoğrafı, tek sorguda (LEFT JOIN, indeksli)
+    private static final String SELECT_LEAVES = "SELECT l.*,"
+            + " i." + IMAGE_ID + " AS first_id,"
+            + " i." + IMAGE_PATH + " AS first_path,"
+            + " i." + IMAGE_WIDTH + " AS first_width,"
+            + " i." + IMAGE_HEIGHT + " AS first_height,"
+            + " i." + IMAGE_BYTE_SIZE + " AS first_byte_size,"
+            + " i." + IMAGE_THUMB + " AS first_thumb_path,"
+            + " i." + IMAGE_HASH + " AS first_content_hash"
+            + " FROM " + TABLE_LEAVES + " l LEFT JOIN " + TABLE_IMAGES + " i"
+            + " ON i." + IMAGE_LEAF_ID + " = l." + COLUMN_ID + " AND i." + IMAGE_ORDINAL + " = 0";
+
+    // İçerik kontrolü: Leaf.hasContent() ile aynı kural (yazı veya fotoğraf)
+    static final String HAS_CONTENT = "(TRIM(IFNULL(" + COLUMN_CONTENT + ", '')) != ''"
+            + " OR " + COLUMN_IMAGE_COUNT + " > 0)";
+
+    private static final String INDEX_DAY = "idx_leaves_day";
+    private static final String INDEX_CONTENT_DAY = "idx_leaves_content_day";
+
+    /**
+     * Tüm açık yaprakların durumunu gün sütununa göre tek ifadede hesaplar.
+     * Kural Leaf.calculateCurrentStatus() ile aynıdır: LOCKED/WITHERED kalıcıdır,
+     * yarın GROWING, bugün ACTIVE, geçmiş günler içeriğe göre LOCKED veya WITHERED olur.
+     */
+    private static final String RECONCILE_STATUSES = "UPDATE " + TABLE_LEAVES
+            + " SET " + COLUMN_STATUS + " = CASE"
+            + " WHEN " + COLUMN_DAY + " < ?1 THEN"
+            + " (CASE WHEN " + HAS_CONTENT + " THEN 'LOCKED' ELSE 'WITHERED' END)"
+            + " WHEN " + COLUMN_DAY + " = ?1 + 1 THEN 'GROWING'"
+            + " ELSE 'ACTIVE' END"
+            + " WHERE " + COLUMN_STATUS + " NOT IN ('LOCKED', 'WITHERED')";
+
+    private static volatile DatabaseHelper instance;
+
+    private final StreakTracker streakTracker = new StreakTracker();
+    private final List<OnLeavesChangedListener> listeners = new CopyOnWriteArrayList<>();
+    // Veritabanı işleri paylaşımlı, dosya değişimi (replaceDatabase) özel olarak tutar
+    private final ReentrantReadWriteLock accessLock = new ReentrantReadWriteLock();
+
+    // Durumların geçerli olduğu son an (bir sonraki gece yarısı, millis)
+    private volatile long statusesValidUntil = 0;
+
+    /**
+     * Paylaşılan veritabanı yöneticisini döndürür.
+     */
+    public static DatabaseHelper getInstance(Context context) {
+        DatabaseHelper helper = instance;
+        if (helper == null) {
+            synchronized (DatabaseHelper.class) {
+                helper = instance;
+                if (helper == null) {
+                    helper = new DatabaseHelper(context.getApplicationContext());
+                    instance = helper;
+                }
+            }
+        }
+        return helper;
+    }
+
+    /**
+     * Paylaşılan bağlantıyı kapatır. Sonraki {@link #getInstance(Context)}
+     * çağrısı veritabanını yeniden açar.
+     */
+    public static void closeInstance() {
+        synchronized (DatabaseHelper.class) {
+            if (instance != null) {
+                instance.close();
+                instance = null;
+            }
+        }
+    }
+
+    private final File databaseFile;
+
+    private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        databaseFile = context.getDatabasePath(DATABASE_NAME);
+        // WAL: okuyucular yazma sırasında beklemez, bağlantı havuzu birden fazla okuyucu açabilir
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Bir veritabanı işinin başlangıcı. {@link #endAccess()} çağrılana kadar dosya
+     * değiştirilmez; değişim sürüyorsa bitmesini bekler. İç içe çağrılabilir.
+     * Birden fazla çağrı yapan işler (LeafRepository görevleri, widget, Worker)
+     * bununla sarılır; böylece değişim sırasında hiçbiri kapanmış bir bağlantı tutmaz.
+     */
+    public void beginAccess() {
+        accessLock.readLock().lock();
+    }
+
+    public void endAccess() {
+        accessLock.readLock().unlock();
+    }
+
+    // Sarılmamış tek çağrılar da bağlantıyı değişim bittikten sonra alır
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        beginAccess();
+        try {
+            return super.getReadableDatabase();
+        } finally {
+            endAccess();
+        }
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        beginAccess();
+        try {
+            return super.getWritableDatabase();
+        } finally {
+            endAccess();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_LEAVES);
+        db.execSQL(CREATE_IMAGES);
+        createDayIndex(db);
+        createContentIndex(db);
+        db.execSQL(StreakTracker.CREATE_STREAK);
+        createMeta(db);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // leaf_images satırları yaprakla birlikte silinsin
+        db.setForeignKeyConstraintsEnabled(true);
     }
 
     @Override
@@ -52,10 +256,269 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         if (oldVersion < 6) {
             // Gardens removal - no op
         }
+        if (oldVersion < 7) {
+            db.execSQL(StreakTracker.CREATE_STREAK);
+        }
+        if (oldVersion < 10) {
+            // HAS_CONTENT image_count'a dayandığı için içerik indeksinden önce
+            db.execSQL(CREATE_IMAGES);
+            db.execSQL("ALTER TABLE " + TABLE_LEAVES + " ADD COLUMN " + COLUMN_IMAGE_COUNT
+                    + " INTEGER NOT NULL DEFAULT 0");
+            migrateImagePaths(db, oldVersion >= 9);
+        }
+        if (oldVersion < 8) {
+            db.execSQL("ALTER TABLE " + TABLE_LEAVES + " ADD COLUMN " + COLUMN_DAY + " INTEGER");
+            backfillDays(db);
+            createDayIndex(db);
+            createContentIndex(db);
+        } else if (oldVersion < 10) {
+            // Kısmi indeksin koşulu değişti
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_CONTENT_DAY);
+            createContentIndex(db);
+        }
+        if (oldVersion < 10) {
+            // Gün sütununa ve yeni içerik kuralına ihtiyaç duyduğu için şema adımlarından sonra
+            streakTracker.rebuild(db);
+        }
+        if (oldVersion < 11) {
+            createMeta(db);
+        }
+    }
+
+    private void createMeta(SQLiteDatabase db) {
+        db.execSQL(CREATE_META);
+        ContentValues values = new ContentValues();
+        values.put(META_KEY, META_DATA_VERSION);
+        values.put(META_VALUE, 1);
+        db.insertOrThrow(TABLE_META, null, values);
+        values.put(META_KEY, META_GENERATION);
+        values.put(META_VALUE, new Random().nextLong() & Long.MAX_VALUE);
+        db.insertOrThrow(TABLE_META, null, values);
+    }
+
+    /**
+     * Gün sütunu için benzersiz indeks.
+     */
+    private void createDayIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_DAY + " ON " + TABLE_LEAVES + "(" + COLUMN_DAY + ")");
+    }
+
+    /**
+     * İçerikli yapraklar için kısmi indeks.
+     * Koşulu HAS_CONTENT ile birebir aynı olmalı ki sorgular onu kullanabilsin.
+     */
+    private void createContentIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_CONTENT_DAY + " ON " + TABLE_LEAVES + "(" + COLUMN_DAY + ")"
+                + " WHERE " + HAS_CONTENT);
+    }
+
+    /**
+     * Virgülle ayrılmış image_paths (ve v9'daki thumb_paths) değerlerini leaf_images
+     * satırlarına taşır. Boyut bilgisi bir kez dosya başlığından okunur; özet
+     * (content_hash) göç sırasında hesaplanmaz, boş kalır.
+     */
+    private void migrateImagePaths(SQLiteDatabase db, boolean hasThumbColumn) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_IMAGES + "("
+                + IMAGE_LEAF_ID + ", " + IMAGE_ORDINAL + ", " + IMAGE_PATH + ", " + IMAGE_WIDTH + ", "
+                + IMAGE_HEIGHT + ", " + IMAGE_BYTE_SIZE + ", " + IMAGE_THUMB + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement count = db.compileStatement("UPDATE " + TABLE_LEAVES
+                + " SET " + COLUMN_IMAGE_COUNT + " = ? WHERE " + COLUMN_ID + " = ?");
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + LEGACY_COLUMN_IMAGES
+                + (hasThumbColumn ? ", " + LEGACY_COLUMN_THUMBS : "")
+                + " FROM " + TABLE_LEAVES
+                + " WHERE TRIM(IFNULL(" + LEGACY_COLUMN_IMAGES + ", '')) != ''", null);
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        while (cursor.moveToNext()) {
+            long leafId = cursor.getLong(0);
+            String[] paths = cursor.getString(1).split(",");
+            String thumbs = hasThumbColumn ? cursor.getString(2) : null;
+            String[] thumbPaths = thumbs == null || thumbs.isEmpty() ? new String[0] : thumbs.split(",", -1);
+
+            int ordinal = 0;
+            for (int i = 0; i < paths.length; i++) {
+                String path = paths[i].trim();
+                if (path.isEmpty()) continue;
+                File file = new File(path);
+                bounds.outWidth = 0;
+                bounds.outHeight = 0;
+                if (file.exists()) {
+                    BitmapFactory.decodeFile(path, bounds);
+                }
+                insert.clearBindings();
+                insert.bindLong(1, leafId);
+                insert.bindLong(2, ordinal++);
+                insert.bindString(3, path);
+                insert.bindLong(4, Math.max(0, bounds.outWidth));
+                insert.bindLong(5, Math.max(0, bounds.outHeight));
+                insert.bindLong(6, file.length());
+                String thumb = i < thumbPaths.length ? thumbPaths[i].trim() : "";
+                if (!thumb.isEmpty()) {
+                    insert.bindString(7, thumb);
+                }
+                insert.executeInsert();
+            }
+            count.bindLong(1, ordinal);
+            count.bindLong(2, leafId);
+            count.executeUpdateDelete();
+        }
+        cursor.close();
+        insert.close();
+        count.close();
+
+        // Eski sütunlar SQLite'ta silinemez (API < 34); yer kaplamasınlar
+        db.execSQL("UPDATE " + TABLE_LEAVES + " SET " + LEGACY_COLUMN_IMAGES + " = NULL"
+                + (hasThumbColumn ? ", " + LEGACY_COLUMN_THUMBS + " = NULL" : ""));
+    }
+
+    /**
+     * Mevcut yaprakların gün numarasını tarih metninden doldurur.
+     * Ayrıştırma EpochDay ile yapılır, böylece Leaf ile aynı sonucu verir.
+     * Aynı güne denk gelen kayıtlar (ör. "2024-02-31" ve "2024-03-02") benzersiz
+     * indeksi bozmaması için tek yaprakta birleştirilir: yazılar alt alta eklenir,
+     * fotoğraflar sona taşınır ve kalan kaydın tarihi standart biçime çevrilir.
+     * Leaf_images tablosuna dayandığı için fotoğraf göçünden sonra çağrılmalıdır.
+     */
+    private void backfillDays(SQLiteDatabase db) {
+        // Gün → o güne düşen kayıtlar (id sırasıyla)
+        Map<Long, List<DayRow>> byDay = new HashMap<>();
+        int unparsed = 0;
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DATE + ", " + COLUMN_CONTENT + ", "
+                + COLUMN_IMAGE_COUNT + " FROM " + TABLE_LEAVES + " ORDER BY " + COLUMN_ID, null);
+        while (cursor.moveToNext()) {
+            String date = cursor.getString(1);
+            long day = EpochDay.parse(date);
+            if (day == EpochDay.NONE) {
+                unparsed++;
+                continue;
+            }
+            List<DayRow> rows = byDay.get(day);
+            if (rows == null) {
+                rows = new ArrayList<>(1);
+                byDay.put(day, rows);
+            }
+            rows.add(new DayRow(cursor.getLong(0), date, cursor.getString(2), cursor.getInt(3)));
+        }
+        cursor.close();
+
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_LEAVES
+                + " SET " + COLUMN_DAY + " = ? WHERE " + COLUMN_ID + " = ?");
+        SQLiteStatement moveImages = db.compileStatement("UPDATE " + TABLE_IMAGES
+                + " SET " + IMAGE_LEAF_ID + " = ?, " + IMAGE_ORDINAL + " = " + IMAGE_ORDINAL + " + ?"
+                + " WHERE " + IMAGE_LEAF_ID + " = ?");
+        int merged = 0;
+        for (Map.Entry<Long, List<DayRow>> entry : byDay.entrySet()) {
+            long day = entry.getKey();
+            List<DayRow> rows = entry.getValue();
+            if (rows.size() == 1) {
+                update.bindLong(1, day);
+                update.bindLong(2, rows.get(0).id);
+                update.executeUpdateDelete();
+                continue;
+            }
+
+            // Tarihi zaten standart biçimde olan kayıt kalır, yoksa en eskisi
+            String canonical = EpochDay.format(day);
+            DayRow keep = rows.get(0);
+            for (DayRow row : rows) {
+                if (canonical.equals(row.date)) {
+                    keep = row;
+                    break;
+                }
+            }
+            StringBuilder content = new StringBuilder(keep.content == null ? "" : keep.content.trim());
+            int imageCount = keep.imageCount;
+            for (DayRow row : rows) {
+                if (row == keep) continue;
+                String text = row.content == null ? "" : row.content.trim();
+                if (!text.isEmpty()) {
+                    if (content.length() > 0) content.append("\n\n");
+                    content.append(text);
+                }
+                moveImages.bindLong(1, keep.id);
+                moveImages.bindLong(2, imageCount);
+                moveImages.bindLong(3, row.id);
+                imageCount += moveImages.executeUpdateDelete();
+                db.delete(TABLE_LEAVES, COLUMN_ID + " = ?", new String[] { String.valueOf(row.id) });
+                merged++;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_DATE, canonical);
+            values.put(COLUMN_DAY, day);
+            values.put(COLUMN_CONTENT, content.toString());
+            values.put(COLUMN_IMAGE_COUNT, imageCount);
+            db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", new String[] { String.valueOf(keep.id) });
+        }
+        update.close();
+        moveImages.close();
+
+        if (merged > 0 || unparsed > 0) {
+            Log.w(TAG, "Day backfill merged " + merged + " duplicate leaves; "
+                    + unparsed + " leaves have an unreadable date");
+        }
+    }
+
+    private static final class DayRow {
+        final long id;
+        final String date;
+        final String content;
+        final int imageCount;
+
+        DayRow(long id, String date, String content, int imageCount) {
+            this.id = id;
+            this.date = date;
+            this.content = content;
+            this.imageCount = imageCount;
+        }
     }
 
     // Seed methods removed
 
+    // ═══════ CHANGE NOTIFICATION ═══════
+
+    public void addOnLeavesChangedListener(OnLeavesChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnLeavesChangedListener(OnLeavesChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyLeavesChanged() {
+        for (OnLeavesChangedListener listener : listeners) {
+            listener.onLeavesChanged();
+        }
+    }
+
+    // ═══════ DATA VERSION ═══════
+
+    /**
+     * Yaprak verisinin sürümü: "nesil-sürüm". Yalnızca bu sınıftaki yazmalarla
+     * değişir; aynı değer aynı içerik demektir (ör. widget görüntü önbelleği için).
+     */
+    public String getDataVersion() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + META_KEY + ", " + META_VALUE + " FROM " + TABLE_META
+                + " WHERE " + META_KEY + " IN (?, ?)", new String[] { META_GENERATION, META_DATA_VERSION });
+        long generation = 0;
+        long version = 0;
+        while (cursor.moveToNext()) {
+            if (META_GENERATION.equals(cursor.getString(0))) {
+                generation = cursor.getLong(1);
+            } else {
+                version = cursor.getLong(1);
+            }
+        }
+        cursor.close();
+        return Long.toHexString(generation) + "-" + version;
+    }
+
+    // Çağıran yazma işleminin içinde çağrılır; işlem geri alınırsa sürüm de geri alınır
+    private void bumpDataVersion(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + TABLE_META + " SET " + META_VALUE + " = " + META_VALUE + " + 1"
+                + " WHERE " + META_KEY + " = ?", new Object[] { META_DATA_VERSION });
+    }
+
     // ═══════ LEAF OPERATIONS ═══════
 
     /**
@@ -65,36 +528,192 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_DATE, date);
+        long day = EpochDay.parse(date);
+        if (day != EpochDay.NONE) {
+            values.put(COLUMN_DAY, day);
+        }
         values.put(COLUMN_CONTENT, "");
-        values.put(COLUMN_IMAGES, "");
         values.put(COLUMN_STATUS, LeafStatus.GROWING.name());
         values.put(COLUMN_CREATED_AT, System.currentTimeMillis());
         // Category default is handled by ignoring it (or removed column)
-        long id = db.insertWithOnConflict(TABLE_LEAVES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
-        db.close();
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.insertWithOnConflict(TABLE_LEAVES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id != -1) {
+                bumpDataVersion(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (id != -1) {
+            // Yeni yaprağın durumu bir sonraki okumada hesaplanır
+            invalidateStatuses();
+            notifyLeavesChanged();
+        }
         return id;
     }
 
+    /**
+     * Verilen gün için yaprak oluşturur (zaten varsa bir şey yapmaz).
+     */
+    public long createLeaf(long day) {
+        return createLeaf(EpochDay.format(day));
+    }
+
     /**
      * Yaprak içeriğini günceller (sadece yazı).
      */
     public void updateLeafContent(long id, String content) {
-        SQLiteDatabase db = this.getWritableDatabase();
+        updateLeafColumn(id, COLUMN_CONTENT, content);
+    }
+
+    /**
+     * İçerik sütununu günceller; yaprak içerik kazandıysa veya kaybettiyse
+     * seriyi aynı işlem içinde günceller.
+     */
+    private void updateLeafColumn(long id, String column, String value) {
         ContentValues values = new ContentValues();
-        values.put(COLUMN_CONTENT, content);
-        db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", new String[] { String.valueOf(id) });
-        db.close();
+        values.put(column, value);
+        SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = new String[] { String.valueOf(id) };
+        db.beginTransaction();
+        try {
+            updateLeafValues(db, args, values);
+            bumpDataVersion(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyLeavesChanged();
     }
 
     /**
-     * Yaprak fotoğraflarını günceller.
+     * Yaprağa bir fotoğraf ekler: tek bir INSERT ve sayaç artışı.
+     * Sıra numarası (ordinal) aynı işlem içinde sayaçtan alınır.
+     * Yeni fotoğrafın id'sini, yaprak yoksa -1 döndürür.
      */
-    public void updateLeafImages(long id, String imagePaths) {
+    public long addLeafImage(LeafImage image) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        String[] args = new String[] { String.valueOf(image.leafId) };
+        long imageId = -1;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_IMAGE_COUNT + ", " + HAS_CONTENT + ", " + COLUMN_DAY
+                    + " FROM " + TABLE_LEAVES + " WHERE " + COLUMN_ID + " = ?", args);
+            if (cursor.moveToFirst()) {
+                int ordinal = cursor.getInt(0);
+                boolean hadContent = cursor.getInt(1) != 0;
+                long day = cursor.isNull(2) ? EpochDay.NONE : cursor.getLong(2);
+
+                ContentValues values = new ContentValues();
+                values.put(IMAGE_LEAF_ID, image.leafId);
+                values.put(IMAGE_ORDINAL, ordinal);
+                values.put(IMAGE_PATH, image.path);
+                values.put(IMAGE_WIDTH, image.width);
+                values.put(IMAGE_HEIGHT, image.height);
+                values.put(IMAGE_BYTE_SIZE, image.byteSize);
+                values.put(IMAGE_THUMB, image.thumbPath);
+                values.put(IMAGE_HASH, image.contentHash);
+                imageId = db.insertOrThrow(TABLE_IMAGES, null, values);
+                db.execSQL("UPDATE " + TABLE_LEAVES + " SET " + COLUMN_IMAGE_COUNT + " = "
+                        + COLUMN_IMAGE_COUNT + " + 1 WHERE " + COLUMN_ID + " = ?", args);
+
+                if (!hadContent) {
+                    streakTracker.onContentChanged(db, day, true);
+                }
+                bumpDataVersion(db);
+                db.setTransactionSuccessful();
+            }
+            cursor.close();
+        } finally {
+            db.endTransaction();
+        }
+        if (imageId != -1) {
+            notifyLeavesChanged();
+        }
+        return imageId;
+    }
+
+    /**
+     * Yaprağın tüm fotoğrafları, sırasıyla.
+     */
+    public List<LeafImage> getLeafImages(long leafId) {
+        List<LeafImage> images = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_IMAGES, null, IMAGE_LEAF_ID + " = ?",
+                new String[] { String.valueOf(leafId) }, null, null, IMAGE_ORDINAL + " ASC");
+        while (cursor.moveToNext()) {
+            images.add(readImage(cursor));
+        }
+        cursor.close();
+        return images;
+    }
+
+    /**
+     * Tüm fotoğraf satırları; yedekleme kayıtlı özetleri yeniden kullanır.
+     */
+    public List<LeafImage> getAllLeafImages() {
+        List<LeafImage> images = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_IMAGES, null, null, null, null, null, IMAGE_ID + " ASC");
+        while (cursor.moveToNext()) {
+            images.add(readImage(cursor));
+        }
+        cursor.close();
+        return images;
+    }
+
+    /**
+     * Sonradan hesaplanan özeti (ör. göçten kalan satırlar için) kaydeder.
+     * Gösterimi etkilemediği için veri sürümü değişmez.
+     */
+    public void setImageContentHash(long imageId, String hash) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
-        values.put(COLUMN_IMAGES, imagePaths);
-        db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", new String[] { String.valueOf(id) });
-        db.close();
+        values.put(IMAGE_HASH, hash);
+        db.update(TABLE_IMAGES, values, IMAGE_ID + " = ?", new String[] { String.valueOf(imageId) });
+    }
+
+    private LeafImage readImage(Cursor cursor) {
+        return new LeafImage(
+                cursor.getLong(cursor.getColumnIndexOrThrow(IMAGE_ID)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(IMAGE_LEAF_ID)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(IMAGE_ORDINAL)),
+                cursor.getString(cursor.getColumnIndexOrThrow(IMAGE_PATH)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(IMAGE_WIDTH)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(IMAGE_HEIGHT)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(IMAGE_BYTE_SIZE)),
+                cursor.getString(cursor.getColumnIndexOrThrow(IMAGE_THUMB)),
+                cursor.getString(cursor.getColumnIndexOrThrow(IMAGE_HASH)));
+    }
+
+    // Çağıran işlem içinde: yaprak içerik kazandıysa veya kaybettiyse seriyi günceller
+    private void updateLeafValues(SQLiteDatabase db, String[] idArgs, ContentValues values) {
+        boolean hadContent = leafHasContent(db, idArgs);
+        db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", idArgs);
+        boolean hasContent = leafHasContent(db, idArgs);
+
+        if (hadContent != hasContent) {
+            streakTracker.onContentChanged(db, leafDay(db, idArgs), hasContent);
+        }
+    }
+
+    private boolean leafHasContent(SQLiteDatabase db, String[] idArgs) {
+        Cursor cursor = db.rawQuery("SELECT " + HAS_CONTENT + " FROM " + TABLE_LEAVES
+                + " WHERE " + COLUMN_ID + " = ?", idArgs);
+        boolean result = cursor.moveToFirst() && cursor.getInt(0) != 0;
+        cursor.close();
+        return result;
+    }
+
+    private long leafDay(SQLiteDatabase db, String[] idArgs) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_DAY + " FROM " + TABLE_LEAVES
+                + " WHERE " + COLUMN_ID + " = ?", idArgs);
+        long day = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : EpochDay.NONE;
+        cursor.close();
+        return day;
     }
 
     /**
@@ -104,8 +723,63 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_STATUS, status.name());
-        db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", new String[] { String.valueOf(id) });
-        db.close();
+        int updated;
+        db.beginTransaction();
+        try {
+            updated = db.update(TABLE_LEAVES, values, COLUMN_ID + " = ?", new String[] { String.valueOf(id) });
+            if (updated > 0) {
+                bumpDataVersion(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (updated > 0) {
+            notifyLeavesChanged();
+        }
+    }
+
+    /**
+     * Gün değiştiyse (veya yeni yaprak eklendiyse) yaprak durumlarını günceller.
+     * Aynı gün içindeki okumalarda maliyeti tek bir zaman karşılaştırmasıdır.
+     */
+    public void reconcileStatusesIfNeeded() {
+        if (System.currentTimeMillis() < statusesValidUntil) return;
+        synchronized (this) {
+            if (System.currentTimeMillis() < statusesValidUntil) return;
+
+            long today = EpochDay.today();
+            reconcileStatuses(today);
+            statusesValidUntil = EpochDay.startOfDayMillis(today + 1);
+        }
+    }
+
+    /**
+     * Durumların bir sonraki okumada yeniden hesaplanmasını sağlar. Geçerlilik
+     * sınırı duvar saatine bağlı olduğundan saat veya saat dilimi değişince
+     * çağrılmalıdır (bkz. PlantageApp).
+     */
+    public void invalidateStatuses() {
+        statusesValidUntil = 0;
+    }
+
+    /**
+     * GROWING → ACTIVE → LOCKED/WITHERED geçişlerini tek bir işlemde uygular.
+     */
+    private void reconcileStatuses(long today) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        SQLiteStatement reconcile = db.compileStatement(RECONCILE_STATUSES);
+        db.beginTransaction();
+        try {
+            reconcile.bindLong(1, today);
+            if (reconcile.executeUpdateDelete() > 0) {
+                bumpDataVersion(db);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            reconcile.close();
+        }
     }
 
     // Category query methods removed
@@ -114,16 +788,33 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * Tarihe göre yaprak getirir.
      */
     public Leaf getLeafByDate(String date) {
+        reconcileStatusesIfNeeded();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(SELECT_LEAVES + " WHERE l." + COLUMN_DATE + " = ?",
+                new String[] { date });
+
+        Leaf leaf = null;
+        if (cursor.moveToFirst()) {
+            leaf = cursorToLeaf(cursor);
+        }
+        cursor.close();
+        return leaf;
+    }
+
+    /**
+     * Gün numarasına göre yaprak getirir (indeksli arama).
+     */
+    public Leaf getLeafByDay(long day) {
+        reconcileStatusesIfNeeded();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_LEAVES, null, COLUMN_DATE + " = ?",
-                new String[] { date }, null, null, null);
+        Cursor cursor = db.rawQuery(SELECT_LEAVES + " WHERE l." + COLUMN_DAY + " = ?",
+                new String[] { String.valueOf(day) });
 
         Leaf leaf = null;
         if (cursor.moveToFirst()) {
             leaf = cursorToLeaf(cursor);
         }
         cursor.close();
-        db.close();
         return leaf;
     }
 
@@ -131,25 +822,89 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * Tüm yaprakları tarihe göre sıralı getirir.
      */
     public List<Leaf> getAllLeaves() {
+        reconcileStatusesIfNeeded();
         List<Leaf> leaves = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_LEAVES + " ORDER BY " + COLUMN_DATE + " ASC";
+        String selectQuery = SELECT_LEAVES + " ORDER BY l." + COLUMN_DAY + " ASC";
 
         SQLiteDatabase db = this.getReadableDatabase();
         Cursor cursor = db.rawQuery(selectQuery, null);
 
         if (cursor.moveToFirst()) {
             do {
-                Leaf leaf = cursorToLeaf(cursor);
-                LeafStatus currentStatus = leaf.calculateCurrentStatus();
-                if (leaf.status != currentStatus) {
-                    updateLeafStatus(leaf.id, currentStatus);
-                    leaf.status = currentStatus;
-                }
-                leaves.add(leaf);
+                leaves.add(cursorToLeaf(cursor));
             } while (cursor.moveToNext());
         }
         cursor.close();
-        db.close();
+        return leaves;
+    }
+
+    /**
+     * Keyset sayfalama: verilen günden önceki en yeni {@code limit} yaprağı,
+     * yeniden eskiye sıralı getirir. Sonraki sayfa için son yaprağın günü verilir.
+     */
+    public List<Leaf> getLeavesBefore(long beforeDay, int limit) {
+        return queryLeavesBefore(COLUMN_DAY + " < ?", beforeDay, limit);
+    }
+
+    /**
+     * İçerikli yapraklar (anılar) için keyset sayfalama, yeniden eskiye.
+     * Kısmi indeks (idx_leaves_content_day) üzerinden çalışır.
+     */
+    public List<Leaf> getMemoriesBefore(long beforeDay, int limit) {
+        return queryLeavesBefore(HAS_CONTENT + " AND " + COLUMN_DAY + " < ?", beforeDay, limit);
+    }
+
+    private List<Leaf> queryLeavesBefore(String selection, long beforeDay, int limit) {
+        reconcileStatusesIfNeeded();
+        List<Leaf> leaves = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(SELECT_LEAVES + " WHERE " + selection
+                + " ORDER BY l." + COLUMN_DAY + " DESC LIMIT " + limit,
+                new String[] { String.valueOf(beforeDay) });
+        while (cursor.moveToNext()) {
+            leaves.add(cursorToLeaf(cursor));
+        }
+        cursor.close();
+        return leaves;
+    }
+
+    /**
+     * Verilen günden önceki yaprakları aylara göre özetler, eskiden yeniye.
+     * Yaprak satırları yüklenmez; ağaçta eski geçmiş bu kümelerle gösterilir.
+     */
+    public List<LeafCluster> getMonthClustersBefore(long beforeDay) {
+        reconcileStatusesIfNeeded();
+        List<LeafCluster> clusters = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT SUBSTR(" + COLUMN_DATE + ", 1, 7) AS month,"
+                + " MIN(" + COLUMN_DAY + "), MAX(" + COLUMN_DAY + "), COUNT(*),"
+                + " SUM(CASE WHEN " + HAS_CONTENT + " THEN 1 ELSE 0 END)"
+                + " FROM " + TABLE_LEAVES + " WHERE " + COLUMN_DAY + " < ?"
+                + " GROUP BY month ORDER BY MIN(" + COLUMN_DAY + ") ASC",
+                new String[] { String.valueOf(beforeDay) });
+        while (cursor.moveToNext()) {
+            clusters.add(new LeafCluster(cursor.getString(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getInt(3), cursor.getInt(4)));
+        }
+        cursor.close();
+        return clusters;
+    }
+
+    /**
+     * İki gün arasındaki (ikisi de dahil) yaprakları eskiden yeniye getirir.
+     * Bir küme açıldığında içindeki yaprakları listelemek için kullanılır.
+     */
+    public List<Leaf> getLeavesBetween(long fromDay, long toDay) {
+        reconcileStatusesIfNeeded();
+        List<Leaf> leaves = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(SELECT_LEAVES + " WHERE l." + COLUMN_DAY + " BETWEEN ? AND ?"
+                + " ORDER BY l." + COLUMN_DAY + " ASC",
+                new String[] { String.valueOf(fromDay), String.valueOf(toDay) });
+        while (cursor.moveToNext()) {
+            leaves.add(cursorToLeaf(cursor));
+        }
+        cursor.close();
         return leaves;
     }
 
@@ -160,52 +915,50 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID));
         String date = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATE));
         String content = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CONTENT));
-        String images = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGES));
+        int imageCount = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_COUNT));
         String statusStr = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_STATUS));
         long createdAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_AT));
+        int dayIndex = cursor.getColumnIndexOrThrow(COLUMN_DAY);
+        long day = cursor.isNull(dayIndex) ? EpochDay.NONE : cursor.getLong(dayIndex);
 
-        LeafStatus status;
+        LeafStatus status = parseStatus(statusStr);
+
+        // SELECT_LEAVES ile gelen ilk fotoğraf (LEFT JOIN; yoksa null)
+        LeafImage firstImage = null;
+        int firstIdIndex = cursor.getColumnIndexOrThrow("first_id");
+        if (!cursor.isNull(firstIdIndex)) {
+            firstImage = new LeafImage(cursor.getLong(firstIdIndex), id, 0,
+                    cursor.getString(cursor.getColumnIndexOrThrow("first_path")),
+                    cursor.getInt(cursor.getColumnIndexOrThrow("first_width")),
+                    cursor.getInt(cursor.getColumnIndexOrThrow("first_height")),
+                    cursor.getLong(cursor.getColumnIndexOrThrow("first_byte_size")),
+                    cursor.getString(cursor.getColumnIndexOrThrow("first_thumb_path")),
+                    cursor.getString(cursor.getColumnIndexOrThrow("first_content_hash")));
+        }
+
+        return new Leaf(id, date, day, content, imageCount, firstImage, status, createdAt);
+    }
+
+    private static LeafStatus parseStatus(String status) {
         try {
-            status = LeafStatus.valueOf(statusStr);
+            return LeafStatus.valueOf(status);
         } catch (Exception e) {
-            status = LeafStatus.GROWING;
+            return LeafStatus.GROWING;
         }
-
-        return new Leaf(id, date, content, images, status, createdAt);
     }
 
     /**
-     * Calculates the current daily streak.
+     * Kayıtlı seriyi döndürür (sabit zamanlı okuma).
      */
-    public int calculateStreak() {
-        List<Leaf> leaves = getAllLeaves();
-        int streak = 0;
-        java.util.Calendar cal = java.util.Calendar.getInstance();
-        java.text.SimpleDateFormat format = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault());
+    public Streak getStreak() {
+        return streakTracker.get(this.getReadableDatabase());
+    }
 
-        // Count backwards from today
-        for (int i = 0; i < 365; i++) {
-            String dateStr = format.format(cal.getTime());
-            boolean found = false;
-            for (Leaf leaf : leaves) {
-                if (dateStr.equals(leaf.date) && leaf.hasContent()) {
-                    found = true;
-                    break;
-                }
-            }
-            if (found) {
-                streak++;
-                cal.add(java.util.Calendar.DAY_OF_YEAR, -1);
-            } else {
-                // If today is empty, check yesterday. If yesterday was full, streak is still alive.
-                if (i == 0) {
-                    cal.add(java.util.Calendar.DAY_OF_YEAR, -1);
-                    continue;
-                }
-                break;
-            }
-        }
-        return streak;
+    /**
+     * Bugüne göre güncel seriyi döndürür.
+     */
+    public int getCurrentStreak() {
+        return getStreak().currentAsOf(EpochDay.today());
     }
 
     /**
@@ -213,13 +966,155 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public int getTotalMemories() {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_LEAVES + " WHERE " + COLUMN_CONTENT + " IS NOT NULL AND " + COLUMN_CONTENT + " != ''", null);
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_LEAVES + " WHERE " + HAS_CONTENT, null);
         int count = 0;
         if (cursor.moveToFirst()) {
             count = cursor.getInt(0);
         }
         cursor.close();
-        db.close();
         return count;
     }
+
+    /**
+     * Duruma göre yaprak sayıları; tek bir GROUP BY sorgusuyla, yapraklar yüklenmeden.
+     */
+    public Map<LeafStatus, Integer> getStatusCounts() {
+        reconcileStatusesIfNeeded();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_STATUS + ", COUNT(*) FROM " + TABLE_LEAVES
+                + " GROUP BY " + COLUMN_STATUS, null);
+        Map<LeafStatus, Integer> counts = new EnumMap<>(LeafStatus.class);
+        while (cursor.moveToNext()) {
+            counts.merge(parseStatus(cursor.getString(0)), cursor.getInt(1), Integer::sum);
+        }
+        cursor.close();
+        return counts;
+    }
+
+    /**
+     * Tüm yazılardaki toplam kelime sayısı.
+     * Yalnızca yazısı olan satırların içerik sütunu okunur; kelimeler boşlukla ayrılır.
+     */
+    public int getTotalWords() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_CONTENT + " FROM " + TABLE_LEAVES
+                + " WHERE TRIM(IFNULL(" + COLUMN_CONTENT + ", '')) != ''", null);
+        int words = 0;
+        while (cursor.moveToNext()) {
+            words += countWords(cursor.getString(0));
+        }
+        cursor.close();
+        return words;
+    }
+
+    static int countWords(String text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean space = Character.isWhitespace(text.charAt(i));
+            if (!space && !inWord) words++;
+            inWord = !space;
+        }
+        return words;
+    }
+
+    // ═══════ BACKUP ═══════
+
+    /**
+     * Veritabanı dosyasının tutarlı bir kopyasını yerel {@code target} dosyasına
+     * yazar. WAL önce ana dosyaya aktarılır; yazmalar yalnızca bu hızlı yerel
+     * kopya boyunca bekler, okumalar sürer. Sıkıştırma, şifreleme ve hedefe
+     * yazma kopyadan, kilit dışında yapılmalıdır.
+     */
+    public void copyDatabaseTo(File target) throws IOException {
+        beginAccess();
+        try {
+            copyDatabaseLocked(target);
+        } finally {
+            endAccess();
+        }
+    }
+
+    private void copyDatabaseLocked(File target) throws IOException {
+        SQLiteDatabase db = this.getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        cursor.moveToFirst();
+        cursor.close();
+
+        // Yazma kilidi tutulduğu sürece ana dosyaya checkpoint yapılmaz, yani dosya
+        // son checkpoint anındaki haliyle tutarlıdır. Araya giren yazmalar WAL'da kalır.
+        db.beginTransactionNonExclusive();
+        try (InputStream in = new FileInputStream(db.getPath());
+             OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Doğrulanmış bir yedek veritabanını canlı dosyanın yerine taşır.
+     * Erişim kilidi özel olarak alınır: süren işler (beginAccess/endAccess)
+     * bitene kadar beklenir ve değişim bitene kadar yenileri başlayamaz. Böylece
+     * eski bağlantı havuzu tamamen kapanır ve yeni dosyanın -wal'ına dokunamaz.
+     * Ardından nesil yenilenir (eski önbellek anahtarları geçersizleşir) ve
+     * dinleyiciler uyarılır. Bir beginAccess/endAccess içinden çağrılamaz.
+     */
+    public void replaceDatabase(File staged) throws IOException {
+        int version = readUserVersion(staged);
+        if (version < 1 || version > DATABASE_VERSION) {
+            throw new IOException("Desteklenmeyen veritabanı sürümü: " + version);
+        }
+        if (accessLock.getReadHoldCount() > 0) {
+            // Okuma kilidi yazma kilidine yükseltilemez; kilitlenirdi
+            throw new IllegalStateException("replaceDatabase inside beginAccess/endAccess");
+        }
+
+        accessLock.writeLock().lock();
+        try {
+            close();
+            String path = databaseFile.getPath();
+            new File(path + "-wal").delete();
+            new File(path + "-shm").delete();
+            new File(path + "-journal").delete();
+            if (!staged.renameTo(databaseFile)) {
+                throw new IOException("Veritabanı değiştirilemedi.");
+            }
+
+            // Eski bir yedekse açılırken onUpgrade çalışır
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.execSQL("UPDATE " + TABLE_META + " SET " + META_VALUE + " = ? WHERE " + META_KEY + " = ?",
+                        new Object[] { new Random().nextLong() & Long.MAX_VALUE, META_GENERATION });
+                bumpDataVersion(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            streakTracker.invalidate();
+            invalidateStatuses();
+        } finally {
+            accessLock.writeLock().unlock();
+        }
+        notifyLeavesChanged();
+    }
+
+    // SQLite başlığı: 16 baytlık imza, user_version 60. bayttan itibaren (big-endian)
+    private static int readUserVersion(File file) throws IOException {
+        byte[] header = new byte[100];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(header);
+        }
+        String magic = new String(header, 0, 16, StandardCharsets.US_ASCII);
+        if (!"SQLite format 3\u0000".equals(magic)) {
+            throw new IOException("Geçersiz veritabanı dosyası.");
+        }
+        return ((header[60] & 0xff) << 24) | ((header[61] & 0xff) << 16)
+                | ((header[62] & 0xff) << 8) | (header[63] & 0xff);
+    }
 }
@@ -10,14 +10,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import com.tbnasa.plantage.model.Leaf;
 import com.tbnasa.plantage.model.LeafStatus;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 
 /**
  * GrowthFragment — Statistics dashboard showing streak,
@@ -27,11 +22,9 @@ public class GrowthFragment extends Fragment {
 
     private TextView tvStreakValue, tvTotalMemories, tvWordsWritten;
     private MoodChartView moodChart;
-    private DatabaseHelper dbHelper;
+    private LeafRepository repository;
     private LanguageManager lang;
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
@@ -45,7 +38,7 @@ public class GrowthFragment extends Fragment {
         super.onViewCreated(view, savedInstanceState);
 
         MainActivity activity = (MainActivity) requireActivity();
-        dbHelper = activity.getDbHelper();
+        repository = activity.getRepository();
         lang = activity.getLang();
 
         tvStreakValue = view.findViewById(R.id.tvStreakValue);
@@ -81,83 +74,45 @@ public class GrowthFragment extends Fragment {
         if (tvLeafStatusLabel != null)
             tvLeafStatusLabel.setText(lang.getLeafStatus());
 
-        loadStats();
-    }
-
-    @Override
-    public void onResume() {
-        super.onResume();
-        loadStats();
+        // Recomputed in the background whenever leaves change
+        repository.query(Stats::load).observe(getViewLifecycleOwner(), this::bindStats);
     }
 
-    private void loadStats() {
-        List<Leaf> leaves = dbHelper.getAllLeaves();
-
-        // Total memories (leaves with content)
-        int totalMemories = 0;
-        int totalWords = 0;
-        int activeCount = 0;
-        int lockedCount = 0;
-        int witheredCount = 0;
-
-        for (Leaf leaf : leaves) {
-            if (leaf.hasContent()) {
-                totalMemories++;
-                if (leaf.content != null) {
-                    totalWords += leaf.content.trim().split("\\s+").length;
-                }
-            }
-
-            switch (leaf.status) {
-                case ACTIVE:
-                    activeCount++;
-                    break;
-                case LOCKED:
-                    lockedCount++;
-                    break;
-                case WITHERED:
-                    witheredCount++;
-                    break;
-            }
-        }
-
-        tvTotalMemories.setText(String.valueOf(totalMemories));
-        tvWordsWritten.setText(String.valueOf(totalWords));
-
-        // Calculate streak
-        int streak = calculateStreak(leaves);
-        tvStreakValue.setText(String.valueOf(streak));
+    private void bindStats(Stats stats) {
+        tvTotalMemories.setText(String.valueOf(stats.totalMemories));
+        tvWordsWritten.setText(String.valueOf(stats.totalWords));
+        tvStreakValue.setText(String.valueOf(stats.streak));
 
         // Update donut chart
         if (moodChart != null) {
-            moodChart.setData(activeCount, lockedCount, witheredCount);
+            moodChart.setData(stats.activeCount, stats.lockedCount, stats.witheredCount);
         }
     }
 
     /**
-     * Calculates the current consecutive-day streak
-     * (days with content, counting backwards from today).
+     * Dashboard numbers, computed off the main thread.
      */
-    private int calculateStreak(List<Leaf> leaves) {
-        int streak = 0;
-        Calendar cal = Calendar.getInstance();
-
-        for (int i = 0; i < 365; i++) { // Max 1 year lookback
-            String dateStr = DATE_FORMAT.format(cal.getTime());
-            boolean found = false;
-            for (Leaf leaf : leaves) {
-                if (dateStr.equals(leaf.date) && leaf.hasContent()) {
-                    found = true;
-                    break;
-                }
-            }
-            if (found) {
-                streak++;
-                cal.add(Calendar.DAY_OF_YEAR, -1);
-            } else {
-                break;
-            }
+    private static final class Stats {
+        int totalMemories;
+        int totalWords;
+        int activeCount;
+        int lockedCount;
+        int witheredCount;
+        int streak;
+
+        // Aggregate queries; no leaf rows are loaded
+        static Stats load(DatabaseHelper dbHelper) {
+            Stats stats = new Stats();
+            stats.totalMemories = dbHelper.getTotalMemories();
+            stats.totalWords = dbHelper.getTotalWords();
+
+            Map<LeafStatus, Integer> counts = dbHelper.getStatusCounts();
+            stats.activeCount = counts.getOrDefault(LeafStatus.ACTIVE, 0);
+            stats.lockedCount = counts.getOrDefault(LeafStatus.LOCKED, 0);
+            stats.witheredCount = counts.getOrDefault(LeafStatus.WITHERED, 0);
+
+            stats.streak = dbHelper.getCurrentStreak();
+            return stats;
         }
-        return streak;
     }
 }
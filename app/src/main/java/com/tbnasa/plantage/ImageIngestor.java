@@ -0,0 +1,303 @@
+package com.tbnasa.plantage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.tbnasa.plantage.model.LeafImage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ImageIngestor — Normalizes picked photos before they are stored.
+ *
+ * Originals are decoded with sampling, rotated per their EXIF orientation,
+ * scaled to {@link Options#maxDimension} and re-encoded as JPEG. A small
+ * thumbnail is written next to each image ("_thumb.jpg") and both paths, the
+ * final size and a SHA-256 of the stored file are recorded in leaf_images, so
+ * nothing downstream has to decode a camera original or stat the file.
+ */
+public final class ImageIngestor {
+
+    private static final String TAG = "ImageIngestor";
+    static final String IMAGE_DIR = "leaf_images";
+
+    /**
+     * Size and quality limits for stored photos.
+     */
+    public static final class Options {
+        public int maxDimension = 2048;
+        public int quality = 85;
+        public int thumbDimension = 320;
+        public int thumbQuality = 80;
+
+        public Options() {
+        }
+
+        Options(Options other) {
+            maxDimension = other.maxDimension;
+            quality = other.quality;
+            thumbDimension = other.thumbDimension;
+            thumbQuality = other.thumbQuality;
+        }
+    }
+
+    /**
+     * Called on the main thread once the photo is stored (or failed).
+     */
+    public interface Callback {
+        void onIngested(boolean success);
+    }
+
+    private static volatile ImageIngestor instance;
+
+    private final Context context;
+    // One photo at a time: decoding several camera originals at once would spike the heap
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "plantage-ingest");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Shared ingestor; there is one (and one decode thread) per process.
+     */
+    public static ImageIngestor getInstance(Context context) {
+        ImageIngestor ingestor = instance;
+        if (ingestor == null) {
+            synchronized (ImageIngestor.class) {
+                ingestor = instance;
+                if (ingestor == null) {
+                    ingestor = new ImageIngestor(context);
+                    instance = ingestor;
+                }
+            }
+        }
+        return ingestor;
+    }
+
+    private ImageIngestor(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Stores {@code source} as a photo of leaf {@code leafId} on a background thread,
+     * with the default {@link Options}.
+     */
+    public void ingest(Uri source, long leafId, Callback callback) {
+        ingest(source, leafId, new Options(), callback);
+    }
+
+    /**
+     * Like {@link #ingest(Uri, long, Callback)}, with a copy of {@code options}
+     * taken now; other callers' photos keep their own limits.
+     */
+    public void ingest(Uri source, long leafId, Options options, Callback callback) {
+        Options limits = new Options(options);
+        executor.execute(() -> {
+            boolean success = false;
+            try {
+                success = ingestNow(source, leafId, limits);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Photo import failed", e);
+            }
+            boolean result = success;
+            if (callback != null) {
+                mainHandler.post(() -> callback.onIngested(result));
+            }
+        });
+    }
+
+    private boolean ingestNow(Uri source, long leafId, Options options) throws IOException {
+        Bitmap bitmap = decode(source, options.maxDimension);
+        if (bitmap == null)
+            return false;
+
+        File dir = new File(context.getFilesDir(), IMAGE_DIR);
+        if (!dir.exists() && !dir.mkdirs())
+            return false;
+
+        String baseName = "leaf_" + leafId + "_" + System.currentTimeMillis();
+        File imageFile = new File(dir, baseName + ".jpg");
+        File thumbFile = new File(dir, baseName + "_thumb.jpg");
+
+        int width, height;
+        try {
+            bitmap = transform(bitmap, readOrientation(source), options.maxDimension);
+            width = bitmap.getWidth();
+            height = bitmap.getHeight();
+            write(bitmap, imageFile, options.quality);
+
+            Bitmap thumb = scaleToFit(bitmap, options.thumbDimension);
+            write(thumb, thumbFile, options.thumbQuality);
+            if (thumb != bitmap)
+                thumb.recycle();
+        } finally {
+            bitmap.recycle();
+        }
+
+        LeafImage image = new LeafImage(0, leafId, 0, imageFile.getAbsolutePath(), width, height,
+                imageFile.length(), thumbFile.getAbsolutePath(), sha256(imageFile));
+        DatabaseHelper db = DatabaseHelper.getInstance(context);
+        long imageId;
+        db.beginAccess();
+        try {
+            imageId = db.addLeafImage(image);
+        } finally {
+            db.endAccess();
+        }
+        if (imageId == -1) {
+            // Leaf is gone; do not leave orphaned files behind
+            imageFile.delete();
+            thumbFile.delete();
+            return false;
+        }
+        return true;
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                md.update(buf, 0, len);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // Bounds first, then a sampled decode that is still at least maxDimension on its long side
+    private Bitmap decode(Uri source, int maxDimension) throws IOException {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        try (InputStream in = context.getContentResolver().openInputStream(source)) {
+            if (in == null)
+                return null;
+            BitmapFactory.decodeStream(in, null, opts);
+        }
+        if (opts.outWidth <= 0 || opts.outHeight <= 0)
+            return null;
+
+        int longSide = Math.max(opts.outWidth, opts.outHeight);
+        int sample = 1;
+        while (longSide / (sample * 2) >= maxDimension) {
+            sample *= 2;
+        }
+        opts.inSampleSize = sample;
+        opts.inJustDecodeBounds = false;
+        try (InputStream in = context.getContentResolver().openInputStream(source)) {
+            return in == null ? null : BitmapFactory.decodeStream(in, null, opts);
+        }
+    }
+
+    private int readOrientation(Uri source) {
+        try (InputStream in = context.getContentResolver().openInputStream(source)) {
+            if (in == null)
+                return ExifInterface.ORIENTATION_NORMAL;
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException | RuntimeException e) {
+            // Not a JPEG/HEIF or no EXIF block
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Applies the EXIF orientation and the final scale in one pass.
+     */
+    private static Bitmap transform(Bitmap src, int orientation, int maxDimension) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                break;
+        }
+        float scale = scaleFor(src.getWidth(), src.getHeight(), maxDimension);
+        if (scale < 1f)
+            matrix.postScale(scale, scale);
+        if (matrix.isIdentity())
+            return src;
+
+        Bitmap out = Bitmap.createBitmap(src, 0, 0, src.getWidth(), src.getHeight(), matrix, true);
+        if (out != src)
+            src.recycle();
+        return out;
+    }
+
+    private static Bitmap scaleToFit(Bitmap src, int maxDimension) {
+        float scale = scaleFor(src.getWidth(), src.getHeight(), maxDimension);
+        if (scale >= 1f)
+            return src;
+        int w = Math.max(1, Math.round(src.getWidth() * scale));
+        int h = Math.max(1, Math.round(src.getHeight() * scale));
+        return Bitmap.createScaledBitmap(src, w, h, true);
+    }
+
+    private static float scaleFor(int width, int height, int maxDimension) {
+        int longSide = Math.max(width, height);
+        return longSide <= maxDimension ? 1f : (float) maxDimension / longSide;
+    }
+
+    private static void write(Bitmap bitmap, File file, int quality) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out))
+                throw new IOException("JPEG encode failed: " + file.getName());
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Rename failed: " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.tbnasa.plantage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ImageLoader — Loads leaf photos at the size they are shown.
+ *
+ * Decoding reads the image bounds first and samples down to the target size,
+ * always on a background thread. Results are kept in a byte-sized memory LRU,
+ * keyed by path and target size, and as JPEG thumbnails on disk, keyed by path,
+ * mtime, length and target size, so an edited or replaced photo never serves a
+ * stale thumbnail. The disk key needs file metadata and is built on the decode
+ * thread; photos are written under new names, and the memory cache is cleared
+ * when a restore replaces files. Disk thumbnails are capped in bytes and
+ * trimmed least recently used first.
+ */
+public final class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+    private static final String THUMB_DIR = "thumbs";
+    private static final int THUMB_QUALITY = 85;
+    private static final int THREADS = 2;
+    // Trimmed back to three quarters of this once exceeded
+    private static final long MAX_DISK_BYTES = 32L * 1024 * 1024;
+
+    private static volatile ImageLoader instance;
+
+    private final File thumbDir;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object diskLock = new Object();
+    private long diskBytes = -1; // guarded by diskLock; -1 until first measured
+
+    public static ImageLoader getInstance(Context context) {
+        ImageLoader loader = instance;
+        if (loader == null) {
+            synchronized (ImageLoader.class) {
+                loader = instance;
+                if (loader == null) {
+                    loader = new ImageLoader(context.getApplicationContext());
+                    instance = loader;
+                }
+            }
+        }
+        return loader;
+    }
+
+    private ImageLoader(Context context) {
+        thumbDir = new File(context.getCacheDir(), THUMB_DIR);
+
+        // 1/8 of the heap, counted in bytes rather than entries
+        int cacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "plantage-image-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Shows {@code path} in {@code target}, decoded for a reqWidth × reqHeight box.
+     * If the view is rebound before the decode finishes, the stale result is dropped.
+     */
+    public void load(String path, ImageView target, int reqWidth, int reqHeight) {
+        // No file access here: this runs on the main thread for every bind
+        String key = path + '|' + reqWidth + 'x' + reqHeight;
+        target.setTag(R.id.image_loader_key, key);
+
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+        target.setImageDrawable(null);
+
+        executor.execute(() -> {
+            Bitmap bitmap = loadBitmap(new File(path), reqWidth, reqHeight);
+            if (bitmap == null)
+                return;
+            memoryCache.put(key, bitmap);
+            mainHandler.post(() -> {
+                if (key.equals(target.getTag(R.id.image_loader_key))) {
+                    target.setImageBitmap(bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops every cached bitmap (e.g. when the system is low on memory).
+     */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    // Background: disk thumbnail first, then a sampled decode of the original
+    private Bitmap loadBitmap(File file, int reqWidth, int reqHeight) {
+        File thumb = new File(thumbDir, hash(diskKey(file, reqWidth, reqHeight)) + ".jpg");
+        if (thumb.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(thumb.getAbsolutePath());
+            if (bitmap != null) {
+                // Recently used; the trim goes by modification time
+                thumb.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+
+        Bitmap bitmap = decodeSampled(file.getAbsolutePath(), reqWidth, reqHeight);
+        if (bitmap != null) {
+            writeThumbnail(bitmap, thumb);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes {@code path} with the largest power-of-two sample size that keeps
+     * both sides at least as large as the requested box.
+     */
+    static Bitmap decodeSampled(String path, int reqWidth, int reqHeight) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0)
+            return null;
+
+        opts.inSampleSize = sampleSize(opts.outWidth, opts.outHeight, reqWidth, reqHeight);
+        opts.inJustDecodeBounds = false;
+        try {
+            return BitmapFactory.decodeFile(path, opts);
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding " + path, e);
+            return null;
+        }
+    }
+
+    static int sampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sample = 1;
+        if (reqWidth <= 0 || reqHeight <= 0)
+            return sample;
+        while ((width / (sample * 2)) >= reqWidth && (height / (sample * 2)) >= reqHeight) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private void writeThumbnail(Bitmap bitmap, File thumb) {
+        if (!thumbDir.exists() && !thumbDir.mkdirs())
+            return;
+        // Write to a temp file and rename so a crash never leaves a truncated thumbnail
+        File tmp = new File(thumbDir, thumb.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMB_QUALITY, out);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(thumb)) {
+            tmp.delete();
+            return;
+        }
+        synchronized (diskLock) {
+            diskBytes = diskBytes < 0 ? directorySize() : diskBytes + thumb.length();
+            if (diskBytes > MAX_DISK_BYTES) {
+                trimDisk();
+            }
+        }
+    }
+
+    // Deletes the least recently used thumbnails down to 3/4 of the cap; holds diskLock
+    private void trimDisk() {
+        File[] files = thumbDir.listFiles((dir, name) -> name.endsWith(".jpg"));
+        if (files == null)
+            return;
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+            total += files[i].length();
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        long target = MAX_DISK_BYTES * 3 / 4;
+        for (int i = 0; i < order.length && total > target; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        diskBytes = total;
+    }
+
+    private long directorySize() {
+        File[] files = thumbDir.listFiles();
+        long total = 0;
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    private static String diskKey(File file, int reqWidth, int reqHeight) {
+        return file.getAbsolutePath() + '|' + file.lastModified() + '|' + file.length()
+                + '|' + reqWidth + 'x' + reqHeight;
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
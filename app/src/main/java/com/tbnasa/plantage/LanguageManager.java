@@ -218,6 +218,7 @@ public class LanguageManager {
     public String getBackupCreated() { return context.getString(R.string.backup_created); }
     public String getRestoreSuccess() { return context.getString(R.string.restore_success); }
     public String getInvalidPassword() { return context.getString(R.string.invalid_password); }
+    public String getBackupChainIncomplete() { return context.getString(R.string.backup_chain_incomplete); }
 
     public String getZenModeTitle() { return context.getString(R.string.zen_mode_title); }
     public String getInhale() { return context.getString(R.string.inhale); }
@@ -0,0 +1,190 @@
+package com.tbnasa.plantage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LeafRepository — Runs all database work off the main thread.
+ * Reads are exposed as {@link Query} LiveData that reload whenever
+ * DatabaseHelper reports a write; one-shot reads and writes go through
+ * {@link #execute(Loader, Callback)} and report back on the main thread.
+ * Every task holds DatabaseHelper's access lock while it runs, so a restore
+ * waits for running tasks and later ones wait for the restore.
+ */
+public final class LeafRepository {
+
+    private static final String TAG = "LeafRepository";
+
+    // Two workers: a write never waits behind a long read (WAL allows both)
+    private static final int THREADS = 2;
+
+    /**
+     * Work to run against the database on a background thread.
+     */
+    public interface Loader<T> {
+        T load(DatabaseHelper db);
+    }
+
+    /**
+     * Receives a one-shot result on the main thread.
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static volatile LeafRepository instance;
+
+    private final DatabaseHelper db;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static LeafRepository getInstance(Context context) {
+        LeafRepository repo = instance;
+        if (repo == null) {
+            synchronized (LeafRepository.class) {
+                repo = instance;
+                if (repo == null) {
+                    repo = new LeafRepository(DatabaseHelper.getInstance(context));
+                    instance = repo;
+                }
+            }
+        }
+        return repo;
+    }
+
+    private LeafRepository(DatabaseHelper db) {
+        this.db = db;
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "plantage-db-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Observable result of {@code loader}; reloads while observed whenever leaves change.
+     */
+    public <T> Query<T> query(Loader<T> loader) {
+        return new Query<>(loader);
+    }
+
+    /**
+     * Runs {@code loader} in the background and delivers its result on the main thread.
+     * {@code callback} may be null for fire-and-forget writes.
+     */
+    public <T> void execute(Loader<T> loader, Callback<T> callback) {
+        executor.execute(() -> {
+            T result;
+            db.beginAccess();
+            try {
+                result = loader.load(db);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Database task failed", e);
+                return;
+            } finally {
+                db.endAccess();
+            }
+            if (callback != null) {
+                mainHandler.post(() -> callback.onResult(result));
+            }
+        });
+    }
+
+    public void updateLeafContent(long id, String content, Runnable onDone) {
+        execute(d -> {
+            d.updateLeafContent(id, content);
+            return Boolean.TRUE;
+        }, onDone == null ? null : r -> onDone.run());
+    }
+
+    /**
+     * LiveData backed by a database read. Invalidations that arrive while a load
+     * is running are coalesced into one more load, so bursts of writes cost at
+     * most two reads.
+     */
+    public final class Query<T> extends LiveData<T> implements DatabaseHelper.OnLeavesChangedListener {
+
+        private final Loader<T> loader;
+        private final AtomicBoolean invalid = new AtomicBoolean(true);
+        private final AtomicBoolean computing = new AtomicBoolean(false);
+
+        private final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                boolean computed;
+                do {
+                    computed = false;
+                    if (computing.compareAndSet(false, true)) {
+                        try {
+                            T value = null;
+                            while (invalid.compareAndSet(true, false)) {
+                                db.beginAccess();
+                                try {
+                                    value = loader.load(db);
+                                    computed = true;
+                                } catch (RuntimeException e) {
+                                    Log.e(TAG, "Query failed", e);
+                                } finally {
+                                    db.endAccess();
+                                }
+                            }
+                            if (computed) {
+                                postValue(value);
+                            }
+                        } finally {
+                            computing.set(false);
+                        }
+                    }
+                    // Another invalidation may have slipped in after the loop above
+                } while (computed && invalid.get());
+            }
+        };
+
+        private Query(Loader<T> loader) {
+            this.loader = loader;
+        }
+
+        /**
+         * Forces a reload, e.g. when the day rolls over without a write.
+         */
+        public void invalidate() {
+            invalid.set(true);
+            if (hasActiveObservers()) {
+                executor.execute(refresh);
+            }
+        }
+
+        @Override
+        public void onLeavesChanged() {
+            invalidate();
+        }
+
+        @Override
+        protected void onActive() {
+            db.addOnLeavesChangedListener(this);
+            // Writes while inactive were not observed; the day may also have changed
+            invalid.set(true);
+            executor.execute(refresh);
+        }
+
+        @Override
+        protected void onInactive() {
+            db.removeOnLeavesChangedListener(this);
+        }
+    }
+}
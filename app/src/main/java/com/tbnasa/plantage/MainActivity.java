@@ -22,13 +22,14 @@ import com.google.android.material.bottomnavigation.BottomNavigationView;
  * MainActivity — Hosts BottomNavigationView and swaps between 4 Fragments:
  * Timeline, Gardens, Growth, Settings.
  *
- * Shared services (DatabaseHelper, LanguageManager, MusicService) are
+ * Shared services (DatabaseHelper, LeafRepository, LanguageManager, MusicService) are
  * exposed via getters so Fragments can access them without re-instantiating.
  */
 public class MainActivity extends AppCompatActivity {
 
     // ─── Shared services ───
     private DatabaseHelper dbHelper;
+    private LeafRepository repository;
     private LanguageManager lang;
     private MusicService musicService;
     private boolean musicBound = false;
@@ -81,7 +82,8 @@ public class MainActivity extends AppCompatActivity {
 
         // Init shared services
         lang = new LanguageManager(this);
-        dbHelper = new DatabaseHelper(this);
+        dbHelper = DatabaseHelper.getInstance(this);
+        repository = LeafRepository.getInstance(this);
         backupManager = new BackupManager(this);
 
         setupFullscreen();
@@ -112,10 +114,10 @@ public class MainActivity extends AppCompatActivity {
                 });
 
         fileImportLauncher = registerForActivityResult(
-                new ActivityResultContracts.GetContent(),
-                uri -> {
-                    if (uri != null && activeFragment instanceof SettingsFragment) {
-                        ((SettingsFragment) activeFragment).onImportFileSelected(uri);
+                new ActivityResultContracts.GetMultipleContents(),
+                uris -> {
+                    if (uris != null && !uris.isEmpty() && activeFragment instanceof SettingsFragment) {
+                        ((SettingsFragment) activeFragment).onImportFilesSelected(uris);
                     }
                 });
 
@@ -169,6 +171,13 @@ public class MainActivity extends AppCompatActivity {
         return dbHelper;
     }
 
+    /**
+     * Background data access for Fragments; prefer this over getDbHelper() on the main thread.
+     */
+    public LeafRepository getRepository() {
+        return repository;
+    }
+
     public LanguageManager getLang() {
         return lang;
     }
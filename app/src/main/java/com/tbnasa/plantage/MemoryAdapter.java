@@ -0,0 +1,143 @@
+package com.tbnasa.plantage;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.tbnasa.plantage.model.Leaf;
+
+import java.util.Objects;
+
+/**
+ * MemoryAdapter — Recycled memory cards for the timeline.
+ * Items are keyed by leaf id, so a save only rebinds the card that changed
+ * and the list's view count stays bounded by the screen, not the journal.
+ */
+class MemoryAdapter extends ListAdapter<Leaf, MemoryAdapter.MemoryHolder> {
+
+    interface OnMemoryClickListener {
+        void onMemoryClick(Leaf leaf);
+    }
+
+    private static final int PREVIEW_LENGTH = 100;
+
+    private static final DiffUtil.ItemCallback<Leaf> DIFF = new DiffUtil.ItemCallback<Leaf>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Leaf oldItem, @NonNull Leaf newItem) {
+            return oldItem.id == newItem.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Leaf oldItem, @NonNull Leaf newItem) {
+            return oldItem.status == newItem.status
+                    && Objects.equals(oldItem.date, newItem.date)
+                    && Objects.equals(oldItem.content, newItem.content)
+                    && oldItem.imageCount == newItem.imageCount
+                    && Objects.equals(oldItem.firstImage, newItem.firstImage);
+        }
+    };
+
+    private final LanguageManager lang;
+    private final OnMemoryClickListener listener;
+
+    MemoryAdapter(LanguageManager lang, OnMemoryClickListener listener) {
+        super(DIFF);
+        this.lang = lang;
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
+    }
+
+    @NonNull
+    @Override
+    public MemoryHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_memory_card, parent, false);
+        MemoryHolder holder = new MemoryHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onMemoryClick(getItem(position));
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MemoryHolder holder, int position) {
+        Leaf leaf = getItem(position);
+        holder.tvDate.setText(leaf.date);
+
+        // Content preview
+        if (leaf.content != null && !leaf.content.trim().isEmpty()) {
+            String preview = leaf.content.length() > PREVIEW_LENGTH
+                    ? leaf.content.substring(0, PREVIEW_LENGTH) + "..."
+                    : leaf.content;
+            holder.tvContent.setText(preview);
+            holder.tvContent.setVisibility(View.VISIBLE);
+        } else {
+            holder.tvContent.setText(null);
+            holder.tvContent.setVisibility(View.GONE);
+        }
+
+        // Status badge
+        String statusText;
+        int statusColor;
+        switch (leaf.status) {
+            case GROWING:
+                statusText = lang.getGrowingStatus();
+                statusColor = R.color.zen_accent_light;
+                break;
+            case LOCKED:
+                statusText = lang.getLockedStatus();
+                statusColor = R.color.zen_accent_dark;
+                break;
+            case WITHERED:
+                statusText = lang.getWitheredStatus();
+                statusColor = R.color.leaf_withered;
+                break;
+            default:
+                statusText = lang.getActiveStatus();
+                statusColor = R.color.zen_accent;
+                break;
+        }
+        // Thumbnail of the first photo (pre-rendered at import time)
+        String thumb = leaf.getFirstThumbnail();
+        if (thumb != null) {
+            int size = holder.ivThumb.getLayoutParams().width;
+            holder.ivThumb.setVisibility(View.VISIBLE);
+            ImageLoader.getInstance(holder.itemView.getContext()).load(thumb, holder.ivThumb, size, size);
+        } else {
+            holder.ivThumb.setTag(R.id.image_loader_key, null);
+            holder.ivThumb.setImageDrawable(null);
+            holder.ivThumb.setVisibility(View.GONE);
+        }
+
+        holder.tvStatus.setText(statusText);
+        holder.tvStatus.setTextColor(holder.itemView.getResources().getColor(statusColor, null));
+    }
+
+    static final class MemoryHolder extends RecyclerView.ViewHolder {
+        final TextView tvDate, tvContent, tvStatus;
+        final ImageView ivThumb;
+
+        MemoryHolder(@NonNull View itemView) {
+            super(itemView);
+            tvDate = itemView.findViewById(R.id.tvMemoryDate);
+            tvContent = itemView.findViewById(R.id.tvMemoryContent);
+            tvStatus = itemView.findViewById(R.id.tvMemoryStatus);
+            ivThumb = itemView.findViewById(R.id.ivMemoryThumb);
+        }
+    }
+}
@@ -12,6 +12,7 @@ import androidx.core.app.NotificationCompat;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import com.tbnasa.plantage.model.DayClock;
 import com.tbnasa.plantage.model.Leaf;
 
 /**
@@ -32,11 +33,16 @@ public class NotificationWorker extends Worker {
         LanguageManager lang = new LanguageManager(context);
         context = lang.applyLocale(context); // Apply user's selected language
         
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(context);
         
         // Check if today's memory is already planted
-        String today = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault()).format(new java.util.Date());
-        Leaf todayLeaf = dbHelper.getLeafByDate(today);
+        Leaf todayLeaf;
+        dbHelper.beginAccess();
+        try {
+            todayLeaf = dbHelper.getLeafByDay(DayClock.system().today());
+        } finally {
+            dbHelper.endAccess();
+        }
 
         java.util.Random random = new java.util.Random();
         int index = random.nextInt(3) + 1; // 1 to 3
@@ -0,0 +1,52 @@
+package com.tbnasa.plantage;
+
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.tbnasa.plantage.model.DayClock;
+
+/**
+ * PlantageApp — Process-wide owner of shared resources.
+ * Opens the shared Plantage.db connection once for the whole process so the
+ * timeline, widget and NotificationWorker reuse the same connection pool.
+ */
+public class PlantageApp extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        DatabaseHelper db = DatabaseHelper.getInstance(this);
+
+        // DayClock caches the time zone and leaf statuses are valid until a
+        // wall-clock midnight; refresh both when the user changes either
+        IntentFilter clockChanges = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        clockChanges.addAction(Intent.ACTION_TIME_CHANGED);
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    DayClock.onTimeZoneChanged();
+                }
+                db.invalidateStatuses();
+            }
+        }, clockChanges);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            // Decoded photos are cheap to reload from the disk thumbnails
+            ImageLoader.getInstance(this).clearMemory();
+        }
+    }
+
+    @Override
+    public void onTerminate() {
+        DatabaseHelper.closeInstance();
+        super.onTerminate();
+    }
+}
@@ -1,257 +1,418 @@
 package com.tbnasa.plantage;
 
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.database.ContentObserver;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
 import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
-import androidx.core.content.ContextCompat;
 import java.util.ArrayList;
 import java.util.List;
 import com.tbnasa.plantage.model.Leaf;
-import com.tbnasa.plantage.model.LeafStatus;
+import com.tbnasa.plantage.model.LeafCluster;
 
 /**
  * PlantageTreeView - Modern Fractal Tree implementation.
+ *
+ * Geometry and drawing live in {@link TreeRenderer}; a frame only rotates
+ * the cached tree by the current sway angle and replays it.
+ *
+ * The sway is driven by Choreographer frames only while the view is attached
+ * and visible (window, ancestors and the view itself) and has a tree to sway,
+ * and not at all when the system animator duration scale is 0. Frames are
+ * requested with a delay of one sway frame instead of on every vsync.
+ *
+ * Tips show clusters of older leaves first, then single leaves (see
+ * {@link TreeLayout}), so the tree never needs more than 2^7 tips.
+ *
+ * Touches are resolved through a uniform grid over the tips ({@link TipGrid}),
+ * built with the geometry, so a hit test only looks at the 3x3 cells around
+ * the finger. A long press starts scrubbing: dragging highlights the tip
+ * under the finger and lifting opens it.
+ *
+ * Pinch zooms (up to {@link #MAX_ZOOM}) around the fingers and a drag pans
+ * while zoomed, using the same camera model as OrbitView: the camera is the
+ * world point at the view's top-left corner. Double tap resets. Branches and
+ * tips outside the visible world rect are skipped while zoomed.
  */
 public class PlantageTreeView extends View {
 
+    private List<LeafCluster> clusters = new ArrayList<>();
     private List<Leaf> leaves = new ArrayList<>();
-    private List<LeafHitBox> clickZones = new ArrayList<>();
     private OnLeafClickListener leafClickListener;
-
-    private Paint stemPaint;
-    private Paint leafLightPaint;
-    private Paint leafDarkPaint;
-    private Paint potPaint;
-    private Paint potRimPaint;
-    private Paint soilPaint;
-    private Paint shadowPaint;
-    private Paint textPaint;
-
-    private int colorBackground;
-    private static final int COLOR_STEM = Color.parseColor("#27AE60");
-    private static final int COLOR_LEAF_LIGHT = Color.parseColor("#40D47E");
-    private static final int COLOR_LEAF_DARK = Color.parseColor("#2ECC71");
-    private static final int COLOR_GROWING_LIGHT = Color.parseColor("#A9DFBF");
-    private static final int COLOR_GROWING_DARK = Color.parseColor("#7DCEA0");
-    private static final int COLOR_WITHERED_LIGHT = Color.parseColor("#D4C5B0");
-    private static final int COLOR_WITHERED_DARK = Color.parseColor("#B8A995");
-    private static final int COLOR_LOCKED_LIGHT = Color.parseColor("#58D68D");
-    private static final int COLOR_LOCKED_DARK = Color.parseColor("#1E8449");
-    private static final int COLOR_SHADOW = Color.argb(20, 0, 0, 0);
-
-    private static final float POT_HEIGHT = 100f;
-    private static final float POT_TOP_WIDTH = 160f;
-    private static final float POT_BOTTOM_WIDTH = 120f;
-    private static final float POT_MARGIN_BOTTOM = 60f;
-
-    private int leafIndexCounter = 0;
-
-    private class LeafHitBox {
-        float x, y, radius;
-        int index;
-        LeafHitBox(float x, float y, float radius, int index) {
-            this.x = x; this.y = y; this.radius = radius; this.index = index;
+    private OnClusterClickListener clusterClickListener;
+
+    private final TreeRenderer renderer;
+
+    private static final float HIT_RADIUS = 50f;
+    private static final float MAX_ZOOM = 4f;
+    private static final float DOUBLE_TAP_ZOOM = 2.5f;
+    // Covers the sway's displacement at the crown plus a tip's radius
+    private static final float CULL_MARGIN = 80f;
+    private static final float SWAY_DEGREES = 1.5f;
+    private static final double SWAY_PERIOD_MS = 1500.0;
+    // ~30 fps is plenty for a slow sway
+    private static final long FRAME_INTERVAL_MS = 33L;
+
+    private float currentSway;
+
+    // ─── Hit-test grid (rebuilt with the geometry) ───
+    private final TipGrid hitGrid = new TipGrid();
+    private final float[] touchPoint = new float[2];
+
+    // ─── Camera (world = view coordinates at zoom 1) ───
+    private float cameraX, cameraY;
+    private float zoom = 1f;
+    private final RectF cullRect = new RectF();
+
+    // ─── Gestures ───
+    private GestureDetector gestureDetector;
+    private ScaleGestureDetector scaleDetector;
+    private boolean scrubbing;
+    private int scrubIndex = -1;
+
+    // ─── Sway animation ───
+    private final Choreographer.FrameCallback frameCallback = this::onAnimationFrame;
+    private boolean frameScheduled;
+    private boolean visibleForAnimation;
+    private float animatorScale = 1f;
+    // Registered while attached: the scale can change from developer options or battery saver
+    private final ContentObserver animatorScaleObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            readAnimatorScale();
+            invalidate();
+            updateAnimation();
         }
-    }
+    };
+    private long lastFrameNanos;
+    private long animationFrameCount;
 
     public interface OnLeafClickListener {
         void onLeafClick(int index, Leaf leaf);
     }
 
-    public PlantageTreeView(Context context) { super(context); init(); }
-    public PlantageTreeView(Context context, AttributeSet attrs) { super(context, attrs); init(); }
+    public interface OnClusterClickListener {
+        void onClusterClick(LeafCluster cluster);
+    }
+
+    public PlantageTreeView(Context context) { super(context); renderer = new TreeRenderer(context); init(); }
+    public PlantageTreeView(Context context, AttributeSet attrs) { super(context, attrs); renderer = new TreeRenderer(context); init(); }
 
     private void init() {
-        colorBackground = ContextCompat.getColor(getContext(), R.color.colorBackground);
-        stemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        stemPaint.setColor(COLOR_STEM);
-        stemPaint.setStyle(Paint.Style.STROKE);
-        stemPaint.setStrokeCap(Paint.Cap.ROUND);
-
-        leafLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        leafLightPaint.setStyle(Paint.Style.FILL);
-
-        leafDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        leafDarkPaint.setStyle(Paint.Style.FILL);
-
-        potPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        potRimPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        soilPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        shadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        shadowPaint.setColor(COLOR_SHADOW);
-
-        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        textPaint.setColor(Color.WHITE);
-        textPaint.setTextAlign(Paint.Align.CENTER);
+        gestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                // Keep the stream so a second finger can still start a pinch; at
+                // zoom 1 the list still intercepts vertical drags on its own
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapUp(MotionEvent e) {
+                int tip = findTipAt(e.getX(), e.getY());
+                if (tip >= 0) {
+                    dispatchTipClick(tip);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                // At zoom 1 the drag belongs to the timeline list
+                if (zoom <= 1f || scrubbing || scaleDetector.isInProgress())
+                    return false;
+                setCamera(cameraX + distanceX / zoom, cameraY + distanceY / zoom, zoom);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                if (findTipAt(e.getX(), e.getY()) >= 0)
+                    return false;
+                if (zoom > 1f) {
+                    setCamera(0f, 0f, 1f);
+                } else {
+                    zoomAround(e.getX(), e.getY(), DOUBLE_TAP_ZOOM);
+                }
+                return true;
+            }
+
+            @Override
+            public void onLongPress(MotionEvent e) {
+                int tip = findTipAt(e.getX(), e.getY());
+                if (tip < 0)
+                    return;
+                scrubbing = true;
+                scrubIndex = tip;
+                if (getParent() != null) {
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+                invalidate();
+            }
+        });
+
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                if (scrubbing)
+                    return false;
+                if (getParent() != null) {
+                    getParent().requestDisallowInterceptTouchEvent(true);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomAround(detector.getFocusX(), detector.getFocusY(), zoom * detector.getScaleFactor());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Zooms to {@code newZoom} keeping the world point under (focusX, focusY) in place.
+     */
+    private void zoomAround(float focusX, float focusY, float newZoom) {
+        newZoom = Math.max(1f, Math.min(MAX_ZOOM, newZoom));
+        float worldX = cameraX + focusX / zoom;
+        float worldY = cameraY + focusY / zoom;
+        setCamera(worldX - focusX / newZoom, worldY - focusY / newZoom, newZoom);
+    }
+
+    private void setCamera(float x, float y, float newZoom) {
+        zoom = newZoom;
+        // Keep the view inside the zoom-1 frame
+        cameraX = Math.max(0f, Math.min(getWidth() - getWidth() / zoom, x));
+        cameraY = Math.max(0f, Math.min(getHeight() - getHeight() / zoom, y));
+        invalidate();
+    }
+
+    public float getZoom() {
+        return zoom;
     }
 
     public void setLeaves(List<Leaf> leaves) {
+        setTree(new ArrayList<>(), leaves);
+    }
+
+    /**
+     * Shows {@code clusters} (oldest first) on the leftmost tips, followed by {@code leaves}.
+     */
+    public void setTree(List<LeafCluster> clusters, List<Leaf> leaves) {
+        this.clusters = clusters;
         this.leaves = leaves;
+        renderer.setTree(clusters, leaves);
         invalidate();
+        updateAnimation();
     }
 
     public void setOnLeafClickListener(OnLeafClickListener listener) {
         this.leafClickListener = listener;
     }
 
-    @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
-        canvas.drawColor(colorBackground);
-
-        int width = getWidth();
-        int height = getHeight();
-        float centerX = width / 2f;
-        float potBottomY = height - POT_MARGIN_BOTTOM;
-        float potTopY = potBottomY - POT_HEIGHT;
-
-        clickZones.clear();
-
-        // 1. Shadow
-        canvas.drawOval(new RectF(centerX - 90, potBottomY - 5, centerX + 90, potBottomY + 5), shadowPaint);
-
-        // 2. Pot
-        potPaint.setColor(Color.rgb(185, 100, 70));
-        Path potPath = new Path();
-        potPath.moveTo(centerX - POT_TOP_WIDTH / 2 + 10, potTopY);
-        potPath.lineTo(centerX + POT_TOP_WIDTH / 2 - 10, potTopY);
-        potPath.lineTo(centerX + POT_BOTTOM_WIDTH / 2, potBottomY);
-        potPath.lineTo(centerX - POT_BOTTOM_WIDTH / 2, potBottomY);
-        potPath.close();
-        canvas.drawPath(potPath, potPaint);
-
-        // 3. Soil
-        soilPaint.setColor(Color.parseColor("#5D4037"));
-        canvas.drawOval(new RectF(centerX - 60, potTopY - 10, centerX + 60, potTopY + 10), soilPaint);
-
-        // 4. Fractal Tree
-        drawFractalTree(canvas, centerX, potTopY);
-
-        // 5. Pot Rim
-        potRimPaint.setColor(Color.rgb(210, 120, 90));
-        canvas.drawRoundRect(new RectF(centerX - POT_TOP_WIDTH / 2, potTopY - 15, centerX + POT_TOP_WIDTH / 2, potTopY + 15), 10, 10, potRimPaint);
-
-        // Slow animation for sway
-        postInvalidateDelayed(50);
+    public void setOnClusterClickListener(OnClusterClickListener listener) {
+        this.clusterClickListener = listener;
     }
 
-    private void drawFractalTree(Canvas canvas, float cx, float baseY) {
-        if (leaves == null || leaves.isEmpty()) return;
-        leafIndexCounter = 0;
-        
-        int totalLeaves = leaves.size();
-        int maxDepth = (int) Math.ceil(Math.log(totalLeaves) / Math.log(2));
-        if (maxDepth < 3) maxDepth = 3;
-        if (maxDepth > 7) maxDepth = 7;
+    /**
+     * Number of sway frames driven since the view was created. Stays constant
+     * while the tree is hidden, detached or animations are off.
+     */
+    public long getAnimationFrameCount() {
+        return animationFrameCount;
+    }
 
-        float initialLength = 160f;
-        float initialThickness = 12f;
+    public boolean isAnimating() {
+        return frameScheduled;
+    }
 
-        drawBranch(canvas, cx, baseY, -90f, initialLength, initialThickness, 0, maxDepth);
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().getContentResolver().registerContentObserver(
+                Settings.Global.getUriFor(Settings.Global.ANIMATOR_DURATION_SCALE), false,
+                animatorScaleObserver);
+        readAnimatorScale();
+        visibleForAnimation = isShown() && getWindowVisibility() == VISIBLE;
+        updateAnimation();
     }
 
-    private void drawBranch(Canvas canvas, float x1, float y1, float angle, float length, float thickness, int depth, int maxDepth) {
-        float sway = (float)(Math.sin(System.currentTimeMillis() / 1500.0 + depth) * 1.5);
-        float currentAngle = angle + sway;
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getContext().getContentResolver().unregisterContentObserver(animatorScaleObserver);
+        updateAnimation();
+    }
 
-        float x2 = x1 + (float) (Math.cos(Math.toRadians(currentAngle)) * length);
-        float y2 = y1 + (float) (Math.sin(Math.toRadians(currentAngle)) * length);
+    private void readAnimatorScale() {
+        animatorScale = Settings.Global.getFloat(getContext().getContentResolver(),
+                Settings.Global.ANIMATOR_DURATION_SCALE, 1f);
+    }
 
-        stemPaint.setStrokeWidth(thickness);
-        canvas.drawLine(x1, y1, x2, y2, stemPaint);
+    @Override
+    public void onVisibilityAggregated(boolean isVisible) {
+        super.onVisibilityAggregated(isVisible);
+        // Also covers the window going away (activity stopped, screen off)
+        visibleForAnimation = isVisible;
+        updateAnimation();
+    }
 
-        if (depth < maxDepth) {
-            float subAngle = 28f;
-            float subLength = length * 0.72f;
-            float subThickness = thickness * 0.65f;
+    private boolean shouldAnimate() {
+        return isAttachedToWindow() && visibleForAnimation && animatorScale > 0f
+                && (!clusters.isEmpty() || !leaves.isEmpty());
+    }
 
-            drawBranch(canvas, x2, y2, currentAngle - subAngle, subLength, subThickness, depth + 1, maxDepth);
-            drawBranch(canvas, x2, y2, currentAngle + subAngle, subLength, subThickness, depth + 1, maxDepth);
-        } else {
-            if (leafIndexCounter < leaves.size()) {
-                drawFractalLeaf(canvas, x2, y2, currentAngle, leafIndexCounter);
-                leafIndexCounter++;
-            }
+    private void updateAnimation() {
+        boolean shouldRun = shouldAnimate();
+        if (shouldRun && !frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else if (!shouldRun && frameScheduled) {
+            // Also removes a callback posted with a delay
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            frameScheduled = false;
         }
     }
 
-    private void drawFractalLeaf(Canvas canvas, float x, float y, float angle, int index) {
-        Leaf leaf = leaves.get(index);
-        float scale = 0.85f;
-        if (leaf.status == LeafStatus.GROWING) {
-            scale *= (0.2f + (leaf.getGrowthProgress() * 0.8f));
+    private void onAnimationFrame(long frameTimeNanos) {
+        lastFrameNanos = frameTimeNanos;
+        animationFrameCount++;
+        invalidate();
+        if (!shouldAnimate()) {
+            frameScheduled = false;
+            return;
         }
+        // Runs on the first vsync after the delay, i.e. one sway frame after this one
+        long spentMillis = (System.nanoTime() - frameTimeNanos) / 1_000_000L;
+        Choreographer.getInstance().postFrameCallbackDelayed(frameCallback,
+                Math.max(0L, FRAME_INTERVAL_MS - spentMillis));
+    }
 
-        int lightColor = COLOR_LEAF_LIGHT;
-        int darkColor = COLOR_LEAF_DARK;
-        if (leaf.status == LeafStatus.GROWING) { lightColor = COLOR_GROWING_LIGHT; darkColor = COLOR_GROWING_DARK; }
-        else if (leaf.status == LeafStatus.WITHERED) { lightColor = COLOR_WITHERED_LIGHT; darkColor = COLOR_WITHERED_DARK; }
-        else if (leaf.status == LeafStatus.LOCKED) { lightColor = COLOR_LOCKED_LIGHT; darkColor = COLOR_LOCKED_DARK; }
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        renderer.setSize(w, h);
+        setCamera(cameraX, cameraY, zoom);
+    }
 
-        leafLightPaint.setColor(lightColor);
-        leafDarkPaint.setColor(darkColor);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (renderer.prepare()) {
+            // Tips moved: re-bucket them and drop a highlight that may now point elsewhere
+            buildHitGrid();
+            scrubIndex = -1;
+        }
 
-        float radius = 35f * scale;
+        canvas.drawColor(renderer.getBackgroundColor());
 
         canvas.save();
-        canvas.translate(x, y);
-        
-        // Circular glowing leaf
-        canvas.drawCircle(0, 0, radius, leafDarkPaint);
-        canvas.drawCircle(0, 0, radius * 0.7f, leafLightPaint);
-
-        if (leaf.status == LeafStatus.ACTIVE && !leaf.hasContent()) {
-            textPaint.setTextSize(22f * scale);
-            canvas.drawText("+", 0, 8f * scale, textPaint);
-        }
+        canvas.scale(zoom, zoom);
+        canvas.translate(-cameraX, -cameraY);
+        cullRect.set(cameraX - CULL_MARGIN, cameraY - CULL_MARGIN,
+                cameraX + getWidth() / zoom + CULL_MARGIN, cameraY + getHeight() / zoom + CULL_MARGIN);
+
+        // Swayed as a whole around the trunk base
+        // (a slower animator scale stretches the period; scale 0 keeps it still)
+        currentSway = animatorScale > 0f && lastFrameNanos != 0
+                ? (float) Math.sin(lastFrameNanos / 1e6 / (SWAY_PERIOD_MS * animatorScale)) * SWAY_DEGREES
+                : 0f;
+        renderer.draw(canvas, currentSway, scrubIndex, zoom > 1f ? cullRect : null);
         canvas.restore();
+    }
 
-        if (leaf.status != LeafStatus.GROWING) {
-            clickZones.add(new LeafHitBox(x, y, 50f * scale, index));
+    /**
+     * Buckets the tips into the hit-test grid by position.
+     */
+    private void buildHitGrid() {
+        // Growing leaves never exceed the regular scale, so the cell size holds until the next rebuild
+        float maxScale = 0.85f;
+        for (int i = 0; i < renderer.leafCount; i++) {
+            maxScale = Math.max(maxScale, renderer.leafScale[i]);
+        }
+        hitGrid.build(renderer.leafX, renderer.leafY, renderer.leafCount, HIT_RADIUS * maxScale);
+    }
+
+    /**
+     * Topmost clickable tip under the view coordinate, or -1.
+     */
+    private int findTipAt(float x, float y) {
+        toTreeCoords(x, y, touchPoint);
+        return hitGrid.find(touchPoint[0], touchPoint[1], renderer.leafX, renderer.leafY,
+                renderer.leafScale, renderer.leafClickable, HIT_RADIUS);
+    }
+
+    // Map through the camera, then undo the current sway so the touch lines up with the cached geometry
+    private void toTreeCoords(float x, float y, float[] out) {
+        x = cameraX + x / zoom;
+        y = cameraY + y / zoom;
+        double rad = Math.toRadians(-currentSway);
+        float dx = x - renderer.baseX;
+        float dy = y - renderer.baseY;
+        out[0] = renderer.baseX + (float) (dx * Math.cos(rad) - dy * Math.sin(rad));
+        out[1] = renderer.baseY + (float) (dx * Math.sin(rad) + dy * Math.cos(rad));
+    }
+
+    private void dispatchTipClick(int tip) {
+        int clusterCount = clusters.size();
+        if (tip < clusterCount) {
+            if (clusterClickListener != null) {
+                clusterClickListener.onClusterClick(clusters.get(tip));
+            }
+        } else if (leafClickListener != null && tip - clusterCount < leaves.size()) {
+            leafClickListener.onLeafClick(tip - clusterCount, leaves.get(tip - clusterCount));
         }
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            float tx = event.getX();
-            float ty = event.getY();
-            for (int i = clickZones.size() - 1; i >= 0; i--) {
-                LeafHitBox box = clickZones.get(i);
-                if (Math.hypot(tx - box.x, ty - box.y) < box.radius) {
-                    if (leafClickListener != null && box.index < leaves.size()) {
-                        leafClickListener.onLeafClick(box.index, leaves.get(box.index));
+        scaleDetector.onTouchEvent(event);
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN && zoom > 1f && getParent() != null) {
+            // While zoomed, drags pan the tree instead of scrolling the list
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        boolean handled = gestureDetector.onTouchEvent(event);
+        if (scrubbing) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_MOVE:
+                    int tip = findTipAt(event.getX(), event.getY());
+                    if (tip >= 0 && tip != scrubIndex) {
+                        scrubIndex = tip;
+                        performHapticFeedback(HapticFeedbackConstants.CLOCK_TICK);
+                        invalidate();
                     }
-                    return true;
-                }
+                    break;
+                case MotionEvent.ACTION_UP:
+                    int selected = scrubIndex;
+                    endScrub();
+                    if (selected >= 0) {
+                        dispatchTipClick(selected);
+                    }
+                    break;
+                case MotionEvent.ACTION_CANCEL:
+                    endScrub();
+                    break;
             }
+            return true;
         }
-        return super.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
     }
 
-    /**
-     * Renders the tree to a Bitmap for the home screen widget.
-     */
-    public static Bitmap renderToBitmap(Context context, int width, int height, List<Leaf> leaves) {
-        android.graphics.Bitmap bitmap = android.graphics.Bitmap.createBitmap(width, height, android.graphics.Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-
-        PlantageTreeView tempView = new PlantageTreeView(context);
-        tempView.setLeaves(leaves);
-        tempView.measure(
-            View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
-            View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY)
-        );
-        tempView.layout(0, 0, width, height);
-        tempView.draw(canvas);
-
-        return bitmap;
+    private void endScrub() {
+        scrubbing = false;
+        scrubIndex = -1;
+        invalidate();
     }
 }
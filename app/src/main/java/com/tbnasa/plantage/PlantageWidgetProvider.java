@@ -3,45 +3,58 @@ package com.tbnasa.plantage;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
+import android.os.Bundle;
 import android.widget.RemoteViews;
 
-import com.tbnasa.plantage.model.Leaf;
-
-import java.util.List;
+import java.util.Objects;
 
 /**
  * PlantageWidgetProvider - Handles the home screen widget updates.
- * Renders the current state of the garden tree.
+ * Renders the current state of the garden tree. The work runs in
+ * {@link WidgetUpdater}, off the broadcast thread.
  */
 public class PlantageWidgetProvider extends AppWidgetProvider {
 
+    // Below this (shorter side, dp) the tree is too small to need full colour depth or density
+    private static final int SMALL_WIDGET_DP = 160;
+    private static final float SMALL_WIDGET_MAX_DENSITY = 1.5f;
+    private static final int MAX_TREE_PX = 720;
+    // widget_plantage: 12dp padding, the tree takes 1.2 of 2.2 weight
+    private static final int WIDGET_PADDING_DP = 12;
+    private static final float TREE_WEIGHT = 1.2f / 2.2f;
+
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        for (int appWidgetId : appWidgetIds) {
-            updateAppWidget(context, appWidgetManager, appWidgetId);
-        }
+        WidgetUpdater.getInstance(context).requestUpdate(appWidgetIds, goAsync());
     }
 
-    static void updateAppWidget(Context context, AppWidgetManager appWidgetManager, int appWidgetId) {
-        DatabaseHelper dbHelper = new DatabaseHelper(context);
-        List<Leaf> leaves = dbHelper.getAllLeaves();
+    @Override
+    public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager, int appWidgetId,
+            Bundle newOptions) {
+        // Resized: render the tree at the new size
+        WidgetUpdater.getInstance(context).requestUpdate(new int[] { appWidgetId }, goAsync());
+    }
 
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        WidgetUpdater.getInstance(context).forget(appWidgetIds);
+    }
+
+    /**
+     * Builds the widget's views from an update pass's snapshot and the tree image.
+     */
+    static RemoteViews buildViews(Context context, WidgetUpdater.Snapshot snapshot, Bitmap treeBitmap) {
         // Construct the RemoteViews object
         RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_plantage);
 
-        // Render the tree to bitmap
-        Bitmap treeBitmap = PlantageTreeView.renderToBitmap(context, 512, 512, leaves);
         views.setImageViewBitmap(R.id.widget_tree_image, treeBitmap);
 
         // Stats logic
-        int streak = dbHelper.calculateStreak();
-        int total = dbHelper.getTotalMemories();
-        views.setTextViewText(R.id.widget_streak_text, "🔥 " + streak);
-        views.setTextViewText(R.id.widget_total_text, "📖 " + total);
+        views.setTextViewText(R.id.widget_streak_text, "🔥 " + snapshot.streak);
+        views.setTextViewText(R.id.widget_total_text, "📖 " + snapshot.totalMemories);
 
         // Click to open app
         Intent intent = new Intent(context, MainActivity.class);
@@ -49,29 +62,69 @@ public class PlantageWidgetProvider extends AppWidgetProvider {
         views.setOnClickPendingIntent(R.id.widget_tree_image, pendingIntent);
 
         // Update status text based on today's leaf
-        String today = new java.text.SimpleDateFormat("yyyy-MM-dd", java.util.Locale.getDefault()).format(new java.util.Date());
-        Leaf todayLeaf = dbHelper.getLeafByDate(today);
-        if (todayLeaf != null && todayLeaf.hasContent()) {
+        if (snapshot.gardenedToday) {
             views.setTextViewText(R.id.widget_status_text, "Gardened Today 🌿");
         } else {
             views.setTextViewText(R.id.widget_status_text, "Needs attention 🌱");
         }
+        return views;
+    }
+
+    /**
+     * Pixel size and config of a widget's tree bitmap.
+     */
+    static final class TreeSize {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+
+        TreeSize(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
 
-        // Instruct the widget manager to update the widget
-        appWidgetManager.updateAppWidget(appWidgetId, views);
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TreeSize)) return false;
+            TreeSize other = (TreeSize) o;
+            return width == other.width && height == other.height && config == other.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, config);
+        }
     }
 
     /**
-     * Call this when data changes to refresh all widgets.
+     * The size the launcher gives the widget's tree image,
+     * in RGB_565 and at most 1.5x density when the widget is small.
      */
-    public static void refreshAllWidgets(Context context) {
-        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-        int[] ids = appWidgetManager.getAppWidgetIds(new ComponentName(context, PlantageWidgetProvider.class));
-        if (ids.length > 0) {
-            Intent updateIntent = new Intent(context, PlantageWidgetProvider.class);
-            updateIntent.setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE);
-            updateIntent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, ids);
-            context.sendBroadcast(updateIntent);
+    static TreeSize treeSize(Context context, Bundle options) {
+        // Portrait cell size: min width x max height (dp)
+        int widthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH, 110);
+        int heightDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MAX_HEIGHT, 110);
+        float treeWidthDp = Math.max(48, (widthDp - 2 * WIDGET_PADDING_DP) * TREE_WEIGHT);
+        float treeHeightDp = Math.max(48, heightDp - 2 * WIDGET_PADDING_DP);
+
+        boolean small = Math.min(treeWidthDp, treeHeightDp) < SMALL_WIDGET_DP;
+        float density = context.getResources().getDisplayMetrics().density;
+        if (small) {
+            density = Math.min(density, SMALL_WIDGET_MAX_DENSITY);
         }
+        // Large tablets: keep the aspect, cap the longer side
+        density = Math.min(density, MAX_TREE_PX / Math.max(treeWidthDp, treeHeightDp));
+        return new TreeSize(Math.round(treeWidthDp * density), Math.round(treeHeightDp * density),
+                small ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Call this when data changes to refresh all widgets. Calls in quick
+     * succession are merged into one update.
+     */
+    public static void refreshAllWidgets(Context context) {
+        WidgetUpdater.getInstance(context).requestUpdate(null, null);
     }
 }
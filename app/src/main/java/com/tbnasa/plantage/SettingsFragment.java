@@ -18,9 +18,12 @@ import androidx.fragment.app.Fragment;
 import android.widget.EditText;
 import android.net.Uri;
 import android.content.Intent;
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStream;
+
+import com.tbnasa.plantage.model.DayClock;
+import com.tbnasa.plantage.model.EpochDay;
+
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -85,6 +88,7 @@ public class SettingsFragment extends Fragment {
         if (tvGithubLabel != null) tvGithubLabel.setText(lang.getGithubLabel());
 
         setupBackupSection(view);
+        observeBackupJobs();
 
         LinearLayout rowGithub = view.findViewById(R.id.rowGithub);
         if (rowGithub != null) {
@@ -218,11 +222,14 @@ public class SettingsFragment extends Fragment {
         LinearLayout rowExport = view.findViewById(R.id.rowExport);
         LinearLayout rowImport = view.findViewById(R.id.rowImport);
 
-        rowExport.setOnClickListener(v -> showPasswordDialog(true, null));
+        // Ask for the location first so the backup streams straight into it.
+        // Backups are incremental, so each one gets its own dated name.
+        rowExport.setOnClickListener(v -> ((MainActivity)requireActivity()).launchFileExport(
+                "Plantage_Backup_" + EpochDay.format(DayClock.system().today()) + ".plntg"));
         rowImport.setOnClickListener(v -> ((MainActivity)requireActivity()).launchFileImport());
     }
 
-    private void showPasswordDialog(boolean isExport, Uri importUri) {
+    private void showPasswordDialog(boolean isExport, List<Uri> uris) {
         AlertDialog.Builder builder = new AlertDialog.Builder(requireContext(), R.style.ZenDialogTheme);
         builder.setTitle(lang.getEnterPassword());
 
@@ -248,90 +255,87 @@ public class SettingsFragment extends Fragment {
 
         builder.setPositiveButton(lang.getOk(), (dialog, which) -> {
             String password = input.getText().toString();
-            if (password.isEmpty()) return;
+            if (password.isEmpty()) {
+                if (isExport) discardExport(uris.get(0));
+                return;
+            }
 
             if (isExport) {
-                startExportProcess(password);
+                startExportProcess(uris.get(0), password);
             } else {
-                startImportProcess(importUri, password);
+                startImportProcess(uris, password);
             }
         });
-        builder.setNegativeButton(lang.getCancel(), null);
+        builder.setNegativeButton(lang.getCancel(), (dialog, which) -> {
+            if (isExport) discardExport(uris.get(0));
+        });
         builder.show();
     }
 
-    private void startExportProcess(String password) {
-        MainActivity activity = (MainActivity) requireActivity();
-        activity.getBackupManager().exportData(password, new BackupManager.BackupListener() {
-            @Override
-            public void onProgress(String message) {
-                activity.runOnUiThread(() -> Toast.makeText(activity, message, Toast.LENGTH_SHORT).show());
-            }
-
-            @Override
-            public void onSuccess(File file) {
-                activity.runOnUiThread(() -> activity.launchFileExport("Plantage_Backup.plntg"));
-                // We'll handle the actual copy in onExportLocationSelected
-                tempBackupFile = file;
-            }
+    private void startExportProcess(Uri uri, String password) {
+        ((MainActivity) requireActivity()).getBackupManager().exportData(uri, password);
+    }
 
-            @Override
-            public void onError(String error) {
-                activity.runOnUiThread(() -> Toast.makeText(activity, "Error: " + error, Toast.LENGTH_LONG).show());
-            }
-        });
+    public void onExportLocationSelected(Uri uri) {
+        showPasswordDialog(true, Collections.singletonList(uri));
     }
 
-    private File tempBackupFile;
+    // The picker has already created the file; don't leave it empty
+    private void discardExport(Uri uri) {
+        BackupManager backupManager = ((MainActivity) requireActivity()).getBackupManager();
+        new Thread(() -> backupManager.discardExport(uri)).start();
+    }
 
-    public void onExportLocationSelected(Uri uri) {
-        if (tempBackupFile == null) return;
-        new Thread(() -> {
-            try {
-                InputStream is = new java.io.FileInputStream(tempBackupFile);
-                OutputStream os = requireContext().getContentResolver().openOutputStream(uri);
-                byte[] buffer = new byte[8192];
-                int len;
-                while ((len = is.read(buffer)) > 0) {
-                    os.write(buffer, 0, len);
-                }
-                os.close();
-                is.close();
-                tempBackupFile.delete();
-                tempBackupFile = null;
-                requireActivity().runOnUiThread(() -> 
-                    Toast.makeText(getContext(), lang.getBackupCreated(), Toast.LENGTH_SHORT).show());
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+    // An incremental backup comes with every older backup of its chain
+    public void onImportFilesSelected(List<Uri> uris) {
+        showPasswordDialog(false, uris);
     }
 
-    public void onImportFileSelected(Uri uri) {
-        showPasswordDialog(false, uri);
+    private void startImportProcess(List<Uri> uris, String password) {
+        ((MainActivity) requireActivity()).getBackupManager().importData(uris, password);
     }
 
-    private void startImportProcess(Uri uri, String password) {
-        MainActivity activity = (MainActivity) requireActivity();
-        activity.getBackupManager().importData(uri, password, new BackupManager.RestoreListener() {
+    // Tied to the view's lifecycle, so a recreated screen picks up a job that is still running
+    private void observeBackupJobs() {
+        BackupManager backupManager = ((MainActivity) requireActivity()).getBackupManager();
+        backupManager.observeJobs(getViewLifecycleOwner(), new BackupManager.JobListener() {
             @Override
-            public void onProgress(String message) {
-                activity.runOnUiThread(() -> Toast.makeText(activity, message, Toast.LENGTH_SHORT).show());
+            public void onProgress(boolean export, String message) {
+                Toast.makeText(requireContext(), message, Toast.LENGTH_SHORT).show();
             }
 
             @Override
-            public void onSuccess() {
-                activity.runOnUiThread(() -> {
-                    Toast.makeText(activity, lang.getRestoreSuccess(), Toast.LENGTH_SHORT).show();
-                    activity.recreate(); // Reload everything
-                });
+            public void onProgress(boolean export, long bytesDone, long bytesTotal) {
+                showProgress(export, bytesDone, bytesTotal);
             }
 
             @Override
-            public void onError(String error) {
-                activity.runOnUiThread(() -> Toast.makeText(activity, lang.getInvalidPassword(), Toast.LENGTH_LONG).show());
+            public void onFinished(boolean export, String error) {
+                showProgress(export, 0, 0);
+                if (BackupManager.ERROR_CANCELLED.equals(error)) return; // Cancelled from the notification
+                if (export) {
+                    String message = error == null ? lang.getBackupCreated() : "Error: " + error;
+                    Toast.makeText(requireContext(), message, error == null ? Toast.LENGTH_SHORT : Toast.LENGTH_LONG).show();
+                } else if (error == null) {
+                    Toast.makeText(requireContext(), lang.getRestoreSuccess(), Toast.LENGTH_SHORT).show();
+                    requireActivity().recreate(); // Reload everything
+                } else {
+                    String message = BackupManager.ERROR_INCOMPLETE_CHAIN.equals(error)
+                            ? lang.getBackupChainIncomplete() : lang.getInvalidPassword();
+                    Toast.makeText(requireContext(), message, Toast.LENGTH_LONG).show();
+                }
             }
         });
     }
-}
 
+    // Shows a running backup job's percentage after its row label; total 0 restores the label
+    private void showProgress(boolean export, long bytesDone, long bytesTotal) {
+        int labelId = export ? R.id.tvExportLabel : R.id.tvImportLabel;
+        String label = export ? lang.getExportData() : lang.getImportData();
+        View view = getView();
+        if (view == null) return;
+        TextView tvLabel = view.findViewById(labelId);
+        if (tvLabel == null) return;
+        tvLabel.setText(bytesTotal > 0 ? label + " · " + (bytesDone * 100 / bytesTotal) + "%" : label);
+    }
+}
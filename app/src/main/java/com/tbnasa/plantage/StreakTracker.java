@@ -0,0 +1,150 @@
+package com.tbnasa.plantage;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.tbnasa.plantage.model.EpochDay;
+import com.tbnasa.plantage.model.Streak;
+
+/**
+ * StreakTracker — Maintains the current/longest streak incrementally.
+ * The streak is stored in a single-row table next to the leaves table and is
+ * updated only when a leaf gains or loses content, so reads are constant time.
+ * All writes happen inside the caller's transaction (see DatabaseHelper).
+ */
+class StreakTracker {
+
+    static final String TABLE_STREAK = "streak";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_CURRENT = "current";
+    private static final String COLUMN_LONGEST = "longest";
+    private static final String COLUMN_LAST_DAY = "last_day";
+
+    static final String CREATE_STREAK = "CREATE TABLE " + TABLE_STREAK + "("
+            + COLUMN_ID + " INTEGER PRIMARY KEY CHECK (" + COLUMN_ID + " = 1),"
+            + COLUMN_CURRENT + " INTEGER NOT NULL DEFAULT 0,"
+            + COLUMN_LONGEST + " INTEGER NOT NULL DEFAULT 0,"
+            + COLUMN_LAST_DAY + " INTEGER"
+            + ")";
+
+    private volatile Streak cached;
+
+    /**
+     * Returns the stored streak (cached after the first read).
+     */
+    Streak get(SQLiteDatabase db) {
+        Streak streak = cached;
+        if (streak != null) return streak;
+
+        streak = Streak.EMPTY;
+        Cursor cursor = db.query(TABLE_STREAK,
+                new String[] { COLUMN_CURRENT, COLUMN_LONGEST, COLUMN_LAST_DAY },
+                COLUMN_ID + " = 1", null, null, null, null);
+        if (cursor.moveToFirst()) {
+            long lastDay = cursor.isNull(2) ? EpochDay.NONE : cursor.getLong(2);
+            streak = new Streak(cursor.getInt(0), cursor.getInt(1), lastDay);
+        }
+        cursor.close();
+        cached = streak;
+        return streak;
+    }
+
+    /**
+     * Drops the cached streak, e.g. after the database file was replaced.
+     */
+    void invalidate() {
+        cached = null;
+    }
+
+    /**
+     * Called when a leaf gains or loses content.
+     * Extending the run by one day is O(1); anything else (a removed memory or
+     * a back-filled older day) falls back to a full rebuild.
+     */
+    void onContentChanged(SQLiteDatabase db, long day, boolean hasContent) {
+        if (day == EpochDay.NONE) return;
+        Streak streak = get(db);
+
+        if (!hasContent || !canExtend(streak, day)) {
+            rebuild(db);
+            return;
+        }
+        save(db, extend(streak, day));
+    }
+
+    /**
+     * Whether content on {@code day} can be applied with {@link #extend}
+     * instead of a full rebuild: only days after the last counted one can.
+     */
+    static boolean canExtend(Streak streak, long day) {
+        return day != EpochDay.NONE && (streak.lastDay == EpochDay.NONE || day > streak.lastDay);
+    }
+
+    /**
+     * The streak after content was added on {@code day}, a day later than
+     * {@code streak.lastDay}.
+     */
+    static Streak extend(Streak streak, long day) {
+        int current = streak.lastDay != EpochDay.NONE && day == streak.lastDay + 1
+                ? streak.current + 1
+                : 1;
+        return new Streak(current, Math.max(streak.longest, current), day);
+    }
+
+    /**
+     * Recomputes the streak from scratch with one ordered pass over the days
+     * that have content.
+     */
+    void rebuild(SQLiteDatabase db) {
+        // Ordered scan over the idx_leaves_content_day partial index
+        Cursor cursor = db.rawQuery("SELECT " + DatabaseHelper.COLUMN_DAY
+                + " FROM " + DatabaseHelper.TABLE_LEAVES
+                + " WHERE " + DatabaseHelper.HAS_CONTENT
+                + " AND " + DatabaseHelper.COLUMN_DAY + " IS NOT NULL"
+                + " ORDER BY " + DatabaseHelper.COLUMN_DAY + " ASC", null);
+
+        Rebuild pass = new Rebuild();
+        while (cursor.moveToNext()) {
+            pass.add(cursor.getLong(0));
+        }
+        cursor.close();
+
+        save(db, pass.result());
+    }
+
+    /**
+     * One pass over the days with content, in ascending order; a day may
+     * repeat when several leaves share it.
+     */
+    static final class Rebuild {
+        private int current;
+        private int longest;
+        private long lastDay = EpochDay.NONE;
+
+        void add(long day) {
+            if (day == lastDay) return;
+            current = lastDay != EpochDay.NONE && day == lastDay + 1 ? current + 1 : 1;
+            longest = Math.max(longest, current);
+            lastDay = day;
+        }
+
+        Streak result() {
+            return new Streak(current, longest, lastDay);
+        }
+    }
+
+    private void save(SQLiteDatabase db, Streak streak) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ID, 1);
+        values.put(COLUMN_CURRENT, streak.current);
+        values.put(COLUMN_LONGEST, streak.longest);
+        if (streak.lastDay == EpochDay.NONE) {
+            values.putNull(COLUMN_LAST_DAY);
+        } else {
+            values.put(COLUMN_LAST_DAY, streak.lastDay);
+        }
+        db.insertWithOnConflict(TABLE_STREAK, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        cached = streak;
+    }
+}
@@ -2,12 +2,9 @@ package com.tbnasa.plantage;
 
 import androidx.appcompat.app.AlertDialog;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.CountDownTimer;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -20,14 +17,18 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.ConcatAdapter;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.tbnasa.plantage.model.DayClock;
 import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+import com.tbnasa.plantage.model.LeafImage;
 import com.tbnasa.plantage.model.LeafStatus;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -36,20 +37,38 @@ import java.util.Locale;
 /**
  * TimelineFragment — Main tab showing the tree view, greeting,
  * countdown timer, and recent memory cards.
+ * The whole tab is one RecyclerView: the greeting and tree are its header row
+ * and the memory cards are recycled below it. All reads and writes go through
+ * LeafRepository; the snapshot reloads by itself after every write.
  */
 public class TimelineFragment extends Fragment {
 
-    private PlantageTreeView treeView;
-    private TextView tvGreeting, tvDate, tvCountdown, tvStreakCounter;
-    private LinearLayout cardPlantMemory, layoutMemoryCards, layoutCountdown;
-    private View tvEmptyState;
+    private HeaderAdapter headerAdapter;
+    private MemoryAdapter memoryAdapter;
     // Removed filtering fields
 
-    private DatabaseHelper dbHelper;
+    private LeafRepository repository;
+    private LeafRepository.Query<TimelineSnapshot> timelineQuery;
     private LanguageManager lang;
     private CountDownTimer countdownTimer;
 
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+    // Header row state; the header binds from these whenever it is (re)bound
+    private String greeting = "";
+    private String displayDate = "";
+    private String countdownText = "";
+    private TimelineSnapshot snapshot;
+
+    // Memory list keyset paging state
+    private List<Leaf> memories = new ArrayList<>();
+    private long oldestMemoryDay;
+    private boolean hasMoreMemories;
+    private boolean loadingMore;
+    // Read by the background snapshot loader
+    private volatile int memoryPage = TimelineSnapshot.DEFAULT_MEMORY_PAGE;
+
+    // Start loading the next page this many cards before the end
+    private static final int PREFETCH_DISTANCE = 5;
+
     private static final SimpleDateFormat DISPLAY_DATE = new SimpleDateFormat("EEEE, MMMM d", Locale.getDefault());
 
     @Nullable
@@ -66,32 +85,38 @@ public class TimelineFragment extends Fragment {
 
         // Get shared services
         MainActivity activity = (MainActivity) requireActivity();
-        dbHelper = activity.getDbHelper();
+        repository = activity.getRepository();
         lang = activity.getLang();
 
-        // Bind views
-        tvGreeting = view.findViewById(R.id.tvGreeting);
-        tvDate = view.findViewById(R.id.tvDate);
-        tvCountdown = view.findViewById(R.id.tvCountdown);
-        layoutCountdown = view.findViewById(R.id.layoutCountdown);
-        cardPlantMemory = view.findViewById(R.id.cardPlantMemory);
-        layoutMemoryCards = view.findViewById(R.id.layoutMemoryCards);
-        treeView = view.findViewById(R.id.plantageTreeView);
-        tvStreakCounter = view.findViewById(R.id.tvStreakCounter);
+        // Header row (greeting, plant card, tree) followed by the memory cards
+        RecyclerView recycler = view.findViewById(R.id.recyclerTimeline);
+        headerAdapter = new HeaderAdapter();
+        memoryAdapter = new MemoryAdapter(lang, this::showLeafDialog);
+        ConcatAdapter.Config config = new ConcatAdapter.Config.Builder()
+                .setStableIdMode(ConcatAdapter.Config.StableIdMode.ISOLATED_STABLE_IDS)
+                .build();
+        LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
+        recycler.setLayoutManager(layoutManager);
+        recycler.setAdapter(new ConcatAdapter(config, headerAdapter, memoryAdapter));
 
         setupGreeting();
         setupCountdown();
-        setupPlantMemoryCard();
-        loadTreeData();
-        loadRecentMemories();
-
-        // Set i18n text
-        TextView tvPlantHint = view.findViewById(R.id.tvPlantHint);
-        if (tvPlantHint != null)
-            tvPlantHint.setText(lang.getPlantAMemory());
-        TextView tvRecentTitle = view.findViewById(R.id.tvRecentTitle);
-        if (tvRecentTitle != null)
-            tvRecentTitle.setText(lang.getRecentMemories());
+
+        timelineQuery = repository.query(db -> TimelineSnapshot.load(db, memoryPage));
+        timelineQuery.observe(getViewLifecycleOwner(), this::bindSnapshot);
+
+        // Load older memories as the list nears its end
+        recycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+                if (dy <= 0)
+                    return;
+                int last = layoutManager.findLastVisibleItemPosition();
+                if (last >= layoutManager.getItemCount() - PREFETCH_DISTANCE) {
+                    loadMoreMemories();
+                }
+            }
+        });
     }
 
     private void setupGreeting() {
@@ -106,32 +131,39 @@ public class TimelineFragment extends Fragment {
         } else {
             greeting = lang.getGoodEvening();
         }
-        tvGreeting.setText(greeting);
-        tvDate.setText(DISPLAY_DATE.format(new Date()));
-
-        // Streak calculation
-        List<Leaf> leaves = dbHelper.getAllLeaves();
-        int streak = 0;
-        Calendar streakCal = Calendar.getInstance();
-        for (int i = 0; i < 365; i++) {
-            String dateStr = DATE_FORMAT.format(streakCal.getTime());
-            boolean found = false;
-            for (Leaf leaf : leaves) {
-                if (dateStr.equals(leaf.date) && leaf.hasContent()) {
-                    found = true;
-                    break;
-                }
-            }
-            if (found) {
-                streak++;
-                streakCal.add(Calendar.DAY_OF_YEAR, -1);
-            } else {
-                break;
+        this.greeting = greeting;
+        displayDate = DISPLAY_DATE.format(new Date());
+        headerAdapter.notifyItemChanged(0, HeaderAdapter.PAYLOAD_GREETING);
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // The day may have changed while the tab was in the background
+        long today = DayClock.system().today();
+        repository.execute(db -> TimelineSnapshot.createUpcomingLeaves(db, today), null);
+    }
+
+    /**
+     * Day rollover: creates the new day's leaves, then reloads the snapshot
+     * if that write did not already.
+     */
+    private void refresh() {
+        long today = DayClock.system().today();
+        repository.execute(db -> TimelineSnapshot.createUpcomingLeaves(db, today), created -> {
+            if (created == 0 && timelineQuery != null) {
+                timelineQuery.invalidate();
             }
-        }
-        if (tvStreakCounter != null) {
-            tvStreakCounter.setText(String.valueOf(streak));
-        }
+        });
+    }
+
+    /**
+     * Binds the streak, tree and memory list from one snapshot.
+     */
+    private void bindSnapshot(TimelineSnapshot snapshot) {
+        this.snapshot = snapshot;
+        loadRecentMemories(snapshot);
+        headerAdapter.notifyItemChanged(0, HeaderAdapter.PAYLOAD_SNAPSHOT);
     }
 
     private void setupCountdown() {
@@ -153,179 +185,233 @@ public class TimelineFragment extends Fragment {
                 long hours = millisUntilFinished / 3_600_000;
                 long mins = (millisUntilFinished % 3_600_000) / 60_000;
                 long secs = (millisUntilFinished % 60_000) / 1000;
-                tvCountdown.setText(String.format(Locale.getDefault(),
+                setCountdownText(String.format(Locale.getDefault(),
                         "%02d:%02d:%02d", hours, mins, secs));
             }
 
             @Override
             public void onFinish() {
-                tvCountdown.setText("00:00:00");
+                setCountdownText("00:00:00");
                 // Refresh the UI for the new day
                 if (isAdded()) {
                     setupGreeting();
-                    loadTreeData();
-                    loadRecentMemories();
+                    refresh();
                     setupCountdown();
                 }
             }
         }.start();
     }
 
-    private void setupPlantMemoryCard() {
-        cardPlantMemory.setOnClickListener(v -> {
-            String today = DATE_FORMAT.format(new Date());
-            Leaf leaf = dbHelper.getLeafByDate(today);
+    private void setCountdownText(String text) {
+        countdownText = text;
+        headerAdapter.notifyItemChanged(0, HeaderAdapter.PAYLOAD_COUNTDOWN);
+    }
+
+    private void plantMemory() {
+        repository.execute(db -> {
+            long today = DayClock.system().today();
+            Leaf leaf = db.getLeafByDay(today);
             if (leaf == null) {
                 // Default creation (no category)
-                long id = dbHelper.createLeaf(today);
-                leaf = dbHelper.getLeafByDate(today);
+                db.createLeaf(today);
+                leaf = db.getLeafByDay(today);
             }
-            if (leaf != null) {
+            return leaf;
+        }, leaf -> {
+            if (leaf != null && isAdded()) {
                 showLeafDialog(leaf);
             }
         });
     }
 
-    private void loadTreeData() {
-        if (treeView == null)
+    private void loadRecentMemories(TimelineSnapshot snapshot) {
+        if (memoryAdapter == null)
             return;
-        List<Leaf> leaves = dbHelper.getAllLeaves();
-        treeView.setLeaves(leaves);
 
-        // Check / create today's leaf
-        String today = DATE_FORMAT.format(new Date());
-        
-        // Check / create tomorrow's leaf
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_YEAR, 1);
-        String tomorrow = DATE_FORMAT.format(cal.getTime());
+        // Newest first; ListAdapter diffs against the previous list by leaf id
+        memories = new ArrayList<>(snapshot.memories);
+        memoryAdapter.submitList(memories);
+        // Keep the pages already scrolled through so the next diff only touches changed cards
+        memoryPage = Math.max(TimelineSnapshot.DEFAULT_MEMORY_PAGE, memories.size());
+        hasMoreMemories = snapshot.hasMoreMemories;
+        if (!memories.isEmpty()) {
+            oldestMemoryDay = memories.get(memories.size() - 1).day;
+        }
+    }
+
+    /**
+     * Appends the next page of older memories (keyset on day).
+     */
+    private void loadMoreMemories() {
+        if (!hasMoreMemories || loadingMore || memoryAdapter == null)
+            return;
+        loadingMore = true;
+        int pageSize = TimelineSnapshot.DEFAULT_MEMORY_PAGE;
+        long before = oldestMemoryDay;
+        repository.execute(db -> db.getMemoriesBefore(before, pageSize + 1), page -> {
+            loadingMore = false;
+            // A snapshot reload replaced the list meanwhile; its own paging state wins
+            if (memoryAdapter == null || before != oldestMemoryDay)
+                return;
+            appendMemories(page, pageSize);
+        });
+    }
 
-        boolean hasTodayLeaf = false;
-        boolean hasTomorrowLeaf = false;
+    private void appendMemories(List<Leaf> page, int pageSize) {
+        hasMoreMemories = page.size() > pageSize;
+        int count = Math.min(page.size(), pageSize);
+        if (count == 0)
+            return;
 
-        for (Leaf l : leaves) {
-            if (today.equals(l.date)) hasTodayLeaf = true;
-            if (tomorrow.equals(l.date)) hasTomorrowLeaf = true;
-        }
+        // submitList needs a new list instance to diff against the current one
+        List<Leaf> next = new ArrayList<>(memories.size() + count);
+        next.addAll(memories);
+        next.addAll(page.subList(0, count));
+        memories = next;
+        oldestMemoryDay = page.get(count - 1).day;
+        memoryPage = memories.size();
+        memoryAdapter.submitList(memories);
+    }
+
+    /**
+     * The header row holding the greeting, plant card and tree. It is inflated
+     * and recycled like any other row and binds from the fragment's state;
+     * updates pass a payload so the same holder is rebound in place (and only
+     * the changed part of it).
+     */
+    private final class HeaderAdapter extends RecyclerView.Adapter<HeaderHolder> {
+        static final String PAYLOAD_GREETING = "greeting";
+        static final String PAYLOAD_COUNTDOWN = "countdown";
+        static final String PAYLOAD_SNAPSHOT = "snapshot";
 
-        boolean changed = false;
-        if (!hasTodayLeaf) {
-            dbHelper.createLeaf(today);
-            changed = true;
+        HeaderAdapter() {
+            setHasStableIds(true);
         }
-        if (!hasTomorrowLeaf) {
-            dbHelper.createLeaf(tomorrow);
-            changed = true;
+
+        @Override
+        public long getItemId(int position) {
+            return 0;
         }
 
-        if (changed) {
-            treeView.setLeaves(dbHelper.getAllLeaves());
+        @NonNull
+        @Override
+        public HeaderHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.item_timeline_header, parent, false);
+            HeaderHolder holder = new HeaderHolder(view);
+            holder.cardPlantMemory.setOnClickListener(v -> plantMemory());
+            holder.treeView.setOnLeafClickListener((index, leaf) -> showLeafDialog(leaf));
+            holder.treeView.setOnClusterClickListener(TimelineFragment.this::showClusterPicker);
+            if (holder.tvPlantHint != null)
+                holder.tvPlantHint.setText(lang.getPlantAMemory());
+            if (holder.tvRecentTitle != null)
+                holder.tvRecentTitle.setText(lang.getRecentMemories());
+            return holder;
         }
 
-        treeView.setOnLeafClickListener((index, leaf) -> showLeafDialog(leaf));
-    }
+        @Override
+        public void onBindViewHolder(@NonNull HeaderHolder holder, int position) {
+            bindGreeting(holder);
+            bindCountdown(holder);
+            bindSnapshot(holder);
+        }
 
-    private void loadRecentMemories() {
-        if (layoutMemoryCards == null)
-            return;
-        layoutMemoryCards.removeAllViews();
-
-        List<Leaf> leaves = dbHelper.getAllLeaves();
-        int count = 0;
-        // Show all leaves with content, newest first
-        for (int i = leaves.size() - 1; i >= 0; i--) {
-            Leaf leaf = leaves.get(i);
-            if (leaf.hasContent()) {
-                View card = createMemoryCard(leaf);
-                layoutMemoryCards.addView(card);
-                count++;
+        @Override
+        public void onBindViewHolder(@NonNull HeaderHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+                return;
             }
+            for (Object payload : payloads) {
+                if (PAYLOAD_GREETING.equals(payload)) {
+                    bindGreeting(holder);
+                } else if (PAYLOAD_COUNTDOWN.equals(payload)) {
+                    bindCountdown(holder);
+                } else if (PAYLOAD_SNAPSHOT.equals(payload)) {
+                    bindSnapshot(holder);
+                }
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return 1;
+        }
+
+        private void bindGreeting(HeaderHolder holder) {
+            holder.tvGreeting.setText(greeting);
+            holder.tvDate.setText(displayDate);
         }
 
-        // Show empty state if no memories
-        if (tvEmptyState != null) {
-            tvEmptyState.setVisibility(count == 0 ? View.VISIBLE : View.GONE);
+        private void bindCountdown(HeaderHolder holder) {
+            holder.tvCountdown.setText(countdownText);
+        }
+
+        private void bindSnapshot(HeaderHolder holder) {
+            if (snapshot == null) {
+                holder.tvEmptyState.setVisibility(View.GONE);
+                return;
+            }
+            if (holder.tvStreakCounter != null) {
+                holder.tvStreakCounter.setText(String.valueOf(snapshot.streak));
+            }
+            holder.treeView.setTree(snapshot.treeClusters, snapshot.treeLeaves);
+            // Show empty state if no memories
+            holder.tvEmptyState.setVisibility(snapshot.memories.isEmpty() ? View.VISIBLE : View.GONE);
         }
     }
 
-    private View createMemoryCard(Leaf leaf) {
-        Context ctx = requireContext();
-        LinearLayout card = new LinearLayout(ctx);
-        card.setOrientation(LinearLayout.VERTICAL);
-        card.setBackgroundResource(R.drawable.bg_card_zen);
-        card.setElevation(4f);
-
-        int pad = (int) (16 * getResources().getDisplayMetrics().density);
-        int marginBottom = (int) (8 * getResources().getDisplayMetrics().density);
-        card.setPadding(pad, pad, pad, pad);
-
-        LinearLayout.LayoutParams lp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.MATCH_PARENT,
-                LinearLayout.LayoutParams.WRAP_CONTENT);
-        lp.bottomMargin = marginBottom;
-        card.setLayoutParams(lp);
-
-        // Date
-        TextView tvDate = new TextView(ctx);
-        tvDate.setText(leaf.date);
-        tvDate.setTextColor(getResources().getColor(R.color.zen_accent, null));
-        tvDate.setTextSize(13f);
-        card.addView(tvDate);
-
-        // Content preview
-        if (leaf.content != null && !leaf.content.trim().isEmpty()) {
-            TextView tvContent = new TextView(ctx);
-            String preview = leaf.content.length() > 100
-                    ? leaf.content.substring(0, 100) + "..."
-                    : leaf.content;
-            tvContent.setText(preview);
-            tvContent.setTextColor(getResources().getColor(R.color.zen_text_secondary, null));
-            tvContent.setTextSize(14f);
-            tvContent.setMaxLines(3);
-            tvContent.setEllipsize(TextUtils.TruncateAt.END);
-
-            LinearLayout.LayoutParams tvLp = new LinearLayout.LayoutParams(
-                    LinearLayout.LayoutParams.MATCH_PARENT,
-                    LinearLayout.LayoutParams.WRAP_CONTENT);
-            tvLp.topMargin = (int) (4 * getResources().getDisplayMetrics().density);
-            tvContent.setLayoutParams(tvLp);
-            card.addView(tvContent);
+    private static final class HeaderHolder extends RecyclerView.ViewHolder {
+        final TextView tvGreeting, tvDate, tvCountdown, tvStreakCounter, tvPlantHint, tvRecentTitle;
+        final View cardPlantMemory, tvEmptyState;
+        final PlantageTreeView treeView;
+
+        HeaderHolder(View view) {
+            super(view);
+            tvGreeting = view.findViewById(R.id.tvGreeting);
+            tvDate = view.findViewById(R.id.tvDate);
+            tvCountdown = view.findViewById(R.id.tvCountdown);
+            tvStreakCounter = view.findViewById(R.id.tvStreakCounter);
+            tvPlantHint = view.findViewById(R.id.tvPlantHint);
+            tvRecentTitle = view.findViewById(R.id.tvRecentTitle);
+            cardPlantMemory = view.findViewById(R.id.cardPlantMemory);
+            tvEmptyState = view.findViewById(R.id.tvEmptyState);
+            treeView = view.findViewById(R.id.plantageTreeView);
         }
+    }
 
-        // Status badge
-        TextView tvStatus = new TextView(ctx);
-        String statusText;
-        int statusColor;
-        switch (leaf.status) {
+    /**
+     * Lists the leaves folded into a tree cluster; picking one opens its dialog.
+     */
+    private void showClusterPicker(LeafCluster cluster) {
+        repository.execute(db -> db.getLeavesBetween(cluster.fromDay, cluster.toDay), leaves -> {
+            if (!isAdded() || leaves.isEmpty())
+                return;
+            String[] items = new String[leaves.size()];
+            for (int i = 0; i < items.length; i++) {
+                Leaf leaf = leaves.get(i);
+                items[i] = leaf.date + "  ·  " + getStatusText(leaf.status)
+                        + (leaf.hasContent() ? "  ✎" : "");
+            }
+            new AlertDialog.Builder(requireContext(), R.style.ZenDialogTheme)
+                    .setTitle(cluster.label)
+                    .setItems(items, (dialog, which) -> showLeafDialog(leaves.get(which)))
+                    .setNegativeButton(lang.getClose(), null)
+                    .show();
+        });
+    }
+
+    private String getStatusText(LeafStatus status) {
+        switch (status) {
             case GROWING:
-                statusText = lang.getGrowingStatus();
-                statusColor = R.color.zen_accent_light;
-                break;
+                return lang.getGrowingStatus();
             case LOCKED:
-                statusText = lang.getLockedStatus();
-                statusColor = R.color.zen_accent_dark;
-                break;
+                return lang.getLockedStatus();
             case WITHERED:
-                statusText = lang.getWitheredStatus();
-                statusColor = R.color.leaf_withered;
-                break;
+                return lang.getWitheredStatus();
             default:
-                statusText = lang.getActiveStatus();
-                statusColor = R.color.zen_accent;
-                break;
+                return lang.getActiveStatus();
         }
-        tvStatus.setText(statusText);
-        tvStatus.setTextColor(getResources().getColor(statusColor, null));
-        tvStatus.setTextSize(12f);
-        LinearLayout.LayoutParams sLp = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT,
-                LinearLayout.LayoutParams.WRAP_CONTENT);
-        sLp.topMargin = (int) (6 * getResources().getDisplayMetrics().density);
-        tvStatus.setLayoutParams(sLp);
-        card.addView(tvStatus);
-
-        card.setOnClickListener(v -> showLeafDialog(leaf));
-        return card;
     }
 
     /**
@@ -464,12 +550,12 @@ public class TimelineFragment extends Fragment {
 
             builder.setPositiveButton(lang.getSave(), (dialog, which) -> {
                 String newContent = etContent.getText().toString().trim();
-                dbHelper.updateLeafContent(leaf.id, newContent);
-                leaf.content = newContent;
-                Toast.makeText(ctx, lang.getMemorySaved(), Toast.LENGTH_SHORT).show();
-                PlantageWidgetProvider.refreshAllWidgets(ctx);
-                loadTreeData();
-                loadRecentMemories();
+                Context appContext = ctx.getApplicationContext();
+                // The timeline snapshot reloads on its own once the write lands
+                repository.updateLeafContent(leaf.id, newContent, () -> {
+                    Toast.makeText(appContext, lang.getMemorySaved(), Toast.LENGTH_SHORT).show();
+                    PlantageWidgetProvider.refreshAllWidgets(appContext);
+                });
             });
 
             builder.setNegativeButton(lang.getCancel(), null);
@@ -479,44 +565,41 @@ public class TimelineFragment extends Fragment {
     }
 
     private void addPhotoViews(LinearLayout parent, Leaf leaf) {
-        String[] images = leaf.getAllImages();
-        if (images.length == 0)
+        if (leaf.imageCount == 0)
             return;
 
         Context ctx = requireContext();
         float density = getResources().getDisplayMetrics().density;
 
+        ImageLoader imageLoader = ImageLoader.getInstance(ctx);
+        int photoWidth = getResources().getDisplayMetrics().widthPixels;
+        int photoHeight = (int) (180 * density);
+
         TextView tvPhotos = new TextView(ctx);
         tvPhotos.setText("\n" + lang.getPhotos());
         tvPhotos.setTextColor(getResources().getColor(R.color.zen_text_primary, null));
         tvPhotos.setTextSize(14f);
         parent.addView(tvPhotos);
 
-        for (String path : images) {
-            if (path == null || path.trim().isEmpty())
-                continue;
-            File file = new File(path.trim());
-            if (!file.exists())
-                continue;
-
-            ImageView iv = new ImageView(ctx);
-            try {
-                Bitmap bm = BitmapFactory.decodeFile(file.getAbsolutePath());
-                if (bm != null) {
-                    iv.setImageBitmap(bm);
-                    LinearLayout.LayoutParams ivLp = new LinearLayout.LayoutParams(
-                            LinearLayout.LayoutParams.MATCH_PARENT,
-                            (int) (180 * density));
-                    ivLp.topMargin = (int) (8 * density);
-                    iv.setLayoutParams(ivLp);
-                    iv.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                    iv.setClipToOutline(true);
-                    parent.addView(iv);
-                }
-            } catch (Exception e) {
-                // Skip broken images
+        // Placeholder keeps the photos above the buttons; filled once leaf_images is read
+        LinearLayout photoList = new LinearLayout(ctx);
+        photoList.setOrientation(LinearLayout.VERTICAL);
+        parent.addView(photoList);
+
+        repository.execute(db -> db.getLeafImages(leaf.id), images -> {
+            for (LeafImage image : images) {
+                // Sampled to the card size and decoded off the main thread
+                ImageView iv = new ImageView(ctx);
+                LinearLayout.LayoutParams ivLp = new LinearLayout.LayoutParams(
+                        LinearLayout.LayoutParams.MATCH_PARENT, photoHeight);
+                ivLp.topMargin = (int) (8 * density);
+                iv.setLayoutParams(ivLp);
+                iv.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                iv.setClipToOutline(true);
+                photoList.addView(iv);
+                imageLoader.load(image.path, iv, photoWidth, photoHeight);
             }
-        }
+        });
     }
 
     @Override
@@ -531,39 +614,13 @@ public class TimelineFragment extends Fragment {
      * Called from MainActivity after image is picked.
      */
     public void onImagePicked(long leafId, Uri imageUri) {
-        try {
-            Context ctx = requireContext();
-            InputStream is = ctx.getContentResolver().openInputStream(imageUri);
-            if (is == null)
-                return;
-
-            File dir = new File(ctx.getFilesDir(), "leaf_images");
-            if (!dir.exists())
-                dir.mkdirs();
-
-            String fileName = "leaf_" + leafId + "_" + System.currentTimeMillis() + ".jpg";
-            File outFile = new File(dir, fileName);
-            FileOutputStream fos = new FileOutputStream(outFile);
-
-            byte[] buf = new byte[4096];
-            int len;
-            while ((len = is.read(buf)) > 0) {
-                fos.write(buf, 0, len);
-            }
-            fos.close();
-            is.close();
-
-            Leaf leaf = dbHelper.getLeafByDate(DATE_FORMAT.format(new Date()));
-            if (leaf != null && leaf.id == leafId) {
-                String newPaths = leaf.addImagePath(outFile.getAbsolutePath());
-                dbHelper.updateLeafImages(leafId, newPaths);
-                Toast.makeText(ctx, lang.getPhotoAdded(), Toast.LENGTH_SHORT).show();
-                PlantageWidgetProvider.refreshAllWidgets(ctx);
-                loadTreeData();
-                loadRecentMemories();
+        Context appContext = requireContext().getApplicationContext();
+        // Normalized and stored off the main thread; the snapshot reloads after the write
+        ImageIngestor.getInstance(appContext).ingest(imageUri, leafId, success -> {
+            if (success) {
+                Toast.makeText(appContext, lang.getPhotoAdded(), Toast.LENGTH_SHORT).show();
+                PlantageWidgetProvider.refreshAllWidgets(appContext);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        });
     }
 }
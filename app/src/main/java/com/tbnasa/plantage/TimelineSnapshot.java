@@ -0,0 +1,71 @@
+package com.tbnasa.plantage;
+
+import com.tbnasa.plantage.model.DayClock;
+import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimelineSnapshot — One read of everything the timeline shows.
+ * Built once per refresh so the greeting, tree and memory list share the same
+ * rows; the cost is bounded by the window sizes, not by the journal's age.
+ */
+final class TimelineSnapshot {
+
+    static final int DEFAULT_MEMORY_PAGE = 30;
+
+    final long today;
+    final List<LeafCluster> treeClusters; // older history, oldest → newest
+    final List<Leaf> treeLeaves; // oldest → newest, ends with today/tomorrow once created
+    final List<Leaf> memories; // newest → oldest
+    final boolean hasMoreMemories;
+    final int streak;
+
+    private TimelineSnapshot(long today, TreeLayout tree, List<Leaf> memories,
+            boolean hasMoreMemories, int streak) {
+        this.today = today;
+        this.treeClusters = tree.clusters;
+        this.treeLeaves = tree.leaves;
+        this.memories = memories;
+        this.hasMoreMemories = hasMoreMemories;
+        this.streak = streak;
+    }
+
+    /**
+     * Loads the tree's {@link TreeLayout} and the first {@code memoryPage}
+     * memories. Read-only: today's and tomorrow's leaves are created
+     * beforehand by {@link #createUpcomingLeaves}.
+     */
+    static TimelineSnapshot load(DatabaseHelper dbHelper, int memoryPage) {
+        long today = DayClock.system().today();
+        long tomorrow = today + 1;
+
+        TreeLayout tree = TreeLayout.load(dbHelper, tomorrow + 1);
+
+        List<Leaf> memories = dbHelper.getMemoriesBefore(tomorrow + 1, memoryPage + 1);
+        boolean hasMore = memories.size() > memoryPage;
+        if (hasMore) {
+            memories = new ArrayList<>(memories.subList(0, memoryPage));
+        }
+
+        return new TimelineSnapshot(today, tree, memories, hasMore, dbHelper.getCurrentStreak());
+    }
+
+    /**
+     * Creates today's and tomorrow's leaves if they are missing and returns how
+     * many were created. A write, so it runs as its own repository task when
+     * the timeline starts and when the day rolls over; a created leaf reloads
+     * the snapshot through the change listener.
+     */
+    static int createUpcomingLeaves(DatabaseHelper dbHelper, long today) {
+        int created = 0;
+        for (long day = today; day <= today + 1; day++) {
+            if (dbHelper.getLeafByDay(day) == null && dbHelper.createLeaf(day) != -1) {
+                created++;
+            }
+        }
+        return created;
+    }
+}
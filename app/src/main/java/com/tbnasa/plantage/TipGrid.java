@@ -0,0 +1,101 @@
+package com.tbnasa.plantage;
+
+import java.util.Arrays;
+
+/**
+ * TipGrid — Uniform grid over the tree's tips, for hit testing.
+ *
+ * Tips are bucketed by position with a counting sort, without per-tip
+ * objects: cell c holds items[start[c] .. start[c + 1]). Cells are at least
+ * one hit radius wide, so a touch only needs its 3x3 neighbourhood. The
+ * arrays are reused across rebuilds.
+ */
+final class TipGrid {
+
+    private float left, top, cell;
+    private int cols, rows;
+    private int[] start = new int[1];
+    private int[] items = new int[0];
+
+    /**
+     * Buckets the first {@code count} tips. {@code cellSize} must be at least
+     * the largest hit radius that {@link #find} will be asked about.
+     */
+    void build(float[] x, float[] y, int count, float cellSize) {
+        if (count == 0) {
+            cols = 0;
+            rows = 0;
+            return;
+        }
+        float minX = x[0], maxX = x[0], minY = y[0], maxY = y[0];
+        for (int i = 1; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        cell = cellSize;
+        left = minX;
+        top = minY;
+        cols = (int) ((maxX - minX) / cell) + 1;
+        rows = (int) ((maxY - minY) / cell) + 1;
+
+        int cells = cols * rows;
+        if (start.length < cells + 1) {
+            start = new int[cells + 1];
+        } else {
+            Arrays.fill(start, 0, cells + 1, 0);
+        }
+        if (items.length < count) {
+            items = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            start[cellOf(x[i], y[i]) + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            start[c + 1] += start[c];
+        }
+        // Each cell's cursor advances to the next cell's start; shift back afterwards
+        for (int i = 0; i < count; i++) {
+            items[start[cellOf(x[i], y[i])]++] = i;
+        }
+        for (int c = cells; c > 0; c--) {
+            start[c] = start[c - 1];
+        }
+        start[0] = 0;
+    }
+
+    /**
+     * Topmost (highest index) clickable tip whose circle of
+     * {@code radius * scale[i]} contains the point, or -1.
+     */
+    int find(float px, float py, float[] x, float[] y, float[] scale, boolean[] clickable, float radius) {
+        if (cols == 0)
+            return -1;
+        int cx = (int) Math.floor((px - left) / cell);
+        int cy = (int) Math.floor((py - top) / cell);
+        int best = -1;
+        for (int gy = Math.max(0, cy - 1); gy <= Math.min(rows - 1, cy + 1); gy++) {
+            for (int gx = Math.max(0, cx - 1); gx <= Math.min(cols - 1, cx + 1); gx++) {
+                int c = gy * cols + gx;
+                for (int k = start[c]; k < start[c + 1]; k++) {
+                    int i = items[k];
+                    if (i <= best || !clickable[i]) continue;
+                    float dx = px - x[i];
+                    float dy = py - y[i];
+                    float r = radius * scale[i];
+                    if (dx * dx + dy * dy < r * r) {
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private int cellOf(float x, float y) {
+        int cx = (int) ((x - left) / cell);
+        int cy = (int) ((y - top) / cell);
+        return cy * cols + cx;
+    }
+}
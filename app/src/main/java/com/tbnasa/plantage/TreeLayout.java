@@ -0,0 +1,116 @@
+package com.tbnasa.plantage;
+
+import com.tbnasa.plantage.model.EpochDay;
+import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TreeLayout — Decides what the tree's tips show.
+ *
+ * The tree has at most {@link #MAX_TIPS} tips (depth 7). Recent leaves get a
+ * tip each; everything older is grouped into month clusters, and when those
+ * do not fit, the oldest months fold into years and then into multi-year
+ * spans. Every leaf stays reachable through its cluster, while the tree's draw
+ * cost stays bounded however long the journal is.
+ */
+final class TreeLayout {
+
+    static final int MAX_TIPS = 128;
+    // Tips left for clusters once older history exists; the rest are single leaves
+    static final int MAX_CLUSTER_TIPS = 32;
+
+    final List<LeafCluster> clusters; // oldest → newest, all older than leaves
+    final List<Leaf> leaves; // oldest → newest
+
+    TreeLayout(List<LeafCluster> clusters, List<Leaf> leaves) {
+        this.clusters = clusters;
+        this.leaves = leaves;
+    }
+
+    /**
+     * Lays out every leaf before {@code beforeDay}: the newest ones as tips,
+     * older history as clusters. Reads at most MAX_TIPS rows plus one row per month.
+     */
+    static TreeLayout load(DatabaseHelper db, long beforeDay) {
+        List<Leaf> window = new ArrayList<>(db.getLeavesBefore(beforeDay, MAX_TIPS));
+        Collections.reverse(window);
+        if (window.size() < MAX_TIPS) {
+            return new TreeLayout(Collections.<LeafCluster>emptyList(), window);
+        }
+        List<LeafCluster> months = db.getMonthClustersBefore(window.get(0).day);
+        if (months.isEmpty()) {
+            return new TreeLayout(Collections.<LeafCluster>emptyList(), window);
+        }
+        return fit(window, months, MAX_TIPS, MAX_CLUSTER_TIPS);
+    }
+
+    /**
+     * Trims the oldest leaves into the month clusters and collapses the clusters
+     * so that clusters + leaves fit in {@code maxTips}.
+     */
+    static TreeLayout fit(List<Leaf> leaves, List<LeafCluster> months, int maxTips, int maxClusterTips) {
+        int keep = Math.min(leaves.size(), maxTips - maxClusterTips);
+        List<Leaf> trimmed = leaves.subList(0, leaves.size() - keep);
+        List<LeafCluster> clusters = new ArrayList<>(months);
+        for (Leaf leaf : trimmed) {
+            addToMonth(clusters, leaf);
+        }
+        return new TreeLayout(collapse(clusters, maxClusterTips),
+                new ArrayList<>(leaves.subList(leaves.size() - keep, leaves.size())));
+    }
+
+    // Leaves arrive oldest first, so a leaf either extends the last month or starts a new one
+    private static void addToMonth(List<LeafCluster> clusters, Leaf leaf) {
+        if (leaf.day == EpochDay.NONE) return;
+        String month = EpochDay.format(leaf.day).substring(0, 7);
+        LeafCluster single = new LeafCluster(month, leaf.day, leaf.day, 1, leaf.hasContent() ? 1 : 0);
+        int last = clusters.size() - 1;
+        if (last >= 0 && clusters.get(last).label.equals(month)) {
+            clusters.set(last, clusters.get(last).merge(single, month));
+        } else {
+            clusters.add(single);
+        }
+    }
+
+    /**
+     * Folds the oldest months into years, then the oldest clusters into
+     * spans, until at most {@code budget} clusters remain.
+     */
+    static List<LeafCluster> collapse(List<LeafCluster> months, int budget) {
+        List<LeafCluster> out = new ArrayList<>(months);
+
+        // 1. Oldest months → years, one year at a time
+        int i = 0;
+        while (out.size() > budget && i < out.size()) {
+            String year = out.get(i).label.substring(0, 4);
+            LeafCluster merged = new LeafCluster(year, out.get(i).fromDay, out.get(i).toDay,
+                    out.get(i).leafCount, out.get(i).memoryCount);
+            int j = i + 1;
+            while (j < out.size() && out.get(j).label.startsWith(year) && out.get(j).label.length() > 4) {
+                merged = merged.merge(out.get(j), year);
+                j++;
+            }
+            out.subList(i, j).clear();
+            out.add(i, merged);
+            i++;
+        }
+
+        // 2. Still too many (decades of history): merge the two oldest into a span
+        while (out.size() > budget) {
+            LeafCluster a = out.remove(0);
+            LeafCluster b = out.remove(0);
+            String label = a.label.substring(0, 4) + "–" + lastYear(b.label);
+            out.add(0, a.merge(b, label));
+        }
+        return out;
+    }
+
+    private static String lastYear(String label) {
+        int dash = label.indexOf('–');
+        return dash >= 0 ? label.substring(dash + 1) : label.substring(0, 4);
+    }
+}
@@ -0,0 +1,457 @@
+package com.tbnasa.plantage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import androidx.core.content.ContextCompat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+import com.tbnasa.plantage.model.LeafStatus;
+
+/**
+ * TreeRenderer - Draws the fractal tree onto any Canvas, without a View.
+ *
+ * Branch segments and leaf anchors are computed once per leaf-set or size
+ * change into flat float arrays; the pot and soil are cached in a small bitmap.
+ * A draw only replays the cached tree with one drawLines call per depth.
+ * PlantageTreeView adds sway, camera and touch on top; the widget renders
+ * through {@link #renderToBitmap} into a pooled bitmap.
+ */
+final class TreeRenderer {
+
+    private static final int COLOR_STEM = Color.parseColor("#27AE60");
+    private static final int COLOR_LEAF_LIGHT = Color.parseColor("#40D47E");
+    private static final int COLOR_LEAF_DARK = Color.parseColor("#2ECC71");
+    private static final int COLOR_GROWING_LIGHT = Color.parseColor("#A9DFBF");
+    private static final int COLOR_GROWING_DARK = Color.parseColor("#7DCEA0");
+    private static final int COLOR_WITHERED_LIGHT = Color.parseColor("#D4C5B0");
+    private static final int COLOR_WITHERED_DARK = Color.parseColor("#B8A995");
+    private static final int COLOR_LOCKED_LIGHT = Color.parseColor("#58D68D");
+    private static final int COLOR_LOCKED_DARK = Color.parseColor("#1E8449");
+    private static final int COLOR_SHADOW = Color.argb(20, 0, 0, 0);
+    private static final int COLOR_POT = Color.rgb(185, 100, 70);
+    private static final int COLOR_POT_RIM = Color.rgb(210, 120, 90);
+    private static final int COLOR_SOIL = Color.parseColor("#5D4037");
+
+    private static final float POT_HEIGHT = 100f;
+    private static final float POT_TOP_WIDTH = 160f;
+    private static final float POT_BOTTOM_WIDTH = 120f;
+    private static final float POT_MARGIN_BOTTOM = 60f;
+
+    private static final float TRUNK_LENGTH = 160f;
+    private static final float TRUNK_THICKNESS = 12f;
+    private static final float BRANCH_ANGLE = 28f;
+    private static final int MAX_DEPTH = 7;
+    static final float LEAF_RADIUS = 35f;
+    // Growing leaves get bigger through the day; refresh their scale this often
+    private static final long STYLE_REFRESH_MS = 60_000;
+
+    // Offscreen renders lay the tree out as if the shorter side were this long
+    private static final float LOGICAL_SIZE = 512f;
+    private static final int POOL_SIZE = 3;
+
+    private final int colorBackground;
+    private final Paint stemPaint;
+    private final Paint leafLightPaint;
+    private final Paint leafDarkPaint;
+    private final Paint potPaint;
+    private final Paint potRimPaint;
+    private final Paint soilPaint;
+    private final Paint shadowPaint;
+    private final Paint textPaint;
+    private final Paint highlightPaint;
+
+    private List<LeafCluster> clusters = new ArrayList<>();
+    private List<Leaf> leaves = new ArrayList<>();
+    private int width, height;
+
+    // ─── Cached geometry (rebuilt when leaves or size change) ───
+    // Read by PlantageTreeView for hit testing; written only here
+    private boolean geometryDirty = true;
+    float baseX, baseY;
+    int leafCount;
+    float[] leafX = new float[0];
+    float[] leafY = new float[0];
+    float[] leafScale = new float[0];
+    boolean[] leafClickable = new boolean[0];
+    private int maxDepth = -1;
+    private float[][] segments = new float[0][]; // per depth: x1, y1, x2, y2, ...
+    private float[] depthThickness = new float[0];
+    private int[] leafLight = new int[0];
+    private int[] leafDark = new int[0];
+    private String[] leafLabel = new String[0]; // "+" or a cluster's leaf count
+    private float[] leafTextSize = new float[0];
+    private long stylesUpdatedAt;
+
+    private Bitmap potLayer;
+    private float potLayerLeft, potLayerTop;
+    private final RectF rimRect = new RectF();
+    private float[] visibleSegments = new float[0];
+
+    // Widget renders: one renderer, a few bitmaps reused across updates
+    private static TreeRenderer offscreen;
+    private static int offscreenUiMode;
+    private static final List<Bitmap> bitmapPool = new ArrayList<>();
+
+    TreeRenderer(Context context) {
+        colorBackground = ContextCompat.getColor(context, R.color.colorBackground);
+        stemPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stemPaint.setColor(COLOR_STEM);
+        stemPaint.setStyle(Paint.Style.STROKE);
+        stemPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        leafLightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        leafLightPaint.setStyle(Paint.Style.FILL);
+
+        leafDarkPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        leafDarkPaint.setStyle(Paint.Style.FILL);
+
+        potPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        potPaint.setColor(COLOR_POT);
+        potRimPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        potRimPaint.setColor(COLOR_POT_RIM);
+        soilPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        soilPaint.setColor(COLOR_SOIL);
+        shadowPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        shadowPaint.setColor(COLOR_SHADOW);
+
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+
+        highlightPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        highlightPaint.setColor(Color.WHITE);
+        highlightPaint.setStyle(Paint.Style.STROKE);
+        highlightPaint.setStrokeWidth(4f);
+    }
+
+    int getBackgroundColor() {
+        return colorBackground;
+    }
+
+    /**
+     * Shows {@code clusters} (oldest first) on the leftmost tips, followed by {@code leaves}.
+     */
+    void setTree(List<LeafCluster> clusters, List<Leaf> leaves) {
+        this.clusters = clusters;
+        this.leaves = leaves;
+        geometryDirty = true;
+    }
+
+    void setSize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            geometryDirty = true;
+        }
+    }
+
+    /**
+     * Brings the cached geometry up to date. Returns true if it was rebuilt,
+     * i.e. tip positions may have changed.
+     */
+    boolean prepare() {
+        if (geometryDirty) {
+            buildGeometry();
+            return true;
+        }
+        if (System.currentTimeMillis() - stylesUpdatedAt > STYLE_REFRESH_MS) {
+            updateLeafStyles();
+        }
+        return false;
+    }
+
+    /**
+     * Draws pot, tree and rim. The tree is rotated by {@code sway} degrees
+     * around the trunk base; {@code highlight} gets a ring (-1 for none).
+     * With a {@code cull} rect, branches and tips outside it are skipped.
+     */
+    void draw(Canvas canvas, float sway, int highlight, RectF cull) {
+        // 1-3. Shadow, pot and soil (cached)
+        if (potLayer != null && (cull == null || potLayerTop < cull.bottom)) {
+            canvas.drawBitmap(potLayer, potLayerLeft, potLayerTop, null);
+        }
+
+        // 4. Fractal Tree, swayed as a whole around the trunk base
+        canvas.save();
+        canvas.rotate(sway, baseX, baseY);
+        drawTree(canvas, highlight, cull);
+        canvas.restore();
+
+        // 5. Pot Rim
+        canvas.drawRoundRect(rimRect, 10, 10, potRimPaint);
+    }
+
+    private void drawTree(Canvas canvas, int highlight, RectF cull) {
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            stemPaint.setStrokeWidth(depthThickness[depth]);
+            if (cull == null) {
+                canvas.drawLines(segments[depth], stemPaint);
+                continue;
+            }
+            int visible = cullSegments(segments[depth], cull);
+            if (visible > 0) {
+                canvas.drawLines(visibleSegments, 0, visible, stemPaint);
+            }
+        }
+
+        for (int i = 0; i < leafCount; i++) {
+            if (cull != null && (leafX[i] < cull.left || leafX[i] > cull.right
+                    || leafY[i] < cull.top || leafY[i] > cull.bottom)) {
+                continue;
+            }
+            float radius = LEAF_RADIUS * leafScale[i];
+            leafDarkPaint.setColor(leafDark[i]);
+            leafLightPaint.setColor(leafLight[i]);
+
+            // Circular glowing leaf
+            canvas.drawCircle(leafX[i], leafY[i], radius, leafDarkPaint);
+            canvas.drawCircle(leafX[i], leafY[i], radius * 0.7f, leafLightPaint);
+
+            if (leafLabel[i] != null) {
+                textPaint.setTextSize(leafTextSize[i]);
+                canvas.drawText(leafLabel[i], leafX[i], leafY[i] + leafTextSize[i] * 0.36f, textPaint);
+            }
+        }
+
+        if (highlight >= 0 && highlight < leafCount) {
+            canvas.drawCircle(leafX[highlight], leafY[highlight],
+                    LEAF_RADIUS * leafScale[highlight] * 1.25f, highlightPaint);
+        }
+    }
+
+    /**
+     * Copies the segments whose bounding box meets {@code cull} into
+     * {@link #visibleSegments}; returns the number of floats copied.
+     */
+    private int cullSegments(float[] seg, RectF cull) {
+        if (visibleSegments.length < seg.length) {
+            visibleSegments = new float[seg.length];
+        }
+        int n = 0;
+        for (int o = 0; o < seg.length; o += 4) {
+            float x1 = seg[o], y1 = seg[o + 1], x2 = seg[o + 2], y2 = seg[o + 3];
+            if (Math.max(x1, x2) < cull.left || Math.min(x1, x2) > cull.right
+                    || Math.max(y1, y2) < cull.top || Math.min(y1, y2) > cull.bottom) {
+                continue;
+            }
+            System.arraycopy(seg, o, visibleSegments, n, 4);
+            n += 4;
+        }
+        return n;
+    }
+
+    private void buildGeometry() {
+        baseX = width / 2f;
+        float potBottomY = height - POT_MARGIN_BOTTOM;
+        baseY = potBottomY - POT_HEIGHT;
+
+        int totalTips = clusters.size() + leaves.size();
+        leafCount = 0;
+        if (totalTips == 0) {
+            maxDepth = -1;
+        } else {
+            maxDepth = (int) Math.ceil(Math.log(totalTips) / Math.log(2));
+            if (maxDepth < 3) maxDepth = 3;
+            // TreeLayout keeps the tips within this; anything beyond is dropped
+            if (maxDepth > MAX_DEPTH) maxDepth = MAX_DEPTH;
+
+            // A full binary tree: 2^depth segments per depth, 2^maxDepth tips
+            segments = new float[maxDepth + 1][];
+            depthThickness = new float[maxDepth + 1];
+            float thickness = TRUNK_THICKNESS;
+            for (int depth = 0; depth <= maxDepth; depth++) {
+                segments[depth] = new float[(1 << depth) * 4];
+                depthThickness[depth] = thickness;
+                thickness *= 0.65f;
+            }
+            int tips = Math.min(totalTips, 1 << maxDepth);
+            if (leafX.length < tips) {
+                leafX = new float[tips];
+                leafY = new float[tips];
+                leafScale = new float[tips];
+                leafLight = new int[tips];
+                leafDark = new int[tips];
+                leafLabel = new String[tips];
+                leafTextSize = new float[tips];
+                leafClickable = new boolean[tips];
+            }
+            int[] filled = new int[maxDepth + 1];
+            buildBranch(baseX, baseY, -90f, TRUNK_LENGTH, 0, filled);
+        }
+        updateLeafStyles();
+
+        rimRect.set(baseX - POT_TOP_WIDTH / 2, baseY - 15, baseX + POT_TOP_WIDTH / 2, baseY + 15);
+        buildPotLayer(potBottomY);
+        geometryDirty = false;
+    }
+
+    // Same traversal as the original recursive renderer, so leaf i keeps its tip
+    private void buildBranch(float x1, float y1, float angle, float length, int depth, int[] filled) {
+        double rad = Math.toRadians(angle);
+        float x2 = x1 + (float) (Math.cos(rad) * length);
+        float y2 = y1 + (float) (Math.sin(rad) * length);
+
+        float[] seg = segments[depth];
+        int o = filled[depth];
+        seg[o] = x1;
+        seg[o + 1] = y1;
+        seg[o + 2] = x2;
+        seg[o + 3] = y2;
+        filled[depth] = o + 4;
+
+        if (depth < maxDepth) {
+            float subLength = length * 0.72f;
+            buildBranch(x2, y2, angle - BRANCH_ANGLE, subLength, depth + 1, filled);
+            buildBranch(x2, y2, angle + BRANCH_ANGLE, subLength, depth + 1, filled);
+        } else if (leafCount < clusters.size() + leaves.size()) {
+            leafX[leafCount] = x2;
+            leafY[leafCount] = y2;
+            leafCount++;
+        }
+    }
+
+    private void updateLeafStyles() {
+        int clusterCount = clusters.size();
+        for (int i = 0; i < leafCount; i++) {
+            if (i < clusterCount) {
+                applyClusterStyle(i, clusters.get(i));
+                continue;
+            }
+            Leaf leaf = leaves.get(i - clusterCount);
+            float scale = 0.85f;
+            if (leaf.status == LeafStatus.GROWING) {
+                scale *= (0.2f + (leaf.getGrowthProgress() * 0.8f));
+            }
+
+            int lightColor = COLOR_LEAF_LIGHT;
+            int darkColor = COLOR_LEAF_DARK;
+            if (leaf.status == LeafStatus.GROWING) { lightColor = COLOR_GROWING_LIGHT; darkColor = COLOR_GROWING_DARK; }
+            else if (leaf.status == LeafStatus.WITHERED) { lightColor = COLOR_WITHERED_LIGHT; darkColor = COLOR_WITHERED_DARK; }
+            else if (leaf.status == LeafStatus.LOCKED) { lightColor = COLOR_LOCKED_LIGHT; darkColor = COLOR_LOCKED_DARK; }
+
+            leafScale[i] = scale;
+            leafLight[i] = lightColor;
+            leafDark[i] = darkColor;
+            leafLabel[i] = leaf.status == LeafStatus.ACTIVE && !leaf.hasContent() ? "+" : null;
+            leafTextSize[i] = 22f * scale;
+            leafClickable[i] = leaf.status != LeafStatus.GROWING;
+        }
+        stylesUpdatedAt = System.currentTimeMillis();
+    }
+
+    // A cluster grows with its size and greens with its share of memories
+    private void applyClusterStyle(int i, LeafCluster cluster) {
+        float scale = 0.85f * (1f + Math.min(0.5f, (float) Math.log10(Math.max(1, cluster.leafCount)) * 0.25f));
+        float ratio = cluster.getMemoryRatio();
+        leafScale[i] = scale;
+        leafLight[i] = blend(COLOR_WITHERED_LIGHT, COLOR_LOCKED_LIGHT, ratio);
+        leafDark[i] = blend(COLOR_WITHERED_DARK, COLOR_LOCKED_DARK, ratio);
+        leafLabel[i] = cluster.leafCount > 999 ? "999+" : String.valueOf(cluster.leafCount);
+        leafTextSize[i] = 16f * scale;
+        leafClickable[i] = true;
+    }
+
+    private static int blend(int from, int to, float t) {
+        return Color.rgb(
+                (int) (Color.red(from) + (Color.red(to) - Color.red(from)) * t),
+                (int) (Color.green(from) + (Color.green(to) - Color.green(from)) * t),
+                (int) (Color.blue(from) + (Color.blue(to) - Color.blue(from)) * t));
+    }
+
+    /**
+     * Draws the shadow, pot and soil once into a bitmap just large enough to hold them.
+     */
+    private void buildPotLayer(float potBottomY) {
+        float potTopY = potBottomY - POT_HEIGHT;
+        float left = baseX - 90;
+        float top = potTopY - 10;
+        int w = 180 + 2;
+        int h = (int) Math.ceil(potBottomY + 5 - top) + 2;
+        if (potLayer == null || potLayer.getWidth() != w || potLayer.getHeight() != h) {
+            potLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        } else {
+            potLayer.eraseColor(Color.TRANSPARENT);
+        }
+        potLayerLeft = left;
+        potLayerTop = top;
+
+        Canvas c = new Canvas(potLayer);
+        c.translate(-left, -top);
+
+        // 1. Shadow
+        c.drawOval(new RectF(baseX - 90, potBottomY - 5, baseX + 90, potBottomY + 5), shadowPaint);
+
+        // 2. Pot
+        Path potPath = new Path();
+        potPath.moveTo(baseX - POT_TOP_WIDTH / 2 + 10, potTopY);
+        potPath.lineTo(baseX + POT_TOP_WIDTH / 2 - 10, potTopY);
+        potPath.lineTo(baseX + POT_BOTTOM_WIDTH / 2, potBottomY);
+        potPath.lineTo(baseX - POT_BOTTOM_WIDTH / 2, potBottomY);
+        potPath.close();
+        c.drawPath(potPath, potPaint);
+
+        // 3. Soil
+        c.drawOval(new RectF(baseX - 60, potTopY - 10, baseX + 60, potTopY + 10), soilPaint);
+    }
+
+    /**
+     * Renders a still tree into a pooled {@code width}×{@code height} bitmap.
+     * The tree is laid out as if the shorter side were {@link #LOGICAL_SIZE}
+     * and scaled to fit, so small or low-resolution targets keep the same look.
+     * The bitmap is reused by later calls of the same size and config; callers
+     * must hand it off (e.g. parcel it into RemoteViews) before rendering again.
+     */
+    static synchronized Bitmap renderToBitmap(Context context, int width, int height, Bitmap.Config config,
+            List<LeafCluster> clusters, List<Leaf> leaves) {
+        // Colours come from resources; a day/night switch needs a fresh renderer
+        int uiMode = context.getResources().getConfiguration().uiMode;
+        if (offscreen == null || offscreenUiMode != uiMode) {
+            offscreen = new TreeRenderer(context.getApplicationContext());
+            offscreenUiMode = uiMode;
+        }
+        Bitmap bitmap = obtainBitmap(width, height, config);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(offscreen.colorBackground);
+
+        float scale = Math.min(width, height) / LOGICAL_SIZE;
+        canvas.scale(scale, scale);
+        offscreen.setSize(Math.round(width / scale), Math.round(height / scale));
+        offscreen.setTree(clusters, leaves);
+        offscreen.prepare();
+        offscreen.draw(canvas, 0f, -1, null);
+
+        // Don't keep the caller's lists alive between updates
+        offscreen.setTree(Collections.<LeafCluster>emptyList(), Collections.<Leaf>emptyList());
+        return bitmap;
+    }
+
+    /**
+     * A pooled bitmap of the given size and config, possibly holding an
+     * earlier render (e.g. to decode a cached image into with inBitmap).
+     */
+    static synchronized Bitmap obtainBitmap(int width, int height, Bitmap.Config config) {
+        for (int i = 0; i < bitmapPool.size(); i++) {
+            Bitmap b = bitmapPool.get(i);
+            if (b.getWidth() == width && b.getHeight() == height && b.getConfig() == config) {
+                // Most recently used goes last
+                bitmapPool.remove(i);
+                bitmapPool.add(b);
+                return b;
+            }
+        }
+        if (bitmapPool.size() >= POOL_SIZE) {
+            bitmapPool.remove(0);
+        }
+        Bitmap b = Bitmap.createBitmap(width, height, config);
+        bitmapPool.add(b);
+        return b;
+    }
+}
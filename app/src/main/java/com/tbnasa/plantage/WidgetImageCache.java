@@ -0,0 +1,98 @@
+package com.tbnasa.plantage;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * WidgetImageCache — Rendered widget trees on disk.
+ *
+ * Keyed by bitmap size and config, day/night theme, the database's data
+ * version and the growth step of tomorrow's leaf, so an entry can only be
+ * reused while none of the tree's inputs changed. A periodic update or a
+ * launcher restart then costs a PNG decode instead of a render. Only touched
+ * from the widget update thread.
+ */
+final class WidgetImageCache {
+
+    private static final String TAG = "WidgetImageCache";
+    private static final String DIR = "widget_trees";
+    // A few sizes x themes for the current version; older versions age out
+    private static final int MAX_FILES = 12;
+
+    private final File dir;
+
+    WidgetImageCache(Context context) {
+        this.dir = new File(context.getCacheDir(), DIR);
+    }
+
+    static String key(PlantageWidgetProvider.TreeSize size, int nightMode, String dataVersion, int growthStep) {
+        return size.width + "x" + size.height + "_" + size.config.name() + "_n" + nightMode
+                + "_" + dataVersion + "_g" + growthStep;
+    }
+
+    /**
+     * The cached render for {@code key}, decoded into a pooled bitmap, or null.
+     */
+    Bitmap get(String key, PlantageWidgetProvider.TreeSize size) {
+        File file = new File(dir, key + ".png");
+        if (!file.isFile()) {
+            return null;
+        }
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inPreferredConfig = size.config;
+        opts.inMutable = true;
+        opts.inBitmap = TreeRenderer.obtainBitmap(size.width, size.height, size.config);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), opts);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this file
+            bitmap = null;
+        }
+        if (bitmap == null || bitmap.getWidth() != size.width || bitmap.getHeight() != size.height) {
+            file.delete();
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    void put(String key, Bitmap bitmap) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File file = new File(dir, key + ".png");
+        File tmp = new File(dir, key + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not cache widget image", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trim();
+    }
+
+    private void trim() {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_FILES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.tbnasa.plantage;
+
+import android.appwidget.AppWidgetManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.tbnasa.plantage.model.DayClock;
+import com.tbnasa.plantage.model.EpochDay;
+import com.tbnasa.plantage.model.Leaf;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * WidgetUpdater — Refreshes home screen widgets on a background thread.
+ *
+ * Requests (saves, photos, system onUpdate broadcasts) are debounced: a burst
+ * ends in one pass that reads a single {@link Snapshot} for all widget ids.
+ * Each widget remembers the hash of what it last showed, and a widget whose
+ * content and size are unchanged is not pushed (or rendered) again. Trees
+ * are rendered through {@link WidgetImageCache}, so a render happens only
+ * when the data version, size, theme or growth step is new.
+ */
+final class WidgetUpdater {
+
+    private static final String TAG = "WidgetUpdater";
+
+    private static final long DEBOUNCE_MS = 250;
+    // A steady stream of requests must not postpone an update (or a pending broadcast) forever
+    private static final long MAX_DELAY_MS = 1000;
+
+    private static volatile WidgetUpdater instance;
+
+    private final Context appContext;
+    private final Handler handler;
+    private final Runnable flush = this::flush;
+
+    // Pending work, guarded by this
+    private boolean updateAll;
+    private final Set<Integer> pendingIds = new HashSet<>();
+    private final List<BroadcastReceiver.PendingResult> pendingResults = new ArrayList<>();
+    private long firstRequestAt;
+
+    // Only touched on the worker thread
+    private final SparseArray<Long> lastPushed = new SparseArray<>();
+    private final WidgetImageCache imageCache;
+
+    static WidgetUpdater getInstance(Context context) {
+        WidgetUpdater updater = instance;
+        if (updater == null) {
+            synchronized (WidgetUpdater.class) {
+                updater = instance;
+                if (updater == null) {
+                    updater = new WidgetUpdater(context.getApplicationContext());
+                    instance = updater;
+                }
+            }
+        }
+        return updater;
+    }
+
+    private WidgetUpdater(Context appContext) {
+        this.appContext = appContext;
+        this.imageCache = new WidgetImageCache(appContext);
+        HandlerThread thread = new HandlerThread("plantage-widgets", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Schedules an update of {@code appWidgetIds} (null for every widget).
+     * {@code result}, from {@link BroadcastReceiver#goAsync()}, is finished
+     * once the update has been pushed; it may be null.
+     */
+    void requestUpdate(int[] appWidgetIds, BroadcastReceiver.PendingResult result) {
+        long now = SystemClock.uptimeMillis();
+        long delay;
+        synchronized (this) {
+            if (appWidgetIds == null) {
+                updateAll = true;
+            } else {
+                for (int id : appWidgetIds) {
+                    pendingIds.add(id);
+                }
+            }
+            if (result != null) {
+                pendingResults.add(result);
+            }
+            if (firstRequestAt == 0) {
+                firstRequestAt = now;
+            }
+            delay = Math.max(0, Math.min(DEBOUNCE_MS, firstRequestAt + MAX_DELAY_MS - now));
+        }
+        handler.removeCallbacks(flush);
+        handler.postDelayed(flush, delay);
+    }
+
+    /**
+     * Forgets removed widgets so a reused id is always pushed.
+     */
+    void forget(int[] appWidgetIds) {
+        handler.post(() -> {
+            for (int id : appWidgetIds) {
+                lastPushed.remove(id);
+            }
+        });
+    }
+
+    private void flush() {
+        boolean all;
+        int[] ids;
+        List<BroadcastReceiver.PendingResult> results;
+        synchronized (this) {
+            all = updateAll;
+            ids = new int[pendingIds.size()];
+            int i = 0;
+            for (int id : pendingIds) {
+                ids[i++] = id;
+            }
+            results = new ArrayList<>(pendingResults);
+            updateAll = false;
+            pendingIds.clear();
+            pendingResults.clear();
+            firstRequestAt = 0;
+        }
+
+        try {
+            AppWidgetManager manager = AppWidgetManager.getInstance(appContext);
+            if (all) {
+                ids = manager.getAppWidgetIds(new ComponentName(appContext, PlantageWidgetProvider.class));
+            }
+            if (ids.length > 0) {
+                DatabaseHelper db = DatabaseHelper.getInstance(appContext);
+                // One access for the whole pass; a restore waits for it
+                db.beginAccess();
+                try {
+                    Snapshot snapshot = Snapshot.load(db);
+                    int nightMode = appContext.getResources().getConfiguration().uiMode
+                            & Configuration.UI_MODE_NIGHT_MASK;
+                    for (int id : ids) {
+                        push(manager, id, db, snapshot, nightMode);
+                    }
+                } finally {
+                    db.endAccess();
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Widget update failed", e);
+        } finally {
+            for (BroadcastReceiver.PendingResult result : results) {
+                result.finish();
+            }
+        }
+    }
+
+    private void push(AppWidgetManager manager, int appWidgetId, DatabaseHelper db, Snapshot snapshot,
+            int nightMode) {
+        PlantageWidgetProvider.TreeSize size =
+                PlantageWidgetProvider.treeSize(appContext, manager.getAppWidgetOptions(appWidgetId));
+        String key = WidgetImageCache.key(size, nightMode, snapshot.dataVersion, snapshot.growthStep);
+        long hash = snapshot.contentHash * 31 + key.hashCode();
+        Long previous = lastPushed.get(appWidgetId);
+        if (previous != null && previous == hash) {
+            return;
+        }
+
+        Bitmap tree = imageCache.get(key, size);
+        if (tree == null) {
+            TreeLayout layout = snapshot.tree(db);
+            tree = TreeRenderer.renderToBitmap(appContext, size.width, size.height, size.config,
+                    layout.clusters, layout.leaves);
+            // A write between the snapshot and the tree read would file this image under a stale version
+            if (snapshot.dataVersion.equals(db.getDataVersion())) {
+                imageCache.put(key, tree);
+            }
+        }
+        manager.updateAppWidget(appWidgetId, PlantageWidgetProvider.buildViews(appContext, snapshot, tree));
+        lastPushed.put(appWidgetId, hash);
+    }
+
+    /**
+     * Everything a widget shows, read once per update pass. The tree itself is
+     * only read when some widget's image is not cached.
+     */
+    static final class Snapshot {
+
+        // Tomorrow's leaf grows through the day without writes; 20 steps = 72 minutes
+        private static final int GROWTH_STEPS = 20;
+
+        final String dataVersion;
+        final int growthStep;
+        final int streak;
+        final int totalMemories;
+        final boolean gardenedToday;
+        final long contentHash;
+        private TreeLayout tree;
+
+        private Snapshot(String dataVersion, int growthStep, int streak, int totalMemories,
+                boolean gardenedToday) {
+            this.dataVersion = dataVersion;
+            this.growthStep = growthStep;
+            this.streak = streak;
+            this.totalMemories = totalMemories;
+            this.gardenedToday = gardenedToday;
+            this.contentHash = Objects.hash(dataVersion, growthStep, streak, totalMemories, gardenedToday);
+        }
+
+        static Snapshot load(DatabaseHelper db) {
+            DayClock clock = DayClock.system();
+            long today = clock.today();
+            // Day rollover is a write too; apply it before reading the version
+            db.reconcileStatusesIfNeeded();
+            String dataVersion = db.getDataVersion();
+
+            float growth = (clock.currentTimeMillis() - clock.startOfDayMillis(today))
+                    / (float) EpochDay.MILLIS_PER_DAY;
+            int growthStep = (int) (Math.min(1f, Math.max(0f, growth)) * GROWTH_STEPS);
+
+            Leaf todayLeaf = db.getLeafByDay(today);
+            return new Snapshot(dataVersion, growthStep, db.getCurrentStreak(), db.getTotalMemories(),
+                    todayLeaf != null && todayLeaf.hasContent());
+        }
+
+        TreeLayout tree(DatabaseHelper db) {
+            if (tree == null) {
+                // Same tips as the timeline tree, without reading the whole journal
+                tree = TreeLayout.load(db, DayClock.system().today() + 2);
+            }
+            return tree;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.tbnasa.plantage.model;
+
+import java.util.TimeZone;
+
+/**
+ * Değişmez, iş parçacığı güvenli saat.
+ * Zaman ve saat dilimi oluşturulurken sabitlenir; gün hesapları saf aritmetiktir
+ * ve çağrı başına nesne oluşturmaz. Testlerde {@link #fixed(long, TimeZone)} ile
+ * belirli bir an kullanılabilir.
+ */
+public abstract class DayClock {
+
+    private static volatile DayClock system = new SystemClock(TimeZone.getDefault());
+
+    private final TimeZone zone;
+
+    DayClock(TimeZone zone) {
+        this.zone = (TimeZone) zone.clone();
+    }
+
+    /**
+     * Cihaz saatini ve varsayılan saat dilimini kullanan saat.
+     */
+    public static DayClock system() {
+        return system;
+    }
+
+    /**
+     * Her zaman aynı anı döndüren saat.
+     */
+    public static DayClock fixed(long millis, TimeZone zone) {
+        return new FixedClock(millis, zone);
+    }
+
+    /**
+     * Saat dilimi değiştiğinde çağrılır (bkz. PlantageApp).
+     */
+    public static void onTimeZoneChanged() {
+        system = new SystemClock(TimeZone.getDefault());
+    }
+
+    public abstract long currentTimeMillis();
+
+    /**
+     * Bugünün gün numarası (epoch day).
+     */
+    public long today() {
+        long now = currentTimeMillis();
+        return Math.floorDiv(now + zone.getOffset(now), EpochDay.MILLIS_PER_DAY);
+    }
+
+    /**
+     * Verilen günün yerel saatle başlangıcı (gece yarısı, millis).
+     */
+    public long startOfDayMillis(long day) {
+        long utcMidnight = day * EpochDay.MILLIS_PER_DAY;
+        return utcMidnight - zone.getOffset(utcMidnight - zone.getOffset(utcMidnight));
+    }
+
+    private static final class SystemClock extends DayClock {
+        SystemClock(TimeZone zone) {
+            super(zone);
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private static final class FixedClock extends DayClock {
+        private final long millis;
+
+        FixedClock(long millis, TimeZone zone) {
+            super(zone);
+            this.millis = millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tbnasa.plantage.model;
+
+/**
+ * Gün numarası yardımcıları.
+ * Bir gün, 1970-01-01'den itibaren geçen gün sayısı (epoch day) olarak ifade edilir;
+ * böylece tarih karşılaştırmaları string ayrıştırma yerine tam sayı işlemidir.
+ */
+public final class EpochDay {
+
+    /** Geçersiz veya bilinmeyen gün. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private EpochDay() {
+    }
+
+    /**
+     * "yyyy-MM-dd" formatındaki tarihi gün numarasına çevirir.
+     * Hatalı girdide {@link #NONE} döner.
+     */
+    public static long parse(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return NONE;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return NONE;
+        }
+        return fromCivil(year, month, day);
+    }
+
+    /**
+     * Gün numarasını "yyyy-MM-dd" formatına çevirir.
+     */
+    public static String format(long epochDay) {
+        // Gün numarası → proleptik Gregoryen takvim (H. Hinnant, civil_from_days)
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        char[] out = new char[10];
+        out[0] = (char) ('0' + (year / 1000) % 10);
+        out[1] = (char) ('0' + (year / 100) % 10);
+        out[2] = (char) ('0' + (year / 10) % 10);
+        out[3] = (char) ('0' + year % 10);
+        out[4] = '-';
+        out[5] = (char) ('0' + month / 10);
+        out[6] = (char) ('0' + month % 10);
+        out[7] = '-';
+        out[8] = (char) ('0' + day / 10);
+        out[9] = (char) ('0' + day % 10);
+        return new String(out);
+    }
+
+    /**
+     * Cihazın saat dilimine göre bugünün gün numarası.
+     */
+    public static long today() {
+        return DayClock.system().today();
+    }
+
+    /**
+     * Verilen günün yerel saatle başlangıcı (gece yarısı, millis).
+     */
+    public static long startOfDayMillis(long day) {
+        return DayClock.system().startOfDayMillis(day);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int d = Character.digit(s.charAt(i), 10);
+            if (d < 0) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    // Proleptik Gregoryen takvim → gün numarası (H. Hinnant, days_from_civil)
+    private static long fromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
@@ -1,78 +1,80 @@
 package com.tbnasa.plantage.model;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-
 /**
  * Yaprak (Leaf) veri sınıfı.
  * Her yaprak bir günü ve o güne ait anıları temsil eder.
+ * Gün numarası oluşturulurken bir kez hesaplanır; zaman kontrolleri bir
+ * {@link DayClock} üzerinden saf aritmetiktir ve her iş parçacığından çağrılabilir.
  */
 public class Leaf {
     public long id;
     public String date; // YYYY-MM-DD formatında
+    public final long day; // Epoch day, oluşturulurken bir kez hesaplanır
     public String content; // Yazılı anı metni
-    public String imagePaths; // Virgülle ayrılmış fotoğraf/video yolları
+    public int imageCount; // Fotoğraf sayısı (leaf_images satırları)
+    public LeafImage firstImage; // İlk fotoğraf, yoksa null; tümü için DatabaseHelper.getLeafImages()
     public LeafStatus status; // Yaprak durumu
     public long createdAt; // Oluşturulma zamanı (millis)
     // Category removed
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-
-    public Leaf(long id, String date, String content, String imagePaths, LeafStatus status, long createdAt) {
+    public Leaf(long id, String date, long day, String content, int imageCount, LeafImage firstImage,
+            LeafStatus status, long createdAt) {
         this.id = id;
         this.date = date;
+        this.day = day;
         this.content = content;
-        this.imagePaths = imagePaths;
+        this.imageCount = imageCount;
+        this.firstImage = firstImage;
         this.status = status;
         this.createdAt = createdAt;
     }
 
+    public Leaf(long id, String date, String content, LeafStatus status, long createdAt) {
+        this(id, date, EpochDay.parse(date), content, 0, null, status, createdAt);
+    }
+
     /**
      * Yaprağın büyüme ilerlemesini döndürür (0.0 - 1.0).
      */
     public float getGrowthProgress() {
-        try {
-            Date leafDate = dateFormat.parse(this.date);
-            if (leafDate == null) return 1.0f;
-
-            long targetStartMillis = leafDate.getTime();
-            long now = System.currentTimeMillis();
-
-            // Eğer bu yarının yaprağıysa, bugünün başlangıcından yarına kadar büyür
-            Calendar cal = Calendar.getInstance();
-            cal.setTime(leafDate);
-            cal.add(Calendar.DAY_OF_YEAR, -1);
-            long growthStartMillis = cal.getTimeInMillis();
-
-            if (now < growthStartMillis) return 0.05f; // Çok küçük
-            if (now >= targetStartMillis) return 1.0f; // Tamamlandı
-
-            float progress = (float) (now - growthStartMillis) / (24 * 60 * 60 * 1000f);
-            return Math.min(1.0f, Math.max(0.05f, progress));
-        } catch (Exception e) {
-            return 1.0f;
-        }
+        return getGrowthProgress(DayClock.system());
+    }
+
+    public float getGrowthProgress(DayClock clock) {
+        if (day == EpochDay.NONE) return 1.0f;
+
+        // Yaprak, kendi gününden bir önceki günün başlangıcından itibaren büyür
+        long growthStartMillis = clock.startOfDayMillis(day - 1);
+        long targetStartMillis = clock.startOfDayMillis(day);
+        long now = clock.currentTimeMillis();
+
+        if (now < growthStartMillis) return 0.05f; // Çok küçük
+        if (now >= targetStartMillis) return 1.0f; // Tamamlandı
+
+        float progress = (float) (now - growthStartMillis) / (24 * 60 * 60 * 1000f);
+        return Math.min(1.0f, Math.max(0.05f, progress));
     }
 
     /**
      * Bu yaprak bugüne ait mi kontrol eder.
      */
     public boolean isToday() {
-        String today = dateFormat.format(new Date());
-        return today.equals(this.date);
+        return isToday(DayClock.system());
+    }
+
+    public boolean isToday(DayClock clock) {
+        return day != EpochDay.NONE && day == clock.today();
     }
 
     /**
      * Bu yaprak yarına mı ait?
      */
     public boolean isTomorrow() {
-        Calendar cal = Calendar.getInstance();
-        cal.add(Calendar.DAY_OF_YEAR, 1);
-        String tomorrow = dateFormat.format(cal.getTime());
-        return tomorrow.equals(this.date);
+        return isTomorrow(DayClock.system());
+    }
+
+    public boolean isTomorrow(DayClock clock) {
+        return day != EpochDay.NONE && day == clock.today() + 1;
     }
 
     /**
@@ -80,50 +82,34 @@ public class Leaf {
      */
     public boolean hasContent() {
         boolean hasText = content != null && !content.trim().isEmpty();
-        boolean hasImages = imagePaths != null && !imagePaths.trim().isEmpty();
+        boolean hasImages = imageCount > 0;
         return hasText || hasImages;
     }
 
     /**
-     * İlk fotoğrafı döndürür (thumbnail için).
+     * İlk fotoğrafın yolunu döndürür.
      */
     public String getFirstImage() {
-        if (imagePaths == null || imagePaths.isEmpty())
-            return null;
-        String[] paths = imagePaths.split(",");
-        return paths.length > 0 ? paths[0] : null;
+        return firstImage != null ? firstImage.path : null;
     }
 
     /**
-     * Tüm fotoğrafları array olarak döndürür.
+     * İlk fotoğrafın küçük resmini döndürür (yoksa fotoğrafın kendisini).
      */
-    public String[] getAllImages() {
-        if (imagePaths == null || imagePaths.isEmpty())
-            return new String[0];
-        return imagePaths.split(",");
-    }
-
-    /**
-     * Yeni fotoğraf yolu ekler.
-     */
-    public String addImagePath(String newPath) {
-        if (imagePaths == null || imagePaths.isEmpty()) {
-            return newPath;
-        }
-        return imagePaths + "," + newPath;
+    public String getFirstThumbnail() {
+        return firstImage != null ? firstImage.getDisplayThumbnail() : null;
     }
 
     /**
      * Yaprağın büyüme süresinin dolup dolmadığını kontrol eder.
      */
     public boolean isMature() {
-        try {
-            Date leafDate = dateFormat.parse(this.date);
-            if (leafDate == null) return true;
-            return System.currentTimeMillis() >= leafDate.getTime();
-        } catch (Exception e) {
-            return true;
-        }
+        return isMature(DayClock.system());
+    }
+
+    public boolean isMature(DayClock clock) {
+        if (day == EpochDay.NONE) return true;
+        return clock.currentTimeMillis() >= clock.startOfDayMillis(day);
     }
 
     /**
@@ -131,45 +117,38 @@ public class Leaf {
      * Deadline: Yaprak gününden sonraki gece yarısı
      */
     public boolean isDeadlinePassed() {
-        try {
-            Date leafDate = dateFormat.parse(this.date);
-            if (leafDate == null)
-                return false;
-
-            Calendar deadline = Calendar.getInstance();
-            deadline.setTime(leafDate);
-            deadline.add(Calendar.DAY_OF_YEAR, 1);
-            deadline.set(Calendar.HOUR_OF_DAY, 0);
-            deadline.set(Calendar.MINUTE, 0);
-            deadline.set(Calendar.SECOND, 0);
-
-            Calendar now = Calendar.getInstance();
-            return now.after(deadline);
-        } catch (ParseException e) {
-            return false;
-        }
+        return isDeadlinePassed(DayClock.system());
+    }
+
+    public boolean isDeadlinePassed(DayClock clock) {
+        if (day == EpochDay.NONE) return false;
+        return clock.currentTimeMillis() > clock.startOfDayMillis(day + 1);
     }
 
     /**
      * Yaprağın güncel durumunu hesaplar ve döndürür.
      */
     public LeafStatus calculateCurrentStatus() {
+        return calculateCurrentStatus(DayClock.system());
+    }
+
+    public LeafStatus calculateCurrentStatus(DayClock clock) {
         if (this.status == LeafStatus.WITHERED || this.status == LeafStatus.LOCKED) {
             return this.status;
         }
 
         // 1. Yarının yaprağı mı? -> Büyüyor
-        if (isTomorrow()) {
+        if (isTomorrow(clock)) {
             return LeafStatus.GROWING;
         }
 
         // 2. Bugünün yaprağı mı? -> Aktif
-        if (isToday()) {
+        if (isToday(clock)) {
             return LeafStatus.ACTIVE;
         }
 
         // 3. Geçmiş yaprak mı?
-        if (isDeadlinePassed()) {
+        if (isDeadlinePassed(clock)) {
             if (hasContent()) {
                 return LeafStatus.LOCKED;
             } else {
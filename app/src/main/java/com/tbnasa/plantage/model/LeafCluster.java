@@ -0,0 +1,37 @@
+package com.tbnasa.plantage.model;
+
+/**
+ * Ağaçta tek bir uçta toplanan eski yapraklar (bir ay, bir yıl veya yıllar).
+ * Gün aralığı kapsayıcıdır; kümeye tıklanınca aralıktaki yapraklar listelenir.
+ */
+public class LeafCluster {
+
+    public final String label; // "2024-05", "2023" veya "2019–2021"
+    public final long fromDay; // Kümedeki ilk yaprağın günü (epoch day)
+    public final long toDay; // Kümedeki son yaprağın günü
+    public final int leafCount;
+    public final int memoryCount; // İçerikli yaprak sayısı
+
+    public LeafCluster(String label, long fromDay, long toDay, int leafCount, int memoryCount) {
+        this.label = label;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+        this.leafCount = leafCount;
+        this.memoryCount = memoryCount;
+    }
+
+    /**
+     * İki kümeyi (bu daha eski olmak üzere) verilen etiketle birleştirir.
+     */
+    public LeafCluster merge(LeafCluster newer, String label) {
+        return new LeafCluster(label, Math.min(fromDay, newer.fromDay), Math.max(toDay, newer.toDay),
+                leafCount + newer.leafCount, memoryCount + newer.memoryCount);
+    }
+
+    /**
+     * İçerikli yaprakların oranı (0.0 - 1.0).
+     */
+    public float getMemoryRatio() {
+        return leafCount == 0 ? 0f : (float) memoryCount / leafCount;
+    }
+}
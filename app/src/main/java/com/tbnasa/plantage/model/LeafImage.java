@@ -0,0 +1,56 @@
+package com.tbnasa.plantage.model;
+
+import java.util.Objects;
+
+/**
+ * Bir yaprağa ait fotoğraf (leaf_images tablosunun bir satırı).
+ * Boyut ve özet bilgileri içe aktarma sırasında bir kez kaydedilir; gösterim
+ * için dosya sistemine bakmak gerekmez.
+ */
+public class LeafImage {
+
+    public final long id;
+    public final long leafId;
+    public final int ordinal; // Yaprak içindeki sıra (0'dan başlar)
+    public final String path;
+    public final int width; // Piksel; bilinmiyorsa 0
+    public final int height;
+    public final long byteSize;
+    public final String thumbPath; // Küçük resim yolu, yoksa null
+    public final String contentHash; // SHA-256 (hex), yoksa null
+
+    public LeafImage(long id, long leafId, int ordinal, String path, int width, int height,
+            long byteSize, String thumbPath, String contentHash) {
+        this.id = id;
+        this.leafId = leafId;
+        this.ordinal = ordinal;
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        this.byteSize = byteSize;
+        this.thumbPath = thumbPath;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Küçük resim varsa onu, yoksa fotoğrafın kendisini döndürür.
+     */
+    public String getDisplayThumbnail() {
+        return thumbPath != null && !thumbPath.isEmpty() ? thumbPath : path;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LeafImage)) return false;
+        LeafImage other = (LeafImage) o;
+        return id == other.id && ordinal == other.ordinal
+                && Objects.equals(path, other.path)
+                && Objects.equals(thumbPath, other.thumbPath);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, ordinal, path, thumbPath);
+    }
+}
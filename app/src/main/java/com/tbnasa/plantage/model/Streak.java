@@ -0,0 +1,30 @@
+package com.tbnasa.plantage.model;
+
+/**
+ * Seri (streak) bilgisi.
+ * Kural: içerik eklenmiş ardışık günler sayılır. Bugün hâlâ düzenlenebildiği için
+ * boş bir bugün seriyi bozmaz; seri dünden itibaren geriye doğru devam eder.
+ */
+public class Streak {
+
+    public static final Streak EMPTY = new Streak(0, 0, EpochDay.NONE);
+
+    public final int current; // Son içerikli güne kadar süren seri
+    public final int longest; // Şimdiye kadarki en uzun seri
+    public final long lastDay; // Serinin son günü (epoch day)
+
+    public Streak(int current, int longest, long lastDay) {
+        this.current = current;
+        this.longest = longest;
+        this.lastDay = lastDay;
+    }
+
+    /**
+     * Verilen güne göre güncel seriyi döndürür.
+     * Son içerik bugün ya da dün eklendiyse seri devam ediyor demektir.
+     */
+    public int currentAsOf(long today) {
+        if (lastDay == EpochDay.NONE) return 0;
+        return today - lastDay <= 1 ? current : 0;
+    }
+}
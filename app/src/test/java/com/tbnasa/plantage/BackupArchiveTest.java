@@ -0,0 +1,374 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class BackupArchiveTest {
+
+    private static final int CHUNK = 4096;
+    private static final int HEADER = 7 + 16 + 8 + 4 + 4;
+    private static final int TAG = 16;
+    private static final int TRAILER = 24;
+    private static final int ITERATIONS = 1000;
+
+    private final SecretKey key = key(1);
+
+    @Test
+    public void roundTripsStoredAndDeflatedEntries() throws Exception {
+        byte[] random = random(3 * CHUNK + 123, 7);
+        byte[] text = repeat("bugün bahçede ", 2000);
+        byte[] prepared = repeat("leaf ", 900);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(bytes);
+        write(writer, "photos/a.jpg", BackupArchive.METHOD_STORED, random);
+        write(writer, "leaves.json", BackupArchive.METHOD_DEFLATED, text);
+        write(writer, "empty", BackupArchive.METHOD_STORED, new byte[0]);
+        writer.addEntry("prepared.txt", BackupArchive.PreparedEntry.prepare(prepared, prepared.length,
+                BackupArchive.METHOD_DEFLATED, Deflater.BEST_SPEED));
+        writer.finish();
+
+        File file = save(bytes.toByteArray());
+        try (BackupArchive.Reader reader = open(file)) {
+            assertEquals(writer.getId(), reader.getId());
+            assertEquals(ITERATIONS, reader.getIterations());
+            reader.unlock(key);
+            assertEquals(writer.getRootHash(), reader.getRootHash());
+            assertEquals(4, reader.getEntries().size());
+            assertArrayEquals(random, read(reader, "photos/a.jpg"));
+            assertArrayEquals(text, read(reader, "leaves.json"));
+            assertArrayEquals(new byte[0], read(reader, "empty"));
+            assertArrayEquals(prepared, read(reader, "prepared.txt"));
+            assertNull(reader.find("missing"));
+            // Compressible entries were actually deflated
+            assertTrue(reader.find("leaves.json").storedSize < text.length);
+        }
+    }
+
+    @Test
+    public void wrongKeyFailsBeforeAnyEntry() throws Exception {
+        File file = save(threeChunkArchive());
+        try (BackupArchive.Reader reader = open(file)) {
+            reader.unlock(key(2));
+            fail("unlocked with the wrong key");
+        } catch (BackupArchive.IntegrityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsFileCutShort() throws Exception {
+        byte[] archive = threeChunkArchive();
+        File file = save(Arrays.copyOf(archive, archive.length - 1));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            BackupArchive.Reader.open(channel);
+            fail("opened a truncated archive");
+        } catch (BackupArchive.IntegrityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsDataSectionCutAtChunkBoundary() throws Exception {
+        // Drop the last data chunk and fix the trailer so the layout still adds up
+        byte[] archive = threeChunkArchive();
+        int cut = HEADER + 2 * (CHUNK + TAG);
+        int dropped = CHUNK + TAG;
+        byte[] tampered = new byte[archive.length - dropped];
+        System.arraycopy(archive, 0, tampered, 0, cut);
+        System.arraycopy(archive, cut + dropped, tampered, cut, archive.length - cut - dropped);
+        ByteBuffer.wrap(tampered, tampered.length - TRAILER, 8).putLong(2L * CHUNK);
+
+        assertRejected(save(tampered));
+    }
+
+    @Test
+    public void rejectsReorderedChunks() throws Exception {
+        byte[] archive = threeChunkArchive();
+        int first = HEADER;
+        int second = HEADER + CHUNK + TAG;
+        byte[] chunk = Arrays.copyOfRange(archive, first, second);
+        System.arraycopy(archive, second, archive, first, CHUNK + TAG);
+        System.arraycopy(chunk, 0, archive, second, CHUNK + TAG);
+
+        assertRejected(save(archive));
+    }
+
+    @Test
+    public void rejectsDataChunkReadAsIndex() throws Exception {
+        // Shrink the data section to one chunk so that data chunk 1 is read as
+        // index chunk 0: same counter, same nonce, same "last" flag, other section.
+        byte[] archive = threeChunkArchive();
+        ByteBuffer trailer = ByteBuffer.wrap(archive, archive.length - TRAILER, 16);
+        long indexLength = trailer.getLong(archive.length - TRAILER + 8);
+        trailer.putLong(archive.length - TRAILER, CHUNK);
+        trailer.putLong(archive.length - TRAILER + 8, 2L * CHUNK + indexLength);
+
+        File file = save(archive);
+        try (BackupArchive.Reader reader = open(file)) {
+            reader.unlock(key);
+            fail("read a data chunk as the index");
+        } catch (BackupArchive.IntegrityException expected) {
+        }
+    }
+
+    @Test
+    public void checkpointSurvivesEncodeAndResume() throws Exception {
+        byte[] first = random(CHUNK + 500, 11);
+        byte[] second = repeat("kök ", 3000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(bytes);
+        write(writer, "first", BackupArchive.METHOD_STORED, first);
+        BackupArchive.Checkpoint checkpoint = writer.checkpoint();
+        byte[] encoded = checkpoint.encode();
+
+        BackupArchive.Checkpoint decoded = BackupArchive.Checkpoint.decode(encoded);
+        assertArrayEquals(encoded, decoded.encode());
+        assertArrayEquals(checkpoint.getSalt(), decoded.getSalt());
+        assertEquals(ITERATIONS, decoded.getIterations());
+        assertEquals(HEADER + (CHUNK + TAG), decoded.getOutputLength());
+
+        // Continue from the durable prefix only, as after a process restart
+        ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+        resumed.write(bytes.toByteArray(), 0, (int) decoded.getOutputLength());
+        BackupArchive.Writer next = BackupArchive.Writer.resume(resumed, key, decoded);
+        assertTrue(next.contains("first"));
+        write(next, "second", BackupArchive.METHOD_DEFLATED, second);
+        next.finish();
+
+        File file = save(resumed.toByteArray());
+        try (BackupArchive.Reader reader = open(file)) {
+            assertEquals(writer.getId(), reader.getId());
+            reader.unlock(key);
+            assertEquals(next.getRootHash(), reader.getRootHash());
+            assertArrayEquals(first, read(reader, "first"));
+            assertArrayEquals(second, read(reader, "second"));
+        }
+    }
+
+    @Test
+    public void resumeWithChangedInputsNeverReusesKeystream() throws Exception {
+        byte[] first = random(CHUNK + 500, 21);
+        byte[] before = random(2 * CHUNK, 22);
+        byte[] after = random(2 * CHUNK, 23);
+
+        // First attempt: seals chunks past the checkpoint, then the process dies
+        ByteArrayOutputStream attempt = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(attempt);
+        write(writer, "first", BackupArchive.METHOD_STORED, first);
+        BackupArchive.Checkpoint checkpoint = BackupArchive.Checkpoint.decode(writer.checkpoint().encode());
+        write(writer, "second", BackupArchive.METHOD_STORED, before);
+        writer.checkpoint();
+        byte[] crashed = attempt.toByteArray();
+
+        // The photo changed before the job was retried
+        byte[] resumed = resume(crashed, checkpoint, "second", after);
+
+        // Chunk 1 holds the checkpoint's unsealed tail and the start of "second" in both attempts
+        int start = HEADER + (CHUNK + TAG);
+        byte[] plainBefore = concat(first, before);
+        byte[] plainAfter = concat(first, after);
+        byte[] keystreamBefore = xor(crashed, plainBefore, start, CHUNK);
+        byte[] keystreamAfter = xor(resumed, plainAfter, start, CHUNK);
+        assertFalse(Arrays.equals(keystreamBefore, keystreamAfter));
+
+        File file = save(resumed);
+        try (BackupArchive.Reader reader = open(file)) {
+            reader.unlock(key);
+            assertArrayEquals(first, read(reader, "first"));
+            assertArrayEquals(after, read(reader, "second"));
+        }
+    }
+
+    @Test
+    public void resumesTwiceFromTheSameCheckpoint() throws Exception {
+        byte[] first = random(CHUNK + 500, 31);
+        ByteArrayOutputStream attempt = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(attempt);
+        write(writer, "first", BackupArchive.METHOD_STORED, first);
+        BackupArchive.Checkpoint checkpoint = writer.checkpoint();
+        byte[] durable = attempt.toByteArray();
+
+        // Second attempt dies too, before saving a checkpoint of its own
+        byte[] second = random(3 * CHUNK, 32);
+        byte[] dead = resume(durable, checkpoint, "second", second);
+        byte[] third = random(CHUNK / 2, 33);
+        File file = save(resume(dead, checkpoint, "second", third));
+        try (BackupArchive.Reader reader = open(file)) {
+            reader.unlock(key);
+            assertArrayEquals(first, read(reader, "first"));
+            assertArrayEquals(third, read(reader, "second"));
+        }
+    }
+
+    @Test
+    public void rejectsResumedArchiveWithTamperedSegments() throws Exception {
+        ByteArrayOutputStream attempt = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(attempt);
+        write(writer, "first", BackupArchive.METHOD_STORED, random(CHUNK + 500, 41));
+        byte[] archive = resume(attempt.toByteArray(), writer.checkpoint(), "second", random(2 * CHUNK, 42));
+        int list = archive.length - TRAILER - 4 - 16;
+
+        // Without the segment list the later chunks are read with the header's prefix
+        byte[] stripped = new byte[archive.length - 20];
+        System.arraycopy(archive, 0, stripped, 0, list);
+        System.arraycopy(archive, list + 20, stripped, list, TRAILER);
+        assertRejected(save(stripped));
+
+        // Moving the segment start is caught by the index
+        byte[] moved = archive.clone();
+        moved[list + 7] ^= 1;
+        assertRejected(save(moved));
+    }
+
+    @Test
+    public void checkpointDecodeRejectsDamagedBytes() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(bytes);
+        write(writer, "only", BackupArchive.METHOD_STORED, random(100, 3));
+        byte[] encoded = writer.checkpoint().encode();
+
+        expectDecodeFailure(Arrays.copyOf(encoded, encoded.length - 1));
+        expectDecodeFailure(Arrays.copyOf(encoded, 20));
+
+        byte[] badFormat = encoded.clone();
+        badFormat[3] ^= 1;
+        expectDecodeFailure(badFormat);
+
+        byte[] badMagic = encoded.clone();
+        badMagic[4] = 'X';
+        expectDecodeFailure(badMagic);
+    }
+
+    // ═══════ HELPERS ═══════
+
+    // A single stored entry of exactly three full chunks
+    private byte[] threeChunkArchive() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = writer(bytes);
+        write(writer, "photo", BackupArchive.METHOD_STORED, random(3 * CHUNK, 5));
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    // Continues the first {@code checkpoint.getOutputLength()} bytes of {@code written} with one more entry
+    private byte[] resume(byte[] written, BackupArchive.Checkpoint checkpoint, String name, byte[] data)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(written, 0, (int) checkpoint.getOutputLength());
+        BackupArchive.Writer writer = BackupArchive.Writer.resume(out, key, checkpoint);
+        write(writer, name, BackupArchive.METHOD_STORED, data);
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private void assertRejected(File file) throws IOException {
+        try (BackupArchive.Reader reader = open(file)) {
+            reader.unlock(key);
+            for (BackupArchive.Entry entry : reader.getEntries()) {
+                read(reader, entry.name);
+            }
+            fail("tampered archive was accepted");
+        } catch (BackupArchive.IntegrityException expected) {
+        }
+    }
+
+    private static void expectDecodeFailure(byte[] bytes) {
+        try {
+            BackupArchive.Checkpoint.decode(bytes);
+            fail("decoded a damaged checkpoint");
+        } catch (IOException expected) {
+        }
+    }
+
+    private BackupArchive.Writer writer(OutputStream out) throws Exception {
+        return new BackupArchive.Writer(out, key, new byte[16], ITERATIONS, CHUNK);
+    }
+
+    private static void write(BackupArchive.Writer writer, String name, int method, byte[] data)
+            throws IOException {
+        try (OutputStream out = writer.openEntry(name, method, Deflater.DEFAULT_COMPRESSION)) {
+            out.write(data);
+        }
+    }
+
+    private static byte[] read(BackupArchive.Reader reader, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = reader.open(reader.find(name))) {
+            byte[] buffer = new byte[1000];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static BackupArchive.Reader open(File file) throws IOException {
+        return BackupArchive.Reader.open(new RandomAccessFile(file, "r").getChannel());
+    }
+
+    private static File save(byte[] bytes) throws IOException {
+        File file = File.createTempFile("archive", ".plntg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static SecretKey key(int seed) {
+        return new SecretKeySpec(random(32, seed), "AES");
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    // AES-GCM is a stream cipher: ciphertext ^ plaintext is the keystream of a chunk
+    private static byte[] xor(byte[] archive, byte[] plain, int offset, int length) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (archive[offset + i] ^ plain[offset - HEADER - TAG + i]);
+        }
+        return result;
+    }
+
+    private static byte[] repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
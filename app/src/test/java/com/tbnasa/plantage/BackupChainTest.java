@@ -0,0 +1,212 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+public class BackupChainTest {
+
+    private static final String FILE_A = "content://backups/plantage-a.plntg";
+    private static final String FILE_B = "content://backups/plantage-b.plntg";
+    private static final String FILE_C = "content://backups/plantage-c.plntg";
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+    private final List<BackupArchive.Reader> opened = new ArrayList<>();
+    private final Map<BackupArchive.Reader, BackupChain.Manifest> manifests = new HashMap<>();
+
+    @After
+    public void closeArchives() throws IOException {
+        for (BackupArchive.Reader reader : opened) {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void ordersChainNewestFirst() throws Exception {
+        BackupArchive.Reader full = archive("full");
+        BackupArchive.Reader second = archive("second");
+        BackupArchive.Reader third = archive("third");
+        link(full, null);
+        link(second, full);
+        link(third, second);
+
+        assertEquals(Arrays.asList(third, second, full),
+                BackupChain.order(Arrays.asList(second, full, third), manifests));
+    }
+
+    @Test
+    public void rejectsMissingParent() throws Exception {
+        BackupArchive.Reader full = archive("full");
+        BackupArchive.Reader second = archive("second");
+        BackupArchive.Reader third = archive("third");
+        link(full, null);
+        link(second, full);
+        link(third, second);
+
+        expectIncomplete(Arrays.asList(third, full));
+    }
+
+    @Test
+    public void rejectsParentWithOtherRootHash() throws Exception {
+        BackupArchive.Reader full = archive("full");
+        BackupArchive.Reader second = archive("second");
+        link(full, null);
+        manifests.put(second, new BackupChain.Manifest(full.getId(), second.getRootHash(),
+                Collections.<String, String>emptyMap()));
+
+        try {
+            BackupChain.order(Arrays.asList(second, full), manifests);
+            fail("accepted a parent with another root hash");
+        } catch (BackupArchive.IntegrityException expected) {
+        }
+    }
+
+    @Test
+    public void rejectsTwoChains() throws Exception {
+        BackupArchive.Reader a = archive("a");
+        BackupArchive.Reader aChild = archive("a child");
+        BackupArchive.Reader b = archive("b");
+        BackupArchive.Reader bChild = archive("b child");
+        link(a, null);
+        link(aChild, a);
+        link(b, null);
+        link(bChild, b);
+
+        expectIncomplete(Arrays.asList(aChild, a, bChild, b));
+    }
+
+    @Test
+    public void rejectsCycles() throws Exception {
+        BackupArchive.Reader a = archive("a");
+        BackupArchive.Reader b = archive("b");
+        link(a, b);
+        link(b, a);
+        // Every archive is somebody's parent
+        expectIncomplete(Arrays.asList(a, b));
+
+        // A newest archive on top of the loop
+        BackupArchive.Reader top = archive("top");
+        link(top, a);
+        expectIncomplete(Arrays.asList(top, a, b));
+    }
+
+    @Test
+    public void stateRoundTripsWithDestinations() throws Exception {
+        File file = File.createTempFile("chain", ".state");
+        file.deleteOnExit();
+        new BackupChain.State("id", "root", 2, "check", Arrays.asList(FILE_A, FILE_B),
+                new HashSet<>(Arrays.asList("aa", "bb"))).save(file);
+
+        BackupChain.State loaded = BackupChain.State.load(file);
+        assertEquals("id", loaded.archiveId);
+        assertEquals("root", loaded.rootHash);
+        assertEquals(2, loaded.length);
+        assertEquals("check", loaded.keyCheck);
+        assertEquals(Arrays.asList(FILE_A, FILE_B), loaded.destinations);
+        assertEquals(new HashSet<>(Arrays.asList("aa", "bb")), loaded.blobs);
+    }
+
+    @Test
+    public void loadsStateSavedWithoutDestinations() throws Exception {
+        File file = File.createTempFile("chain", ".state");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "id\nroot\n2\ncheck\naa\nbb\n".getBytes(StandardCharsets.UTF_8));
+
+        BackupChain.State loaded = BackupChain.State.load(file);
+        assertTrue(loaded.destinations.isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("aa", "bb")), loaded.blobs);
+        assertFalse(loaded.canExtend(FILE_C));
+    }
+
+    @Test
+    public void neverExtendsIntoTheParentsOwnFile() {
+        BackupChain.State state = state(null, FILE_A);
+        assertFalse(state.canExtend(FILE_A));
+        assertTrue(state.canExtend(FILE_B));
+
+        BackupChain.State full = new BackupChain.State("id", "root", BackupChain.MAX_LENGTH, "check",
+                Arrays.asList(FILE_A), new HashSet<String>());
+        assertFalse(full.canExtend(FILE_B));
+    }
+
+    @Test
+    public void neverExtendsIntoAnOlderLink() throws Exception {
+        // A → B, then back to A: B still needs the archive in A
+        File file = File.createTempFile("chain", ".state");
+        file.deleteOnExit();
+        state(state(null, FILE_A), FILE_B).save(file);
+
+        BackupChain.State afterB = BackupChain.State.load(file);
+        assertFalse(afterB.canExtend(FILE_A));
+        assertFalse(afterB.canExtend(FILE_B));
+        assertTrue(afterB.canExtend(FILE_C));
+
+        // A full backup into A starts a chain that only knows A
+        BackupChain.State restarted = state(null, FILE_A);
+        assertEquals(Arrays.asList(FILE_A), restarted.destinations);
+        assertTrue(restarted.canExtend(FILE_B));
+    }
+
+    // ═══════ HELPERS ═══════
+
+    private void expectIncomplete(List<BackupArchive.Reader> archives) throws IOException {
+        try {
+            BackupChain.order(archives, manifests);
+            fail("accepted an incomplete chain");
+        } catch (BackupChain.IncompleteChainException expected) {
+        }
+    }
+
+    // The state after a backup to {@code destination} on top of {@code parent}
+    private static BackupChain.State state(BackupChain.State parent, String destination) {
+        return new BackupChain.State("id", "root", parent != null ? parent.length + 1 : 1, "check",
+                BackupChain.State.destinationsAfter(parent, destination), new HashSet<String>());
+    }
+
+    private void link(BackupArchive.Reader child, BackupArchive.Reader parent) {
+        manifests.put(child, new BackupChain.Manifest(parent != null ? parent.getId() : null,
+                parent != null ? parent.getRootHash() : null, new LinkedHashMap<String, String>()));
+    }
+
+    // An unlocked archive with a single entry; ids differ through the random nonce prefix
+    private BackupArchive.Reader archive(String content) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BackupArchive.Writer writer = new BackupArchive.Writer(bytes, key, new byte[16], 1000,
+                BackupArchive.DEFAULT_CHUNK_SIZE);
+        try (OutputStream entry = writer.openEntry("content", BackupArchive.METHOD_STORED, 0)) {
+            entry.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        writer.finish();
+
+        File file = File.createTempFile("chain", ".plntg");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes.toByteArray());
+        BackupArchive.Reader reader = BackupArchive.Reader.open(new RandomAccessFile(file, "r").getChannel());
+        opened.add(reader);
+        reader.unlock(key);
+        return reader;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tbnasa.plantage.model.EpochDay;
+import com.tbnasa.plantage.model.Streak;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class StreakTrackerTest {
+
+    @Test
+    public void extendsConsecutiveDaysAndRestartsAfterGap() {
+        Streak streak = Streak.EMPTY;
+        streak = StreakTracker.extend(streak, 100);
+        streak = StreakTracker.extend(streak, 101);
+        streak = StreakTracker.extend(streak, 102);
+        assertStreak(3, 3, 102, streak);
+
+        streak = StreakTracker.extend(streak, 105);
+        assertStreak(1, 3, 105, streak);
+    }
+
+    @Test
+    public void onlyLaterDaysCanBeExtended() {
+        Streak streak = new Streak(2, 4, 50);
+        assertTrue(StreakTracker.canExtend(Streak.EMPTY, 10));
+        assertTrue(StreakTracker.canExtend(streak, 51));
+        assertFalse(StreakTracker.canExtend(streak, 50));
+        assertFalse(StreakTracker.canExtend(streak, 49));
+        assertFalse(StreakTracker.canExtend(streak, EpochDay.NONE));
+    }
+
+    @Test
+    public void rebuildSkipsRepeatedDays() {
+        StreakTracker.Rebuild pass = new StreakTracker.Rebuild();
+        for (long day : new long[] { 1, 1, 2, 2, 2, 3, 7, 8, 8 }) {
+            pass.add(day);
+        }
+        assertStreak(2, 3, 8, pass.result());
+    }
+
+    @Test
+    public void emptyRebuildIsEmpty() {
+        assertStreak(0, 0, EpochDay.NONE, new StreakTracker.Rebuild().result());
+    }
+
+    /**
+     * Adds days in random order the way onContentChanged does (extend when
+     * possible, rebuild otherwise) and checks every step against a rebuild.
+     */
+    @Test
+    public void incrementalUpdatesMatchFullRebuild() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            TreeSet<Long> days = new TreeSet<>();
+            Streak streak = Streak.EMPTY;
+            int extended = 0;
+            for (int i = 0; i < 60; i++) {
+                // Mostly today or tomorrow, sometimes a back-filled older day
+                long day = random.nextInt(4) == 0
+                        ? random.nextInt(90)
+                        : (days.isEmpty() ? 0 : days.last() + random.nextInt(3));
+                days.add(day);
+                if (StreakTracker.canExtend(streak, day)) {
+                    streak = StreakTracker.extend(streak, day);
+                    extended++;
+                } else {
+                    streak = rebuild(days);
+                }
+                Streak expected = rebuild(days);
+                assertStreak(expected.current, expected.longest, expected.lastDay, streak);
+            }
+            assertTrue(extended > 0);
+        }
+    }
+
+    private static Streak rebuild(TreeSet<Long> days) {
+        StreakTracker.Rebuild pass = new StreakTracker.Rebuild();
+        for (long day : days) {
+            pass.add(day);
+        }
+        return pass.result();
+    }
+
+    private static void assertStreak(int current, int longest, long lastDay, Streak streak) {
+        assertEquals("current", current, streak.current);
+        assertEquals("longest", longest, streak.longest);
+        assertEquals("lastDay", lastDay, streak.lastDay);
+    }
+}
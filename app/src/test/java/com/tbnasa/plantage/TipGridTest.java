@@ -0,0 +1,124 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TipGridTest {
+
+    private static final float RADIUS = 50f;
+
+    @Test
+    public void emptyGridFindsNothing() {
+        TipGrid grid = new TipGrid();
+        grid.build(new float[0], new float[0], 0, RADIUS);
+        assertEquals(-1, grid.find(0f, 0f, new float[0], new float[0], new float[0], new boolean[0], RADIUS));
+    }
+
+    @Test
+    public void findsTipsAcrossCellBorders() {
+        float[] x = { 0f, 60f, 400f };
+        float[] y = { 0f, 0f, 300f };
+        float[] scale = { 1f, 1f, 1f };
+        boolean[] clickable = { true, true, true };
+        TipGrid grid = new TipGrid();
+        grid.build(x, y, 3, RADIUS);
+
+        assertEquals(0, grid.find(-30f, 10f, x, y, scale, clickable, RADIUS));
+        // Inside both circles: the later (topmost) tip wins
+        assertEquals(1, grid.find(30f, 0f, x, y, scale, clickable, RADIUS));
+        assertEquals(2, grid.find(430f, 330f, x, y, scale, clickable, RADIUS));
+        assertEquals(-1, grid.find(200f, 150f, x, y, scale, clickable, RADIUS));
+        assertEquals(-1, grid.find(-1000f, 5000f, x, y, scale, clickable, RADIUS));
+    }
+
+    @Test
+    public void skipsTipsThatAreNotClickable() {
+        float[] x = { 0f, 10f };
+        float[] y = { 0f, 10f };
+        float[] scale = { 1f, 1f };
+        boolean[] clickable = { true, false };
+        TipGrid grid = new TipGrid();
+        grid.build(x, y, 2, RADIUS);
+        assertEquals(0, grid.find(5f, 5f, x, y, scale, clickable, RADIUS));
+    }
+
+    @Test
+    public void rebuildWithFewerTipsReusesArrays() {
+        Random random = new Random(3);
+        TipGrid grid = new TipGrid();
+        float[][] big = randomTips(random, 128, 2000f);
+        grid.build(big[0], big[1], 128, RADIUS);
+        float[][] small = randomTips(random, 5, 200f);
+        assertMatchesBruteForce(grid, small, 5, random);
+    }
+
+    @Test
+    public void matchesBruteForceHitTest() {
+        Random random = new Random(7);
+        TipGrid grid = new TipGrid();
+        for (int round = 0; round < 50; round++) {
+            int count = 1 + random.nextInt(128);
+            float[][] tips = randomTips(random, count, 100f + random.nextInt(1500));
+            assertMatchesBruteForce(grid, tips, count, random);
+        }
+    }
+
+    private static void assertMatchesBruteForce(TipGrid grid, float[][] tips, int count, Random random) {
+        float[] x = tips[0], y = tips[1], scale = tips[2];
+        boolean[] clickable = new boolean[count];
+        float maxScale = 0.85f;
+        for (int i = 0; i < count; i++) {
+            clickable[i] = random.nextInt(5) != 0;
+            maxScale = Math.max(maxScale, scale[i]);
+        }
+        // Same cell size rule as PlantageTreeView
+        grid.build(x, y, count, RADIUS * maxScale);
+
+        for (int probe = 0; probe < 2000; probe++) {
+            float px, py;
+            if (probe % 2 == 0) {
+                // Near a tip, to hit plenty of circles and their edges
+                int i = random.nextInt(count);
+                px = x[i] + (random.nextFloat() - 0.5f) * 3 * RADIUS;
+                py = y[i] + (random.nextFloat() - 0.5f) * 3 * RADIUS;
+            } else {
+                px = (random.nextFloat() - 0.1f) * 2200f;
+                py = (random.nextFloat() - 0.1f) * 2200f;
+            }
+            assertEquals(Arrays.toString(new float[] { px, py }),
+                    bruteForce(px, py, x, y, scale, clickable, count),
+                    grid.find(px, py, x, y, scale, clickable, RADIUS));
+        }
+    }
+
+    private static int bruteForce(float px, float py, float[] x, float[] y, float[] scale,
+            boolean[] clickable, int count) {
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            float dx = px - x[i];
+            float dy = py - y[i];
+            float r = RADIUS * scale[i];
+            if (clickable[i] && dx * dx + dy * dy < r * r) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // x, y and scale arrays, with spare room past count like the renderer's
+    private static float[][] randomTips(Random random, int count, float extent) {
+        float[] x = new float[count + 8];
+        float[] y = new float[count + 8];
+        float[] scale = new float[count + 8];
+        for (int i = 0; i < count; i++) {
+            x[i] = random.nextFloat() * extent;
+            y[i] = random.nextFloat() * extent;
+            scale[i] = 0.3f + random.nextFloat() * 0.9f;
+        }
+        return new float[][] { x, y, scale };
+    }
+}
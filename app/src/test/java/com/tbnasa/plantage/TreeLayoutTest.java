@@ -0,0 +1,149 @@
+package com.tbnasa.plantage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tbnasa.plantage.model.EpochDay;
+import com.tbnasa.plantage.model.Leaf;
+import com.tbnasa.plantage.model.LeafCluster;
+import com.tbnasa.plantage.model.LeafStatus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TreeLayoutTest {
+
+    @Test
+    public void fitKeepsNewestLeavesAndFoldsTheRestIntoMonths() {
+        // 2024-01-20 .. 2024-02-08, one leaf per day; 16 - 4 = 12 stay single
+        List<Leaf> leaves = leaves("2024-01-20", 20);
+        List<LeafCluster> months = new ArrayList<>();
+        months.add(month(2023, 12, 31));
+
+        TreeLayout layout = TreeLayout.fit(leaves, months, 16, 4);
+
+        assertEquals(12, layout.leaves.size());
+        assertEquals(leaves.get(8), layout.leaves.get(0));
+        assertEquals(leaves.get(19), layout.leaves.get(11));
+        assertEquals(2, layout.clusters.size());
+        assertEquals("2023-12", layout.clusters.get(0).label);
+        LeafCluster january = layout.clusters.get(1);
+        assertEquals("2024-01", january.label);
+        assertEquals(8, january.leafCount);
+        assertEquals(4, january.memoryCount);
+        assertEquals(EpochDay.parse("2024-01-20"), january.fromDay);
+        assertEquals(EpochDay.parse("2024-01-27"), january.toDay);
+        assertEquals(totalLeaves(months) + leaves.size(),
+                totalLeaves(layout.clusters) + layout.leaves.size());
+    }
+
+    @Test
+    public void fitExtendsTheNewestMonthWhenTrimmedLeavesShareIt() {
+        List<Leaf> leaves = leaves("2024-03-11", 10);
+        List<LeafCluster> months = new ArrayList<>();
+        months.add(new LeafCluster("2024-03", EpochDay.parse("2024-03-01"), EpochDay.parse("2024-03-10"), 10, 4));
+
+        TreeLayout layout = TreeLayout.fit(leaves, months, 8, 2);
+
+        assertEquals(6, layout.leaves.size());
+        assertEquals(1, layout.clusters.size());
+        LeafCluster march = layout.clusters.get(0);
+        assertEquals("2024-03", march.label);
+        assertEquals(14, march.leafCount);
+        assertEquals(6, march.memoryCount); // every other test leaf has text
+        assertEquals(EpochDay.parse("2024-03-14"), march.toDay);
+    }
+
+    @Test
+    public void collapseLeavesClustersWithinBudgetAlone() {
+        List<LeafCluster> months = months(2024, 1, 6);
+        assertEquals(months, TreeLayout.collapse(months, 6));
+    }
+
+    @Test
+    public void collapseFoldsOldestMonthsIntoYearsFirst() {
+        List<LeafCluster> months = months(2022, 1, 24); // 2022-01 .. 2023-12
+
+        List<LeafCluster> out = TreeLayout.collapse(months, 13);
+
+        assertEquals(13, out.size());
+        assertEquals("2022", out.get(0).label);
+        assertEquals(months.get(0).fromDay, out.get(0).fromDay);
+        assertEquals(months.get(11).toDay, out.get(0).toDay);
+        assertEquals("2023-01", out.get(1).label);
+        assertEquals("2023-12", out.get(12).label);
+        assertInvariants(months, out, 13);
+    }
+
+    @Test
+    public void collapseMergesYearsIntoSpansForLongHistories() {
+        List<LeafCluster> months = months(2010, 1, 12 * 12); // 2010 .. 2021
+
+        List<LeafCluster> out = TreeLayout.collapse(months, 4);
+
+        assertEquals(4, out.size());
+        assertEquals("2010–2018", out.get(0).label);
+        assertEquals("2019", out.get(1).label);
+        assertEquals("2020", out.get(2).label);
+        assertEquals("2021", out.get(3).label);
+        assertInvariants(months, out, 4);
+    }
+
+    @Test
+    public void collapseKeepsEveryLeafReachable() {
+        for (int count = 1; count <= 60; count++) {
+            List<LeafCluster> months = months(2019, 7, count);
+            for (int budget = 1; budget <= count; budget++) {
+                assertInvariants(months, TreeLayout.collapse(months, budget), budget);
+            }
+        }
+    }
+
+    // Within budget, oldest → newest, contiguous, and no leaf lost or counted twice
+    private static void assertInvariants(List<LeafCluster> months, List<LeafCluster> out, int budget) {
+        assertTrue(out.size() <= budget);
+        assertEquals(totalLeaves(months), totalLeaves(out));
+        assertEquals(months.get(0).fromDay, out.get(0).fromDay);
+        assertEquals(months.get(months.size() - 1).toDay, out.get(out.size() - 1).toDay);
+        for (int i = 1; i < out.size(); i++) {
+            assertTrue(out.get(i - 1).toDay < out.get(i).fromDay);
+        }
+    }
+
+    private static int totalLeaves(List<LeafCluster> clusters) {
+        int total = 0;
+        for (LeafCluster cluster : clusters) {
+            total += cluster.leafCount;
+        }
+        return total;
+    }
+
+    private static List<LeafCluster> months(int year, int month, int count) {
+        List<LeafCluster> months = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int m = month - 1 + i;
+            months.add(month(year + m / 12, m % 12 + 1, 28));
+        }
+        return Collections.unmodifiableList(months);
+    }
+
+    private static LeafCluster month(int year, int month, int days) {
+        String label = String.format("%04d-%02d", year, month);
+        long from = EpochDay.parse(label + "-01");
+        return new LeafCluster(label, from, from + days - 1, days, days / 2);
+    }
+
+    private static List<Leaf> leaves(String first, int count) {
+        long day = EpochDay.parse(first);
+        List<Leaf> leaves = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String content = i % 2 == 0 ? "note" : "";
+            leaves.add(new Leaf(i + 1, EpochDay.format(day + i), day + i, content, 0, null,
+                    LeafStatus.LOCKED, 0));
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,77 @@
+package com.tbnasa.plantage.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+public class DayClockTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final TimeZone ISTANBUL = TimeZone.getTimeZone("Europe/Istanbul");
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+    private static final long JAN_1_2024 = 19723;
+
+    @Test
+    public void fixedClockAlwaysReturnsTheSameInstant() {
+        DayClock clock = DayClock.fixed(123456789L, UTC);
+        assertEquals(123456789L, clock.currentTimeMillis());
+        assertEquals(123456789L, clock.currentTimeMillis());
+    }
+
+    @Test
+    public void todayFollowsTheClockZone() {
+        // 2023-12-31 22:30 UTC is already 2024-01-01 in Istanbul (UTC+3)
+        long millis = (JAN_1_2024 * 24 - 1) * 3600_000L - 30 * 60_000L;
+        assertEquals(JAN_1_2024 - 1, DayClock.fixed(millis, UTC).today());
+        assertEquals(JAN_1_2024, DayClock.fixed(millis, ISTANBUL).today());
+        assertEquals(JAN_1_2024 - 1, DayClock.fixed(millis, NEW_YORK).today());
+    }
+
+    @Test
+    public void todayBeforeEpochRoundsDown() {
+        assertEquals(-1, DayClock.fixed(-1, UTC).today());
+        assertEquals(0, DayClock.fixed(0, UTC).today());
+    }
+
+    @Test
+    public void startOfDayIsLocalMidnight() {
+        DayClock istanbul = DayClock.fixed(0, ISTANBUL);
+        assertEquals(JAN_1_2024 * EpochDay.MILLIS_PER_DAY - 3 * 3600_000L, istanbul.startOfDayMillis(JAN_1_2024));
+
+        DayClock newYork = DayClock.fixed(0, NEW_YORK);
+        assertEquals(JAN_1_2024 * EpochDay.MILLIS_PER_DAY + 5 * 3600_000L, newYork.startOfDayMillis(JAN_1_2024));
+    }
+
+    @Test
+    public void startOfDayAcrossDaylightSavingChange() {
+        // New York switches to EDT (UTC-4) on 2024-03-10 at 02:00
+        long before = EpochDay.parse("2024-03-09");
+        long after = EpochDay.parse("2024-03-11");
+        DayClock clock = DayClock.fixed(0, NEW_YORK);
+        assertEquals(before * EpochDay.MILLIS_PER_DAY + 5 * 3600_000L, clock.startOfDayMillis(before));
+        assertEquals(after * EpochDay.MILLIS_PER_DAY + 4 * 3600_000L, clock.startOfDayMillis(after));
+    }
+
+    @Test
+    public void startOfDayMapsBackToTheSameDay() {
+        for (TimeZone zone : new TimeZone[] { UTC, ISTANBUL, NEW_YORK, TimeZone.getTimeZone("Pacific/Kiritimati") }) {
+            DayClock clock = DayClock.fixed(0, zone);
+            for (long day = JAN_1_2024; day < JAN_1_2024 + 366; day++) {
+                long start = clock.startOfDayMillis(day);
+                assertEquals(zone.getID(), day, DayClock.fixed(start, zone).today());
+                assertEquals(zone.getID(), day - 1, DayClock.fixed(start - 1, zone).today());
+            }
+        }
+    }
+
+    @Test
+    public void fixedClockIsNotAffectedByLaterZoneChanges() {
+        TimeZone zone = TimeZone.getTimeZone("GMT+05:00");
+        DayClock clock = DayClock.fixed(JAN_1_2024 * EpochDay.MILLIS_PER_DAY - 3600_000L, zone);
+        zone.setRawOffset(0);
+        assertEquals(JAN_1_2024, clock.today());
+    }
+}
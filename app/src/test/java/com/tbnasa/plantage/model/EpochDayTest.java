@@ -0,0 +1,54 @@
+package com.tbnasa.plantage.model;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class EpochDayTest {
+
+    @Test
+    public void parsesKnownDays() {
+        assertEquals(0, EpochDay.parse("1970-01-01"));
+        assertEquals(-1, EpochDay.parse("1969-12-31"));
+        assertEquals(59, EpochDay.parse("1970-03-01"));
+        assertEquals(11016, EpochDay.parse("2000-02-29"));
+        assertEquals(19723, EpochDay.parse("2024-01-01"));
+    }
+
+    @Test
+    public void formatsKnownDays() {
+        assertEquals("1970-01-01", EpochDay.format(0));
+        assertEquals("1969-12-31", EpochDay.format(-1));
+        assertEquals("2000-02-29", EpochDay.format(11016));
+        assertEquals("2024-01-01", EpochDay.format(19723));
+    }
+
+    @Test
+    public void roundTripsAndMatchesCalendar() throws Exception {
+        SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // 1900-01-01 .. 2100-12-31, covering the century and 400-year leap rules
+        for (long day = -25567; day <= 47482; day++) {
+            String text = EpochDay.format(day);
+            assertEquals(reference.format(day * EpochDay.MILLIS_PER_DAY), text);
+            assertEquals(text, day, EpochDay.parse(text));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedDates() {
+        assertEquals(EpochDay.NONE, EpochDay.parse(null));
+        assertEquals(EpochDay.NONE, EpochDay.parse(""));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-1-01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024/01/01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-01-0x"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-13-01"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-00-10"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-01-32"));
+        assertEquals(EpochDay.NONE, EpochDay.parse("2024-01-00"));
+    }
+}